@@ -0,0 +1,81 @@
+
+/**
+ * Distribution of tool position errors (pixels) over the samples
+ * of a path, as measured by RoundTripVerifier.
+ * Objects never change once built.
+ */
+import java.util.Arrays;
+
+public final class AccuracyReport
+{
+    private final int samples;        // all samples, reachable or not
+    private final double[] sorted;    // errors of reachable samples, ascending
+    private final double mean;
+
+    // error[i] is NaN for samples which can not be reached
+    public AccuracyReport(double[] error)
+    {
+        samples = error.length;
+        double[] e = new double[samples];
+        int m = 0;
+        double sum = 0;
+        for (double v : error){
+            if (!Double.isNaN(v)){
+                e[m++] = v;
+                sum += v;
+            }
+        }
+        sorted = Arrays.copyOf(e, m);
+        Arrays.sort(sorted);
+        mean = m == 0 ? 0 : sum/m;
+    }
+
+    public int get_samples(){
+        return samples;
+    }
+
+    // samples the arm can not reach, left out of the statistics
+    public int get_unreachable(){
+        return samples - sorted.length;
+    }
+
+    public double get_max(){
+        return sorted.length == 0 ? 0 : sorted[sorted.length - 1];
+    }
+
+    public double get_mean(){
+        return mean;
+    }
+
+    // error not exceeded by p percent of the reachable samples
+    public double get_percentile(double p){
+        if (sorted.length == 0){
+            return 0;
+        }
+        int k = (int)Math.ceil(p/100*sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(k, sorted.length - 1))];
+    }
+
+    public double get_p99(){
+        return get_percentile(99);
+    }
+
+    // number of reachable samples with error above limit
+    public int count_above(double limit){
+        int k = Arrays.binarySearch(sorted, limit);
+        if (k < 0){
+            k = -k - 1;
+        } else {
+            // skip errors equal to limit
+            while (k < sorted.length && sorted[k] == limit){
+                k++;
+            }
+        }
+        return sorted.length - k;
+    }
+
+    public String toString(){
+        return String.format("%d samples (%d unreachable), error max %.3f p99 %.3f mean %.3f pixels",
+                             samples, get_unreachable(), get_max(), get_p99(), get_mean());
+    }
+}
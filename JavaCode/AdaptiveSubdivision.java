@@ -0,0 +1,182 @@
+
+/**
+ * Breaks lines of a drawing into segments only where needed.
+ * Arm moves between two samples by changing motor angles linearly,
+ * which does not move the tool along a straight line. A line is split
+ * in half (recursively) until the tool position half way through the
+ * move, found by forward kinematics, is within `tolerance` pixels of
+ * the line. Straight, well-conditioned parts of the workspace then get
+ * a single sample per line, and samples are added only where the
+ * linkage is nonlinear.
+ * Close to the motors the solver gives angles for which forward
+ * kinematics puts the tool at the mirror point (see ForwardKinematics);
+ * the deviation there says nothing about the line, so lines with any
+ * sample where the arm would not be at the point solved for get fixed
+ * n_steps segments, as lines with unreachable end points do.
+ * Output is the start point of every segment (like fixed n_steps
+ * subdivision in ToolPath): positions and pen, to be solved by an IKSolver.
+ * Objects are not thread safe, parallel conversion uses one per chunk.
+ */
+import java.util.BitSet;
+
+public class AdaptiveSubdivision
+{
+    static final int MAX_DEPTH = 10; // at most 2^10 segments per line
+
+    private final IKSolver ik;
+    private final ForwardKinematics fk;
+    private final double tolerance;  // pixels
+    private final int n_steps;       // for lines with unreachable end points
+
+    // scratch arrays for solving single points
+    private final double[] px = new double[2];
+    private final double[] py = new double[2];
+    private final double[] pt1 = new double[2];
+    private final double[] pt2 = new double[2];
+    private final boolean[] pv = new boolean[2];
+    private final double[] ft1 = new double[1];
+    private final double[] ft2 = new double[1];
+    private final double[] fx = new double[1];
+    private final double[] fy = new double[1];
+
+    // output samples
+    private final DoubleColumn x = new DoubleColumn();
+    private final DoubleColumn y = new DoubleColumn();
+    private final BitSet pen = new BitSet();
+    private final IntColumn line_start = new IntColumn(); // first sample of each line
+
+    public AdaptiveSubdivision(ArmGeometry geometry, IKSolver ik, double tolerance, int n_steps)
+    {
+        this.ik = ik;
+        this.tolerance = tolerance;
+        this.n_steps = n_steps;
+        fk = new ForwardKinematics(geometry);
+    }
+
+    // number of samples produced so far
+    public int size(){
+        return x.size();
+    }
+
+    public DoubleColumn get_x(){
+        return x;
+    }
+
+    public DoubleColumn get_y(){
+        return y;
+    }
+
+    // bit i is set if pen is down at sample i
+    public BitSet get_pen(){
+        return pen;
+    }
+
+    // index of the first sample of each line given to subdivide()
+    public IntColumn get_line_start(){
+        return line_start;
+    }
+
+    public void clear(){
+        x.clear();
+        y.clear();
+        pen.clear();
+        line_start.clear();
+    }
+
+    // subdivides lines from point i to i+1 of the drawing, from <= i < to
+    public void subdivide(Drawing drawing, int from, int to){
+        for (int i = from; i < to; i++){
+            line_start.add(x.size());
+            segment(drawing.get_x(i), drawing.get_y(i), drawing.get_x(i+1), drawing.get_y(i+1),
+                    drawing.get_pen(i));
+        }
+    }
+
+    // subdivides line from (x0,y0) to (x1,y1)
+    // the end point is not added, it starts the next line
+    public void segment(double x0, double y0, double x1, double y1, boolean pen0){
+        px[0] = x0;
+        py[0] = y0;
+        px[1] = x1;
+        py[1] = y1;
+        ik.solve(px, py, pt1, pt2, pv, 0, 2);
+        int start = x.size();
+        if (!pv[0] || !pv[1]
+            || !reached(x0, y0, pt1[0], pt2[0]) || !reached(x1, y1, pt1[1], pt2[1])
+            || !split(x0, y0, pt1[0], pt2[0], x1, y1, pt1[1], pt2[1], pen0, 0)){
+            // can not tell how the arm moves, use fixed steps
+            truncate(start);
+            for (int j = 0; j < n_steps; j++){
+                add(x0 + j*(x1-x0)/n_steps, y0 + j*(y1-y0)/n_steps, pen0);
+            }
+        }
+    }
+
+    // false if a sample on the way is solved for the mirror point
+    private boolean split(double xa, double ya, double ta1, double ta2,
+                          double xb, double yb, double tb1, double tb2,
+                          boolean pen0, int depth){
+        if (depth >= MAX_DEPTH || deviation(xa, ya, xb, yb, (ta1+tb1)/2, (ta2+tb2)/2) <= tolerance){
+            add(xa, ya, pen0);
+            return true;
+        }
+        double xc = (xa+xb)/2;
+        double yc = (ya+yb)/2;
+        px[0] = xc;
+        py[0] = yc;
+        ik.solve(px, py, pt1, pt2, pv, 0, 1);
+        if (!pv[0]){
+            // line leaves the workspace, arm holds its angles there
+            add(xa, ya, pen0);
+            add(xc, yc, pen0);
+            return true;
+        }
+        double tc1 = pt1[0];
+        double tc2 = pt2[0];
+        if (!reached(xc, yc, tc1, tc2)){
+            return false;
+        }
+        return split(xa, ya, ta1, ta2, xc, yc, tc1, tc2, pen0, depth+1)
+            && split(xc, yc, tc1, tc2, xb, yb, tb1, tb2, pen0, depth+1);
+    }
+
+    // is the tool within tolerance of (xp,yp) with motor angles t1,t2?
+    private boolean reached(double xp, double yp, double t1, double t2){
+        return deviation(xp, yp, xp, yp, t1, t2) <= tolerance;
+    }
+
+    // drops samples from n on
+    private void truncate(int n){
+        x.truncate(n);
+        y.truncate(n);
+        pen.clear(n, Math.max(n, pen.length()));
+    }
+
+    private void add(double xs, double ys, boolean pen0){
+        if (pen0){
+            pen.set(x.size());
+        }
+        x.add(xs);
+        y.add(ys);
+    }
+
+    // distance (pixels) between line a-b and the tool with motor angles t1,t2
+    private double deviation(double xa, double ya, double xb, double yb, double t1, double t2){
+        ft1[0] = t1;
+        ft2[0] = t2;
+        fk.solve(ft1, ft2, fx, fy, pv, 0, 1);
+        if (!pv[0]){
+            return Double.POSITIVE_INFINITY; // forearms can not meet
+        }
+        double xt = fx[0];
+        double yt = fy[0];
+        // distance from the tool to the line segment
+        double lx = xb - xa;
+        double ly = yb - ya;
+        double len2 = lx*lx + ly*ly;
+        double s = len2 == 0 ? 0 : Math.max(0, Math.min(1, ((xt-xa)*lx + (yt-ya)*ly)/len2));
+        double dx = xt - (xa + s*lx);
+        double dy = yt - (ya + s*ly);
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+}
@@ -21,6 +21,16 @@ public class Arm
     private int xm2;
     private int ym2;
     private double r;  // length of the upper/fore arm
+    private ArmGeometry geometry; // the same parameters, shared with the batch solvers
+    private InverseKinematics ik;  // batch solver for this geometry
+    private ForwardKinematics fk;  // ditto, angles to tool position
+    private WorkspaceMap workspace; // reachable points, built on first use
+    private IKCache ik_cache;       // optional cache of solutions, null if not used
+    private IncrementalIK incremental_ik; // optional warm started solver, null if not used
+    private double cache_quantum;   // settings of the optional solvers, kept to stack them again
+    private int cache_capacity;
+    private double incremental_tolerance;
+    private IKSolver solver;        // all of them stacked (see rebuild_solver)
 
     // parameters of servo motors - linear function pwm(angle)
     // each of two motors has unique function which should be measured
@@ -63,6 +73,7 @@ public class Arm
     
     double m2Slope;//Slope of the line of best fit for motor 2
     double m2B;//y intercept
+    PwmLookupTable pwm_table; //Optional precomputed angle->pwm table, null if not built
     //End of Calibration variables
     
     /**
@@ -75,6 +86,10 @@ public class Arm
         xm2 = 377;
         ym2 = 374;
         r = 154.0;
+        geometry = new ArmGeometry(xm1, ym1, xm2, ym2, r);
+        ik = new InverseKinematics(geometry);
+        fk = new ForwardKinematics(geometry);
+        solver = ik;
         theta1 = -90.0*Math.PI/180.0; // initial angles of the upper arms
         theta2 = -90.0*Math.PI/180.0;
         valid_state = false;
@@ -136,44 +151,48 @@ public class Arm
     // calculate tool position from motor angles 
     // updates variable in the class
     public void directKinematic(){
-
-        // midpoint between joints
-        double  xa = xj1 + 0.5*(xj2-xj1);
-        double  ya = yj1 + 0.5*(yj2-yj1) ;
-        // half distance between joints
-        double d = 0.5*Math.sqrt((xj2-xj1)*(xj2-xj1) + (yj2-yj1)*(yj2-yj1));
-        if (d<2*r){
-            valid_state = true;
-            // half distance between tool positions
-            double  h = Math.sqrt(r*r-(d*d));
-            double alpha= Math.atan((yj1-yj2)/(xj1-xj2));
-            // tool position
-            double xt = xa + h*Math.cos(Math.PI/2.0-alpha);
-            double yt = ya + h*Math.sin(Math.PI/2.0-alpha);
-            double xt2 = xa - h*Math.cos(Math.PI/2.0-alpha);
-            double yt2 = ya - h*Math.sin(Math.PI/2.0-alpha);
-        } else {
-            valid_state = false;
+        // joints for the current angles
+        xj1 = xm1 + r*Math.cos(theta1);
+        yj1 = ym1 + r*Math.sin(theta1);
+        xj2 = xm2 + r*Math.cos(theta2);
+        yj2 = ym2 + r*Math.sin(theta2);
+        double[] x = new double[1];
+        double[] y = new double[1];
+        boolean[] valid = new boolean[1];
+        fk.solve(new double[]{theta1}, new double[]{theta2}, x, y, valid, 0, 1);
+        valid_state = valid[0];
+        if (valid_state){
+            xt = x[0];
+            yt = y[0];
         }
-
     }
 
     // motor angles from tool position
     // updates variables of the class
     public void inverseKinematic(double xt_new,double yt_new){
+        inverseKinematic(xt_new, yt_new, true);
+    }
+
+    // same, verbose prints the angles and why a point can not be reached
+    public void inverseKinematic(double xt_new,double yt_new,boolean verbose){
 
         valid_state = true;
         xt = xt_new;
         yt = yt_new;
         valid_state = true;
 
+        if (!get_workspace().isReachable(xt, yt)){ // quick test, no need to solve
+            valid_state = false;
+            return;
+        }
+
         // distance between pen and motor1        
         double dx1 = xt - xm1; 
         double dy1 = yt - ym1;
         double d1 = Math.sqrt(dx1*dx1 + dy1*dy1);
 
         if (d1>2*r){ //If the distance between the pen and the motor is greater than the possible length of the 2 arms
-            UI.println("Arm 1 - can not reach");
+            if (verbose) UI.println("Arm 1 - can not reach");
             valid_state = false;
             return;
         }
@@ -191,7 +210,7 @@ public class Arm
        
         if ((theta1>0)||(theta1<-Math.PI)){
             valid_state = false;
-            UI.println("Ange 1 -invalid");
+            if (verbose) UI.println("Ange 1 -invalid");
              return;
         }
 
@@ -201,7 +220,7 @@ public class Arm
         double dy2 = yt - ym2;
         double d2 = Math.sqrt(dx2*dx2 + dy2*dy2);
         if (d2>2*r){
-            UI.println("Arm 2 - can not reach");
+            if (verbose) UI.println("Arm 2 - can not reach");
             valid_state = false;
             return;
         }
@@ -220,7 +239,7 @@ public class Arm
         double dj = Math.sqrt((xj2 - xj1)*(xj2 - xj1) + (yj2 - yj1)*(yj2 - yj1));
         if(dj > 2*r){
             valid_state = false;
-            UI.println("Joints too far apart!");
+            if (verbose) UI.println("Joints too far apart!");
             return;
         }
         
@@ -228,15 +247,104 @@ public class Arm
         theta2 =  Math.atan2((yj2-ym2), (xj2-xm2));
         if ((theta2>0)||(theta2<-Math.PI)){
             valid_state = false;
-            UI.println("Ange 2 -invalid");
+            if (verbose) UI.println("Ange 2 -invalid");
             return;
         }
 
-        UI.printf("xt:%3.1f, yt:%3.1f\n",xt,yt);
-        UI.printf("theta1:%3.1f, theta2:%3.1f\n",theta1*180/Math.PI,theta2*180/Math.PI);
+        if (verbose){
+            UI.printf("xt:%3.1f, yt:%3.1f\n",xt,yt);
+            UI.printf("theta1:%3.1f, theta2:%3.1f\n",theta1*180/Math.PI,theta2*180/Math.PI);
+        }
         return;
     }
 
+    // returns fixed parameters of the arm
+    public ArmGeometry get_geometry(){
+        return geometry;
+    }
+
+    // returns map of reachable points,
+    // built with one cell per pixel if it was not built yet
+    public WorkspaceMap get_workspace(){
+        if (workspace == null){
+            build_workspace(1.0);
+        }
+        return workspace;
+    }
+
+    // builds map of reachable points with resolution cells per pixel
+    public void build_workspace(double resolution){
+        workspace = new WorkspaceMap(geometry, resolution);
+        rebuild_solver(incremental_ik != null, incremental_tolerance,
+                       ik_cache != null, cache_quantum, cache_capacity);
+    }
+
+    // returns batch inverse kinematics for conversions of whole paths
+    // points outside of the workspace are rejected early once the map is built
+    public IKSolver get_solver(){
+        return solver;
+    }
+
+    // stacks the solvers in one order, whatever order they were enabled in:
+    // closed form (behind the workspace map once it is built), warm started
+    // solver on top of it, cache outermost, as BatchConvert stacks them
+    // nothing changes if a setting is invalid
+    private void rebuild_solver(boolean incremental, double tolerance,
+                                boolean cache, double quantum, int capacity){
+        IKSolver stacked = workspace != null ? workspace : ik;
+        IncrementalIK new_incremental = null;
+        if (incremental){
+            new_incremental = new IncrementalIK(geometry, stacked, tolerance);
+            stacked = new_incremental;
+        }
+        IKCache new_cache = null;
+        if (cache){
+            new_cache = new IKCache(stacked, quantum, capacity);
+            stacked = new_cache;
+        }
+        incremental_ik = new_incremental;
+        incremental_tolerance = tolerance;
+        ik_cache = new_cache;
+        cache_quantum = quantum;
+        cache_capacity = capacity;
+        solver = stacked;
+    }
+
+    // returns batch forward kinematics for this geometry
+    public ForwardKinematics get_fk(){
+        return fk;
+    }
+
+    // puts cache of solutions in front of the batch solver
+    // points are rounded to a grid of quantum pixels
+    public void enable_ik_cache(double quantum, int capacity){
+        rebuild_solver(incremental_ik != null, incremental_tolerance, true, quantum, capacity);
+    }
+
+    public void disable_ik_cache(){
+        rebuild_solver(incremental_ik != null, incremental_tolerance, false, cache_quantum, cache_capacity);
+    }
+
+    // returns cache of solutions, null if it is not used
+    public IKCache get_ik_cache(){
+        return ik_cache;
+    }
+
+    // solves densely sampled paths from the previous point (see IncrementalIK)
+    // within tolerance radians of the closed form
+    public void enable_incremental_ik(double tolerance){
+        rebuild_solver(true, tolerance, ik_cache != null, cache_quantum, cache_capacity);
+    }
+
+    public void disable_incremental_ik(){
+        rebuild_solver(false, incremental_tolerance, ik_cache != null, cache_quantum, cache_capacity);
+    }
+
+    // returns warm started solver, null if it is not used
+    public IncrementalIK get_incremental_ik(){
+        return incremental_ik;
+    }
+
     // returns angle of motor 1
     public double get_theta1(){
         return theta1;
@@ -245,6 +353,17 @@ public class Arm
     public double get_theta2(){
         return theta2;
     }
+    // can the arm be in the state found by the last kinematics call?
+    public boolean get_valid_state(){
+        return valid_state;
+    }
+    // returns tool position found by the last kinematics call
+    public double get_xt(){
+        return xt;
+    }
+    public double get_yt(){
+        return yt;
+    }
     // sets angle of the motors
     public void set_angles(double t1, double t2){
         theta1 = t1;
@@ -265,6 +384,12 @@ public class Arm
         return pwm;
     }
     
+    // returns fitted servo functions, to be used
+    // outside of the arm (PwmPipeline, batch conversions)
+    public ServoCalibration get_calibration(){
+        return new ServoCalibration(m1Slope, m1B, m2Slope, m2B);
+    }
+    
     //Calibration Methods
     
     //Calibrates the arm
@@ -274,21 +399,67 @@ public class Arm
         initializeLists(calibrateFile);
         m1Fit();
         m2Fit();
+        if (pwm_table != null){
+            // table was built from the old fit
+            build_pwm_table(pwm_table.get_resolution());
+        }
+    }
+
+    //Calibrates the arm from the file, without any output (for BatchConvert)
+    //Earlier measurements are dropped
+    public void calibrate(String fname) throws FileNotFoundException{
+        motor1Pwm.clear();
+        motor1Angle.clear();
+        motor2Pwm.clear();
+        motor2Angle.clear();
+        readLists(fname);
+        if (motor1Pwm.isEmpty() || motor2Pwm.isEmpty()){
+            throw new IllegalArgumentException(fname + " has no measurements of one of the motors");
+        }
+        double[] line1 = fit(motor1Pwm, motor1Angle, false);
+        double[] line2 = fit(motor2Pwm, motor2Angle, false);
+        m1Slope = line1[0];
+        m1B = line1[1];
+        m2Slope = line2[0];
+        m2B = line2[1];
+        if (pwm_table != null){
+            build_pwm_table(pwm_table.get_resolution());
+        }
+    }
+    
+    //Tabulates fitted functions every resolution degrees
+    //so pwm values can be looked up instead of calculated
+    //Opt-in only: for the fitted lines the lookup is slower than
+    //calculating (see PwmLookupTable), nothing builds it by default
+    public void build_pwm_table(double resolution){
+        pwm_table = PwmLookupTable.build(get_calibration(), resolution);
+    }
+    
+    //Returns lookup table, or null if it was not built
+    public PwmLookupTable get_pwm_table(){
+        return pwm_table;
     }
     
     //Takes a file with a paste from the calibration display on the PI.
     //Must include both ***Motor1 headers
     //Adds each angle and pwm into the appropriate lists
     public void initializeLists(String fname){
-        String line;
+        try{
+            readLists(fname);
+        }
+        catch(Exception e){UI.println("Invalid File: " + e);}
+    }
+
+    //Reads calibration file into the lists, without any output
+    //Throws if the file can not be read or is malformed
+    void readLists(String fname) throws FileNotFoundException{
         String token;
         int index; //Index of '='
         int index2; //Index of '.'
         boolean motor1 = true;
-        try{
-            Scanner scan = new Scanner(new File(fname));
+        try (Scanner scan = new Scanner(new File(fname))) {
             scan.nextLine();
-            while(scan.hasNextLine()){
+            while(scan.hasNext()){ //blank lines at the end are fine
                 token = scan.next();
                 if(token.contains("***")){
                     motor1 = false;
@@ -318,60 +489,35 @@ public class Arm
                 }
             }
         }
-        catch(Exception e){UI.println("Invalid File: " + e);}
     }
     
     public void m1Fit(){
-        double meanPwm = 0;
-        double meanAngle = 0;
-        for(int counter = 0; counter < motor1Pwm.size(); counter++){
-            meanPwm += motor1Pwm.get(counter);
-        }
-        meanPwm /= motor1Pwm.size();
-        UI.println("MEAN PWM: " + meanPwm);
-        
-        for(int counter = 0; counter < motor1Angle.size(); counter++){
-            meanAngle += motor1Angle.get(counter);
-        }
-        meanAngle /= motor1Angle.size();
-        UI.println("MEAN angle: " + meanAngle);
-        
-        double total = 0;
-        int div = 0;
-        for(int counter = 0; counter < motor1Angle.size(); counter++){
-            total += (motor1Pwm.get(counter) - meanPwm)*(motor1Angle.get(counter) - meanAngle);
-            div += Math.pow((motor1Pwm.get(counter) - meanPwm),2);
-        }
-        
-        m1Slope = total/div;
-        m1B = meanAngle - (m1Slope*meanPwm);
-        UI.println("Equation: y = " + m1Slope + "x + " + m1B);
+        double[] line = fit(motor1Pwm, motor1Angle, true);
+        m1Slope = line[0];
+        m1B = line[1];
     }
-    
+
     public void m2Fit(){
-        double meanPwm = 0;
-        double meanAngle = 0;
-        for(int counter = 0; counter < motor2Pwm.size(); counter++){
-            meanPwm += motor2Pwm.get(counter);
-        }
-        meanPwm /= motor2Pwm.size();
-        UI.println("MEAN PWM: " + meanPwm);
-        
-        for(int counter = 0; counter < motor2Angle.size(); counter++){
-            meanAngle += motor2Angle.get(counter);
-        }
-        meanAngle /= motor2Angle.size();
-        UI.println("MEAN angle: " + meanAngle);
-        
-        double total = 0;
-        int div = 0;
-        for(int counter = 0; counter < motor2Angle.size(); counter++){
-            total += (motor2Pwm.get(counter) - meanPwm)*(motor2Angle.get(counter) - meanAngle);
-            div += Math.pow((motor2Pwm.get(counter) - meanPwm),2);
+        double[] line = fit(motor2Pwm, motor2Angle, true);
+        m2Slope = line[0];
+        m2B = line[1];
+    }
+
+    //Line angle = slope*pwm + b through the measurements,
+    //readings far off the line are not allowed to pull it (see ServoFitter)
+    //Returns {slope, b}, verbose prints the equation and how well it fits
+    static double[] fit(List<Integer> pwmList, List<Integer> angleList, boolean verbose){
+        ServoFit fit = new ServoFitter().fit(pwmList, angleList);
+        if (verbose){
+            UI.println(fit.toString());
+            for (int i = 0; i < fit.get_size(); i++){
+                if (fit.is_outlier(i)){
+                    UI.printf("Outlier: pwm %d angle %d, %.1f degrees off\n",
+                              pwmList.get(i), angleList.get(i), fit.get_residual(i));
+                }
+            }
+            UI.println("Equation: y = " + fit.get_slope() + "x + " + fit.get_b());
         }
-        
-        m2Slope = total/div;
-        m2B = meanAngle - (m2Slope*meanPwm);
-        UI.println("Equation: y = " + m2Slope + "x + " + m2B);
+        return new double[]{fit.get_slope(), fit.get_b()};
     }
 }
@@ -0,0 +1,60 @@
+
+/**
+ * Fixed dimensions of the SCARA arm: motor coordinates
+ * (in pixels of the picture) and length of the upper/fore arm.
+ * Objects of this class never change, so they can be shared
+ * between threads without locking.
+ */
+public final class ArmGeometry
+{
+    private final double xm1;  // coordinates of the motors
+    private final double ym1;
+    private final double xm2;
+    private final double ym2;
+    private final double r;    // length of the upper/fore arm
+
+    public ArmGeometry(double xm1, double ym1, double xm2, double ym2, double r)
+    {
+        this.xm1 = xm1;
+        this.ym1 = ym1;
+        this.xm2 = xm2;
+        this.ym2 = ym2;
+        this.r = r;
+    }
+
+    public double get_xm1(){
+        return xm1;
+    }
+    public double get_ym1(){
+        return ym1;
+    }
+    public double get_xm2(){
+        return xm2;
+    }
+    public double get_ym2(){
+        return ym2;
+    }
+    public double get_r(){
+        return r;
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if (!(o instanceof ArmGeometry)) {
+            return false;
+        }
+        ArmGeometry g = (ArmGeometry)o;
+        return xm1 == g.xm1 && ym1 == g.ym1 && xm2 == g.xm2
+            && ym2 == g.ym2 && r == g.r;
+    }
+
+    @Override
+    public int hashCode(){
+        long h = Double.doubleToLongBits(xm1);
+        h = 31*h + Double.doubleToLongBits(ym1);
+        h = 31*h + Double.doubleToLongBits(xm2);
+        h = 31*h + Double.doubleToLongBits(ym2);
+        h = 31*h + Double.doubleToLongBits(r);
+        return (int)(h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,233 @@
+
+/**
+ * Converts path files into pwm files from the command line,
+ * without the GUI (ecs100 and AWT are never loaded):
+ *
+ *   java BatchConvert [options] calibration_file path_file_or_dir...
+ *     -o dir        write pwm files into dir (default: next to each path file)
+ *     -n n_steps    segments per line (default 2, as ToolPath)
+ *     -t tolerance  adaptive subdivision, pixels (default 0 - fixed n_steps)
+ *     -j threads    files converted at once (default: number of processors)
+ *     -b            binary pwm files (see ToolPathBinaryWriter) instead of text
+ *     -table        use pwm lookup table (slower for the fitted lines,
+ *                   see PwmLookupTable)
+ *     -i            solve dense runs of points from the point before (see IncrementalIK)
+ *     -cache quantum  remember solutions of points rounded to quantum pixels
+ *                   (see IKCache), shared by all files
+ *
+ * Directories are converted file by file (not recursively). Every
+ * path file "name" gives "name.pwm" (or "name.bin" with -b).
+ * Files are converted concurrently on a thread pool, each streaming
+ * through its own PwmPipeline; solver and lookup table are shared.
+ * With -cache the hit ratio is printed at the end.
+ * Exit status is 1 if any file failed.
+ */
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class BatchConvert
+{
+    private String out_dir;       // null to write next to the path files
+    private int n_steps = 2;
+    private double tolerance = 0;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean binary;
+    private boolean table;
+    private boolean incremental;
+    private double cache_quantum; // 0 - no cache
+
+    private ArmGeometry geometry;
+    private ServoCalibration calibration;
+    private IKSolver ik;
+    private IKCache ik_cache;     // in front of ik, null if not used
+    private PwmLookupTable pwm_table;
+    private double start_theta1;
+    private double start_theta2;
+
+    // result of converting one file
+    private static class Result
+    {
+        final File file;
+        long points;   // points read
+        long samples;  // pwm values written
+        int malformed; // lines skipped
+        String error;  // null if converted
+
+        Result(File file){
+            this.file = file;
+        }
+    }
+
+    public static void main(String[] args){
+        long start = System.nanoTime();
+        BatchConvert batch = new BatchConvert();
+        List<String> rest = new ArrayList<String>();
+        try {
+            for (int i = 0; i < args.length; i++){
+                String a = args[i];
+                if (a.equals("-o")){
+                    batch.out_dir = args[++i];
+                } else if (a.equals("-n")){
+                    batch.n_steps = Integer.parseInt(args[++i]);
+                } else if (a.equals("-t")){
+                    batch.tolerance = Double.parseDouble(args[++i]);
+                } else if (a.equals("-j")){
+                    batch.threads = Integer.parseInt(args[++i]);
+                } else if (a.equals("-b")){
+                    batch.binary = true;
+                } else if (a.equals("-table")){
+                    batch.table = true;
+                } else if (a.equals("-i")){
+                    batch.incremental = true;
+                } else if (a.equals("-cache")){
+                    batch.cache_quantum = Double.parseDouble(args[++i]);
+                    if (!(batch.cache_quantum > 0)){
+                        throw new IllegalArgumentException("cache quantum must be positive");
+                    }
+                } else if (a.startsWith("-")){
+                    throw new IllegalArgumentException("unknown option " + a);
+                } else {
+                    rest.add(a);
+                }
+            }
+        } catch (RuntimeException e) {
+            // missing or malformed option value
+            usage("bad options: " + e.getMessage());
+            return;
+        }
+        if (rest.size() < 2 || batch.n_steps < 1 || batch.threads < 1){
+            usage(null);
+            return;
+        }
+        try {
+            batch.calibrate(rest.get(0));
+        } catch (Exception e) {
+            System.err.println("Can not calibrate from " + rest.get(0) + ": " + e.getMessage());
+            System.exit(1);
+        }
+        List<File> files = new ArrayList<File>();
+        for (String name : rest.subList(1, rest.size())){
+            File f = new File(name);
+            if (f.isDirectory()){
+                File[] list = f.listFiles();
+                if (list != null){
+                    java.util.Arrays.sort(list);
+                    for (File g : list){
+                        if (g.isFile() && !g.getName().endsWith(".pwm") && !g.getName().endsWith(".bin")){
+                            files.add(g);
+                        }
+                    }
+                }
+            } else {
+                files.add(f);
+            }
+        }
+        boolean ok = batch.convert_all(files, start);
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static void usage(String message){
+        if (message != null){
+            System.err.println(message);
+        }
+        System.err.println("usage: java BatchConvert [-o dir] [-n n_steps] [-t tolerance] [-j threads] [-b] [-table] [-i]");
+        System.err.println("                         [-cache quantum]");
+        System.err.println("                         calibration_file path_file_or_dir...");
+        System.exit(2);
+    }
+
+    // fits servo lines from the calibration file of the Pi
+    private void calibrate(String fname) throws IOException{
+        Arm arm = new Arm();
+        arm.calibrate(fname);
+        geometry = arm.get_geometry();
+        calibration = arm.get_calibration();
+        ik = new InverseKinematics(geometry);
+        if (incremental){
+            ik = new IncrementalIK(geometry, ik, IncrementalIK.DEFAULT_TOLERANCE);
+        }
+        if (cache_quantum > 0){
+            ik_cache = new IKCache(ik, cache_quantum, IKCache.DEFAULT_CAPACITY);
+            ik = ik_cache;
+        }
+        if (table){
+            pwm_table = PwmLookupTable.build(calibration, PwmLookupTable.DEFAULT_RESOLUTION);
+        }
+        start_theta1 = arm.get_theta1();
+        start_theta2 = arm.get_theta2();
+    }
+
+    // converts files on the thread pool and prints a line for each
+    // returns false if any file failed
+    private boolean convert_all(List<File> files, long start){
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(files.size(), 1)));
+        List<Future<Result>> futures = new ArrayList<Future<Result>>();
+        for (final File f : files){
+            futures.add(pool.submit(() -> convert(f)));
+        }
+        boolean ok = true;
+        long points = 0;
+        long samples = 0;
+        for (Future<Result> future : futures){
+            Result r;
+            try {
+                r = future.get();
+            } catch (Exception e) {
+                throw new IllegalStateException(e); // convert() catches its own errors
+            }
+            if (r.error != null){
+                ok = false;
+                System.err.println(r.file + ": " + r.error);
+                continue;
+            }
+            points += r.points;
+            samples += r.samples;
+            System.out.println(r.file + ": " + r.points + " points, " + r.samples + " pwm values"
+                               + (r.malformed > 0 ? ", " + r.malformed + " malformed lines skipped" : ""));
+        }
+        pool.shutdown();
+        double seconds = (System.nanoTime() - start)/1e9;
+        System.out.printf("%d files, %d points, %d pwm values in %.3f s (%.0f points/s, %.0f pwm values/s)%n",
+                          files.size(), points, samples, seconds, points/seconds, samples/seconds);
+        if (ik_cache != null){
+            System.out.printf("IK cache: %d hits, %d misses (%.1f%% hits)%n",
+                              ik_cache.get_hits(), ik_cache.get_misses(), 100*ik_cache.get_hit_ratio());
+        }
+        return ok;
+    }
+
+    private Result convert(File f){
+        Result r = new Result(f);
+        String name = f.getName() + (binary ? ".bin" : ".pwm");
+        File out = out_dir == null ? new File(f.getAbsoluteFile().getParentFile(), name) : new File(out_dir, name);
+        PwmPipeline pipeline = new PwmPipeline(ik, calibration, pwm_table, n_steps, start_theta1, start_theta2);
+        pipeline.set_tolerance(geometry, tolerance);
+        try (PathFileSource source = new PathFileSource(f.getPath())) {
+            // count points as they are read
+            PathSource counted = (x, y, pen, max) -> {
+                int n = source.read(x, y, pen, max);
+                r.points += n;
+                return n;
+            };
+            if (binary){
+                try (ToolPathBinaryWriter sink = new ToolPathBinaryWriter(out.getPath(), ToolPathBinaryWriter.PWM,
+                                                                          geometry, calibration)) {
+                    r.samples = pipeline.run(counted, sink);
+                }
+            } else {
+                try (PwmFileSink sink = new PwmFileSink(out.getPath())) {
+                    r.samples = pipeline.run(counted, sink);
+                }
+            }
+            r.malformed = source.get_error_count();
+        } catch (IOException | RuntimeException e) {
+            r.error = e.toString();
+        }
+        return r;
+    }
+}
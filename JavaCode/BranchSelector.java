@@ -0,0 +1,219 @@
+
+/**
+ * Inverse kinematics over whole tool paths, choosing for every point
+ * which way the elbows face.
+ * Each motor's elbow can sit on either side of the line from the motor
+ * to the tool, so most points have four solutions (branches):
+ *   ELBOWS_OUT - both elbows facing out, as InverseKinematics solves
+ *   ELBOW1_IN, ELBOW2_IN - one elbow turned in
+ *   ELBOWS_IN  - both turned in
+ * A solution counts if both motor angles are within [-pi,0] and the
+ * forearms meet with the tool on the side ForwardKinematics assumes
+ * (the arm can not be assembled the other way round).
+ * select() picks one branch per point by dynamic programming over the
+ * path: first as few unreachable points as possible, then the least
+ * total motor travel (sum of angle changes). The arm can only change
+ * branch by swinging through a pose where it can not draw, so branches
+ * change only between points joined by a pen-up move.
+ * Unreachable points keep the angles of the point before them, as in
+ * ToolPath.
+ * Like InverseKinematics the selector only reads its ArmGeometry,
+ * so one selector can be used by many threads at once.
+ */
+public final class BranchSelector
+{
+    public static final int ELBOWS_OUT = 0;
+    public static final int ELBOW1_IN = 1;
+    public static final int ELBOW2_IN = 2;
+    public static final int ELBOWS_IN = 3;
+    public static final int N_BRANCHES = 4;
+
+    private final ArmGeometry geometry;
+    // geometry copied into fields to keep the inner loop tight
+    private final double xm1;
+    private final double ym1;
+    private final double xm2;
+    private final double ym2;
+    private final double r;
+    private final double r2;      // r*r
+    private final double reach;   // 2*r - longest distance arm can reach
+
+    public BranchSelector(ArmGeometry geometry)
+    {
+        this.geometry = geometry;
+        xm1 = geometry.get_xm1();
+        ym1 = geometry.get_ym1();
+        xm2 = geometry.get_xm2();
+        ym2 = geometry.get_ym2();
+        r = geometry.get_r();
+        r2 = r*r;
+        reach = 2*r;
+    }
+
+    public ArmGeometry get_geometry(){
+        return geometry;
+    }
+
+    // motor angles (radians) of branch for tool position (x,y),
+    // written into angles[0], angles[1]; false if the branch can not reach it
+    public boolean solve(double x, double y, int branch, double[] angles){
+        return solve_point(x, y, branch, angles, 0);
+    }
+
+    // chooses branches for tool positions x[i],y[i], 0 <= i < n
+    // pen[i] is the pen while moving from point i to point i+1;
+    // the arm starts at start1,start2 (radians) with the pen up
+    // angles go to theta1[i], theta2[i], valid[i] is false for unreachable
+    // points, branch[i] (if not null) gets the branch of point i
+    // returns number of branch changes
+    public int select(double[] x, double[] y, boolean[] pen, int n,
+                      double start1, double start2,
+                      double[] theta1, double[] theta2, boolean[] valid, byte[] branch){
+        // best path ending in each branch: unreachable points, travel, angles
+        int[] missed = new int[N_BRANCHES];
+        double[] travel = new double[N_BRANCHES];
+        double[] at = new double[2*N_BRANCHES];
+        int[] new_missed = new int[N_BRANCHES];
+        double[] new_travel = new double[N_BRANCHES];
+        double[] new_at = new double[2*N_BRANCHES];
+        double[] sol = new double[2*N_BRANCHES];
+        boolean[] ok = new boolean[N_BRANCHES];
+        // branch of point i-1 on the best path to branch b at point i,
+        // two bits per branch
+        byte[] from = new byte[n];
+        for (int b = 0; b < N_BRANCHES; b++){
+            at[2*b] = start1;
+            at[2*b+1] = start2;
+        }
+
+        for (int i = 0; i < n; i++){
+            boolean can_switch = i == 0 || !pen[i-1];
+            int links = 0;
+            for (int b = 0; b < N_BRANCHES; b++){
+                ok[b] = solve_point(x[i], y[i], b, sol, 2*b);
+            }
+            for (int b = 0; b < N_BRANCHES; b++){
+                int best = b;
+                if (!ok[b]){
+                    // point missed, arm stays where it was
+                    new_missed[b] = missed[b] + 1;
+                    new_travel[b] = travel[b];
+                    new_at[2*b] = at[2*b];
+                    new_at[2*b+1] = at[2*b+1];
+                } else {
+                    new_missed[b] = missed[b];
+                    new_travel[b] = travel[b] + move(at, b, sol, b);
+                    for (int a = 0; a < N_BRANCHES && can_switch; a++){
+                        double t = travel[a] + move(at, a, sol, b);
+                        if (a != b && (missed[a] < new_missed[b]
+                                       || (missed[a] == new_missed[b] && t < new_travel[b]))){
+                            best = a;
+                            new_missed[b] = missed[a];
+                            new_travel[b] = t;
+                        }
+                    }
+                    new_at[2*b] = sol[2*b];
+                    new_at[2*b+1] = sol[2*b+1];
+                }
+                links |= best << (2*b);
+            }
+            from[i] = (byte)links;
+            System.arraycopy(new_missed, 0, missed, 0, N_BRANCHES);
+            System.arraycopy(new_travel, 0, travel, 0, N_BRANCHES);
+            System.arraycopy(new_at, 0, at, 0, 2*N_BRANCHES);
+        }
+        if (n == 0){
+            return 0;
+        }
+
+        // best end, then follow the links back, ties go to the lower branch
+        int b = 0;
+        for (int a = 1; a < N_BRANCHES; a++){
+            if (missed[a] < missed[b] || (missed[a] == missed[b] && travel[a] < travel[b])){
+                b = a;
+            }
+        }
+        byte[] chosen = branch != null ? branch : new byte[n];
+        for (int i = n-1; i >= 0; i--){
+            chosen[i] = (byte)b;
+            b = (from[i] >> (2*b)) & 3;
+        }
+
+        // angles along the chosen branches
+        int switches = 0;
+        double t1 = start1;
+        double t2 = start2;
+        for (int i = 0; i < n; i++){
+            if (i > 0 && chosen[i] != chosen[i-1]){
+                switches++;
+            }
+            valid[i] = solve_point(x[i], y[i], chosen[i], sol, 0);
+            if (valid[i]){
+                t1 = sol[0];
+                t2 = sol[1];
+            }
+            theta1[i] = t1;
+            theta2[i] = t2;
+        }
+        return switches;
+    }
+
+    // motor travel from angles of branch a to solution of branch b
+    private static double move(double[] at, int a, double[] sol, int b){
+        return Math.abs(sol[2*b] - at[2*a]) + Math.abs(sol[2*b+1] - at[2*a+1]);
+    }
+
+    // solves one point for branch, angles are written into angles[k], angles[k+1]
+    // only if the branch reaches the point
+    private boolean solve_point(double xt, double yt, int branch, double[] angles, int k){
+        // distance between pen and motor 1
+        double dx1 = xt - xm1;
+        double dy1 = yt - ym1;
+        double d1 = Math.sqrt(dx1*dx1 + dy1*dy1);
+        if (d1 > reach){
+            return false;
+        }
+        // elbow 1 position, same equations as InverseKinematics when facing out
+        double h1 = Math.sqrt(r2 - d1*d1/4);
+        if ((branch & ELBOW1_IN) != 0){
+            h1 = -h1;
+        }
+        double thetaA = Math.atan2(dy1, dx1);
+        double xj1 = xm1 + dx1/2 - h1*Math.cos((Math.PI/2.0) + thetaA);
+        double yj1 = ym1 + dy1/2 - h1*Math.sin((Math.PI/2.0) + thetaA);
+        double t1 = Math.atan2(yj1-ym1, xj1-xm1);
+        if ((t1>0)||(t1<-Math.PI)){
+            return false;
+        }
+
+        // distance between pen and motor 2
+        double dx2 = xt - xm2;
+        double dy2 = yt - ym2;
+        double d2 = Math.sqrt(dx2*dx2 + dy2*dy2);
+        if (d2 > reach){
+            return false;
+        }
+        // elbow 2 position
+        double h2 = Math.sqrt(r2 - d2*d2/4);
+        if ((branch & ELBOW2_IN) != 0){
+            h2 = -h2;
+        }
+        double thetaB = Math.atan2(dy2, dx2);
+        double xj2 = xm2 + 0.5*dx2 - h2*Math.cos(thetaB - Math.PI/2.0);
+        double yj2 = ym2 + 0.5*dy2 - h2*Math.sin(thetaB - Math.PI/2.0);
+        double t2 = Math.atan2(yj2-ym2, xj2-xm2);
+        if ((t2>0)||(t2<-Math.PI)){
+            return false;
+        }
+
+        // tool must be where ForwardKinematics puts it for these elbows
+        double ex = xj2 - xj1;
+        double ey = yj2 - yj1;
+        if ((xt - (xj1 + xj2)/2)*ey - (yt - (yj1 + yj2)/2)*ex < 0){
+            return false;
+        }
+        angles[k] = t1;
+        angles[k+1] = t2;
+        return true;
+    }
+}
@@ -3,6 +3,12 @@
 
 /**
  * Class represents the drawing as set of (x,y) points.
+ * Points are packed into arrays of coordinates and a bit set of pen
+ * positions rather than kept as PointXY objects (16 bytes and a bit
+ * a point, and nothing for the garbage collector to trace).
+ * Where a PointXY is still wanted, PointView shows a point of the
+ * drawing through the PointXY interface; one view can be moved from
+ * point to point instead of making an object for each.
  * 
  * @author (your name) 
  * @version (a version number or a date)
@@ -23,69 +29,145 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 
 import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 public class Drawing
 {
     
     // set of points
-    private ArrayList<PointXY> path;
+    private double[] xs;
+    private double[] ys;
+    private BitSet pens;   // pen down at point i
+    private int size;
+    // counts times the path was cleared, so views can tell
+    // points appended to the path from a new path
+    private int generation;
+    // decimated path for the screen
+    private final PathLod lod = new PathLod();
+    // told about changes
+    private final List<DrawingListener> listeners = new CopyOnWriteArrayList<DrawingListener>();
 
     /**
      * Constructor for objects of class Drawing
      */
     public Drawing()
     {
-       path = new ArrayList<PointXY>();
+       xs = new double[16];
+       ys = new double[16];
+       pens = new BitSet();
     }
 
-    public void add_point_to_path(double x, double y,boolean pen)
+    public synchronized void add_point_to_path(double x, double y,boolean pen)
     {
-        PointXY new_point = new PointXY(x,y,pen);
-        path.add(new_point);
+        append_point(x, y, pen);
         UI.printf("Pioint added.x=%f y=%f pen=%b New path size - %d\n",
-              x,y,pen,path.size());
+              x,y,pen,size);
+    }
+    
+    // adds point without printing, for loading and building whole paths
+    synchronized void append_point(double x, double y, boolean pen)
+    {
+        ensure_capacity(size + 1);
+        xs[size] = x;
+        ys[size] = y;
+        pens.set(size, pen);
+        size++;
+        fire(size-1, size);
+    }
+    
+    // adds points 0..n-1 of the arrays
+    public synchronized void append_points(double[] x, double[] y, boolean[] pen, int n)
+    {
+        ensure_capacity(size + n);
+        System.arraycopy(x, 0, xs, size, n);
+        System.arraycopy(y, 0, ys, size, n);
+        for (int i = 0; i < n; i++){
+            pens.set(size + i, pen[i]);
+        }
+        size += n;
+        if (n > 0){
+            fire(size-n, size);
+        }
+    }
+    
+    public void add_listener(DrawingListener listener){
+        listeners.add(listener);
+    }
+    
+    public void remove_listener(DrawingListener listener){
+        listeners.remove(listener);
+    }
+    
+    // tells listeners that points from..to-1 changed
+    private void fire(int from, int to){
+        for (DrawingListener listener : listeners){
+            listener.points_changed(this, from, to);
+        }
+    }
+    
+    private void ensure_capacity(int capacity){
+        if (capacity > xs.length){
+            int c = Math.max(capacity, 2*xs.length);
+            xs = Arrays.copyOf(xs, c);
+            ys = Arrays.copyOf(ys, c);
+        }
     }
     
     public void print_path(){
         UI.printf("*************************\n");
-        for (int i = 0; i < path.size();i++){
+        for (int i = 0; i < size;i++){
             
-            double x0 = path.get(i).get_x();
-            double y0 = path.get(i).get_y();
-            boolean p = path.get(i).get_pen();
+            double x0 = xs[i];
+            double y0 = ys[i];
+            boolean p = pens.get(i);
             UI.printf("i=%d x=%f y=%f pen=%b\n",i,x0,y0,p);
         }
         UI.printf("*************************\n");
     }
     
     public void draw(){
-           //draw path
-        for (int i = 1; i < path.size() ; i++){
-            PointXY p0 = get_drawing_point(i-1);
-            PointXY p1 = get_drawing_point(i); 
-            if (path.get(i).get_pen()){
-                UI.setColor(Color.BLUE); //pen down part
-            } else {
-                UI.setColor(Color.LIGHT_GRAY); // pen uo
-            }
-            UI.drawLine(p0.get_x(), p0.get_y(), p1.get_x(), p1.get_y());
-            
-        }
+           //draw path, pen down in blue, pen up in light gray
+        render(UI.getGraphics(), 0);
+        UI.repaintAllGraphics();
+    }
+    
+    // draws lines of the path with g, leaving out detail finer than a pixel
+    // from is the value returned by the last call, to draw only lines
+    // added since then, or 0 for all
+    synchronized int render(Graphics2D g, int from){
+        return lod.render(g, this, from);
+    }
+    
+    synchronized int get_generation(){
+        return generation;
     }
     
     public int get_path_size(){
-        return path.size();
+        return size;
     }
     
     //pen_down = false for last point
-    public void path_raise_pen(){
-        path.get(path.size()-1).set_pen(false);
+    public synchronized void path_raise_pen(){
+        set_point(size-1, xs[size-1], ys[size-1], false);
     }
     
     public PointXY get_path_last_point(){
-        PointXY lp = path.get(path.size()-1);
-        return lp;
+        return get_drawing_point(size-1);
+    }
+    
+    // changes point i
+    synchronized void set_point(int i, double x, double y, boolean pen){
+        if (i < 0 || i >= size){
+            throw new IndexOutOfBoundsException("Point " + i + ", size " + size);
+        }
+        xs[i] = x;
+        ys[i] = y;
+        pens.set(i, pen);
+        lod.reset();
+        generation++; // views must draw the path again
+        fire(i, i+1);
     }
     
     public void save_path(String fname){
@@ -97,11 +179,11 @@ public class Drawing
             OutputStreamWriter osw = new OutputStreamWriter(is);    
             Writer w = new BufferedWriter(osw);
             String str_out; 
-            for (int i = 1; i < path.size() ; i++){
-                if (path.get(i).get_pen()) {
-                  str_out = path.get(i).get_x() +" "+ path.get(i).get_y() +" 1\n";
+            for (int i = 1; i < size ; i++){
+                if (pens.get(i)) {
+                  str_out = xs[i] +" "+ ys[i] +" 1\n";
                 } else {
-                  str_out = path.get(i).get_x() +" "+ path.get(i).get_y() +" 0\n";
+                  str_out = xs[i] +" "+ ys[i] +" 0\n";
                 }
                 w.write(str_out);
             }
@@ -113,39 +195,144 @@ public class Drawing
     
     
     public void load_path(String fname){
-        
-      String  in_line = null;
-      try{
-         // open input stream test.txt for reading purpose.
-         BufferedReader in = new BufferedReader(new FileReader(new File(fname)));
-         // clear existing path
-         path.clear();
-         
-         while ((in_line = in.readLine()) != null) {
-            UI.println(in_line);
-            String[] tokens = in_line.split(" ");
-            UI.println("Number of tokens in line " + in_line + ": " + tokens.length);
-            UI.println("The tokens are:");
-            UI.printf("%s %s %s\n",tokens[0],tokens[1],tokens[2]);
-            double x = Double.parseDouble(tokens[0]);
-            double y = Double.parseDouble(tokens[1]);
-            boolean pen = (Integer.parseInt(tokens[2]) == 1) ;
-            add_point_to_path(x,y,pen);
-         }       
-      }catch(Exception e){
-          
-         e.printStackTrace();
-      }
-   
+        load_path(fname, false);
+    }
+    
+    // loads path from the file, replacing the current one
+    // verbose prints every point as it is loaded
+    // the current path is kept if the file can not be opened
+    public void load_path(String fname, boolean verbose){
+        try (PathFileSource in = new PathFileSource(fname)) {
+            clear();
+            read_path(in, verbose);
+            for (String error : in.get_errors()){
+                UI.println(fname + ": " + error);
+            }
+            if (in.get_error_count() > in.get_errors().size()){
+                UI.println(fname + ": " + (in.get_error_count() - in.get_errors().size()) + " more malformed lines");
+            }
+            UI.printf("Loaded %d points from %s\n", size, fname);
+        } catch (IOException e) {
+            UI.println("Problem reading the file " + fname + ": " + e.getMessage());
+        }
+    }
+    
+    // removes all points
+    public synchronized void clear(){
+        size = 0;
+        pens.clear();
+        lod.reset();
+        generation++;
+        fire(0, 0);
+    }
+    
+    // appends all points of the source, without reporting errors
+    void read_path(PathSource in, boolean verbose) throws IOException{
+        double[] x = new double[PwmPipeline.POINT_BATCH];
+        double[] y = new double[PwmPipeline.POINT_BATCH];
+        boolean[] pen = new boolean[PwmPipeline.POINT_BATCH];
+        int n;
+        while ((n = in.read(x, y, pen, x.length)) > 0) {
+            append_points(x, y, pen, n);
+            if (verbose){
+                for (int i = 0; i < n; i++){
+                    UI.printf("i=%d x=%f y=%f pen=%b\n", size-n+i, x[i], y[i], pen[i]);
+                }
+            }
+        }
     }
     
     public int get_drawing_size() {
-        return path.size();
+        return size;
+    }
+    
+    public double get_x(int i){
+        return xs[check(i)];
+    }
+    
+    public double get_y(int i){
+        return ys[check(i)];
+    }
+    
+    public boolean get_pen(int i){
+        return pens.get(check(i));
     }
     
+    private int check(int i){
+        if (i < 0 || i >= size){
+            throw new IndexOutOfBoundsException("Point " + i + ", size " + size);
+        }
+        return i;
+    }
+    
+    // view of point i, changes made through it change the drawing
     public PointXY get_drawing_point(int i){
-        PointXY p = path.get(i);
-        return p;
+        return new PointView(check(i));
+    }
+    
+    // view which can be moved to any point with at(), for going through
+    // many points without making an object for each
+    public PointView new_view(){
+        return new PointView(0);
+    }
+    
+    // copies points from..to-1 into the arrays, starting at offset
+    public synchronized void get_points(int from, int to, double[] x, double[] y, boolean[] pen, int offset){
+        if (from < 0 || to > size || from > to){
+            throw new IndexOutOfBoundsException("Points " + from + ".." + to + ", size " + size);
+        }
+        System.arraycopy(xs, from, x, offset, to - from);
+        System.arraycopy(ys, from, y, offset, to - from);
+        for (int i = from; i < to; i++){
+            pen[offset + i - from] = pens.get(i);
+        }
+    }
+    
+    // point of the drawing seen as PointXY
+    public class PointView extends PointXY
+    {
+        private int i;
+        
+        private PointView(int i){
+            this.i = i;
+        }
+        
+        // moves the view to point i, returns the view
+        public PointView at(int i){
+            this.i = check(i);
+            return this;
+        }
+        
+        public int get_index(){
+            return i;
+        }
+        
+        // a view left on a point the drawing no longer has
+        // throws, as Drawing.get_x does
+        public double get_x(){
+            return Drawing.this.get_x(i);
+        }
+        public double get_y(){
+            return Drawing.this.get_y(i);
+        }
+        public boolean get_pen(){
+            return Drawing.this.get_pen(i);
+        }
+        public void set_x(double xi){
+            synchronized (Drawing.this){
+                set_point(i, xi, ys[check(i)], pens.get(i));
+            }
+        }
+        public void set_y(double yi){
+            synchronized (Drawing.this){
+                set_point(i, xs[check(i)], yi, pens.get(i));
+            }
+        }
+        public void set_pen(boolean peni){
+            synchronized (Drawing.this){
+                set_point(i, xs[check(i)], ys[i], peni);
+            }
+        }
     }
     
 }
@@ -0,0 +1,15 @@
+
+/**
+ * Told about every change of a Drawing it was added to
+ * (Drawing.add_listener), so results worked out from the drawing
+ * can be kept up to date instead of worked out again.
+ * Called by the thread changing the drawing, which holds the lock
+ * of the drawing meanwhile; listeners must be quick and must not
+ * wait for other threads using the drawing.
+ */
+public interface DrawingListener
+{
+    // points from..to-1 were added or changed, all other points are as
+    // they were. After the drawing was cleared from and to are 0
+    void points_changed(Drawing drawing, int from, int to);
+}
@@ -0,0 +1,22 @@
+
+/**
+ * PathSource which hands out points of a Drawing held in memory.
+ */
+public class DrawingSource implements PathSource
+{
+    private final Drawing drawing;
+    private int next; // index of the next point to read
+
+    public DrawingSource(Drawing drawing)
+    {
+        this.drawing = drawing;
+        next = 0;
+    }
+
+    public int read(double[] x, double[] y, boolean[] pen, int max){
+        int n = Math.min(max, drawing.get_drawing_size() - next);
+        drawing.get_points(next, next+n, x, y, pen, 0);
+        next += n;
+        return n;
+    }
+}
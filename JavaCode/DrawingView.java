@@ -0,0 +1,170 @@
+
+/**
+ * Draws the drawing and the arm on the graphics pane only when
+ * something has changed, instead of redrawing every 20 ms.
+ * Lines of the drawing are drawn once into an offscreen image; points
+ * added to the path are drawn onto it as they come, and it is drawn
+ * again from scratch only for a new drawing, a cleared path or a new
+ * size of the pane. Every frame copies the image and draws the arm and
+ * the mouse (position and line from the last point) on top.
+ * The GUI calls invalidate() or set_mouse() after changing anything;
+ * changes made while waiting for the next frame are drawn together, so
+ * there are never more frames than the screen refresh rate.
+ */
+import ecs100.UI;
+import java.awt.Color;
+import java.awt.DisplayMode;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+
+public class DrawingView
+{
+    public static final int DEFAULT_REFRESH_RATE = 60; // Hz, if the screen does not say
+
+    private final Arm arm;
+    private final long frame_nanos;    // shortest time between frames
+
+    // state to draw, guarded by this
+    private Drawing drawing;
+    private boolean dirty = true;      // frame needs drawing
+    private boolean mouse;             // mouse seen over the pane
+    private double mouse_x;
+    private double mouse_y;
+    private boolean rubber_band;       // line from the last point to the mouse
+
+    // offscreen image of the lines, only used by the drawing thread
+    private BufferedImage layer;
+    private Drawing layer_drawing;     // drawing in the image
+    private int layer_generation;
+    private int layer_points;          // points of the path in the image
+    private int layer_next;            // where Drawing.render() continues
+
+    public DrawingView(Arm arm, Drawing drawing)
+    {
+        this.arm = arm;
+        this.drawing = drawing;
+        frame_nanos = 1000000000L/refresh_rate();
+    }
+
+    private static int refresh_rate(){
+        try {
+            DisplayMode mode = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDisplayMode();
+            if (mode.getRefreshRate() != DisplayMode.REFRESH_RATE_UNKNOWN){
+                return mode.getRefreshRate();
+            }
+        } catch (RuntimeException e) {
+            // headless or no screen information
+        }
+        return DEFAULT_REFRESH_RATE;
+    }
+
+    // shows another drawing (optimised, simplified...)
+    public synchronized void set_drawing(Drawing drawing){
+        this.drawing = drawing;
+        invalidate();
+    }
+
+    // mouse moved to x,y; rubber_band draws line to it from the last point
+    public synchronized void set_mouse(double x, double y, boolean rubber_band){
+        mouse = true;
+        mouse_x = x;
+        mouse_y = y;
+        this.rubber_band = rubber_band;
+        invalidate();
+    }
+
+    // something changed, draw next frame
+    public synchronized void invalidate(){
+        dirty = true;
+        notifyAll();
+    }
+
+    // draws frames as long as the program runs
+    public void run(){
+        UI.setImmediateRepaint(false);
+        long last = System.nanoTime() - frame_nanos;
+        while (true){
+            synchronized (this){
+                while (!dirty){
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            // wait for the next frame, collecting any further changes
+            long wait = last + frame_nanos - System.nanoTime();
+            if (wait > 0){
+                UI.sleep(wait/1000000.0);
+            }
+            last = System.nanoTime();
+            draw_frame();
+        }
+    }
+
+    private void draw_frame(){
+        Drawing d;
+        boolean show_mouse;
+        double x;
+        double y;
+        boolean band;
+        synchronized (this){
+            dirty = false;
+            d = drawing;
+            show_mouse = mouse;
+            x = mouse_x;
+            y = mouse_y;
+            band = rubber_band;
+        }
+        update_layer(d);
+        UI.drawImage(layer, 0, 0);
+        arm.draw();
+        if (show_mouse){
+            if (band){
+                PointXY lp = null;
+                synchronized (d){
+                    if (d.get_path_size() > 0){
+                        lp = d.get_path_last_point();
+                    }
+                }
+                if (lp != null){
+                    UI.setColor(Color.GRAY);
+                    UI.drawLine(lp.get_x(), lp.get_y(), x, y);
+                }
+            }
+            UI.setColor(Color.BLACK);
+            UI.drawString(String.format("%3.1f %3.1f", x, y), x+10, y+10);
+        }
+        UI.repaintGraphics();
+    }
+
+    // brings the offscreen image up to date with the drawing
+    private void update_layer(Drawing d){
+        int width = Math.max(UI.getCanvasWidth(), 1);
+        int height = Math.max(UI.getCanvasHeight(), 1);
+        synchronized (d){
+            boolean redraw = layer == null || layer.getWidth() != width || layer.getHeight() != height
+                || d != layer_drawing || d.get_generation() != layer_generation;
+            if (!redraw && d.get_path_size() == layer_points){
+                return; // nothing new
+            }
+            if (layer == null || layer.getWidth() != width || layer.getHeight() != height){
+                layer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            }
+            Graphics2D g = layer.createGraphics();
+            if (redraw){
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, width, height);
+                layer_drawing = d;
+                layer_generation = d.get_generation();
+                layer_next = 0;
+            }
+            layer_next = d.render(g, layer_next);
+            layer_points = d.get_path_size();
+            g.dispose();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+
+/**
+ * Batch forward kinematics for the SCARA arm: tool positions
+ * from motor angles, for whole tool paths at once.
+ * Forearms meet at two points, one for each way the linkage can be
+ * assembled. The arm works with the tool to the left of the line from
+ * elbow 1 to elbow 2 as seen on the screen (above the elbows in the
+ * usual pose) and can not switch over without passing through the
+ * point where forearms are in line, so that is the point returned.
+ * Close to the motors InverseKinematics also gives angles for which
+ * the tool would have to be on the other side; the arm then goes to
+ * the mirror point, and forward kinematics says where.
+ * Like InverseKinematics the solver only reads its ArmGeometry and
+ * writes into arrays supplied by the caller, so it can be shared by threads.
+ */
+public final class ForwardKinematics
+{
+    private final ArmGeometry geometry;
+    // geometry copied into fields to keep the inner loop tight
+    private final double xm1;
+    private final double ym1;
+    private final double xm2;
+    private final double ym2;
+    private final double r;
+    private final double r2;      // r*r
+
+    public ForwardKinematics(ArmGeometry geometry)
+    {
+        this.geometry = geometry;
+        xm1 = geometry.get_xm1();
+        ym1 = geometry.get_ym1();
+        xm2 = geometry.get_xm2();
+        ym2 = geometry.get_ym2();
+        r = geometry.get_r();
+        r2 = r*r;
+    }
+
+    public ArmGeometry get_geometry(){
+        return geometry;
+    }
+
+    // tool positions for motor angles (radians) theta1[i], theta2[i], from <= i < to
+    // valid[i] is false if forearms can not meet,
+    // x[i] and y[i] are then set to NaN
+    public void solve(double[] theta1, double[] theta2,
+                      double[] x, double[] y, boolean[] valid,
+                      int from, int to){
+        for (int i = from; i < to; i++){
+            valid[i] = solve_point(theta1[i], theta2[i], x, y, i);
+            if (!valid[i]){
+                x[i] = Double.NaN;
+                y[i] = Double.NaN;
+            }
+        }
+    }
+
+    // solves one point, position is written into x[i], y[i] if forearms meet
+    private boolean solve_point(double t1, double t2, double[] x, double[] y, int i){
+        // elbows
+        double xj1 = xm1 + r*Math.cos(t1);
+        double yj1 = ym1 + r*Math.sin(t1);
+        double xj2 = xm2 + r*Math.cos(t2);
+        double yj2 = ym2 + r*Math.sin(t2);
+        double ex = xj2 - xj1;
+        double ey = yj2 - yj1;
+        double dj2 = ex*ex + ey*ey;
+        if (dj2 > 4*r2 || dj2 == 0){
+            return false; // too far apart, or on top of each other
+        }
+        double dj = Math.sqrt(dj2);
+        // distance from the middle of the elbows to the tool
+        double h = Math.sqrt(r2 - dj2/4);
+        x[i] = xj1 + ex/2 + h*ey/dj;
+        y[i] = yj1 + ey/2 - h*ex/dj;
+        return true;
+    }
+}
@@ -0,0 +1,221 @@
+
+/**
+ * Bounded cache in front of an IKSolver for drawings which visit the
+ * same coordinates over and over (fills, hatching, repeated shapes).
+ * Tool positions are rounded to a grid of `quantum` pixels and the
+ * solution of the grid point is remembered, so result for a point does
+ * not depend on whether it was a hit or a miss.
+ * Cache is set associative (WAYS entries per set) with clock eviction
+ * inside each set. Entries are immutable and published through an
+ * AtomicReferenceArray, so any number of threads can read and fill
+ * the cache at the same time without locking.
+ */
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class IKCache implements IKSolver
+{
+    public static final double DEFAULT_QUANTUM = 0.1;  // pixels
+    public static final int DEFAULT_CAPACITY = 1 << 16; // entries
+    static final int WAYS = 4; // entries per set
+
+    // one remembered solution
+    private static final class Entry
+    {
+        final long key;
+        final double theta1;
+        final double theta2;
+        final boolean valid;
+
+        Entry(long key, double theta1, double theta2, boolean valid){
+            this.key = key;
+            this.theta1 = theta1;
+            this.theta2 = theta2;
+            this.valid = valid;
+        }
+    }
+
+    private final IKSolver solver;  // solves the misses
+    private final double quantum;   // grid step, pixels
+    private final double inv_quantum;
+    private final int set_mask;     // number of sets - 1
+    private final AtomicReferenceArray<Entry> entries;
+    private final AtomicIntegerArray referenced; // clock bits, one per entry
+    private final AtomicIntegerArray hands;      // clock hand, one per set
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // capacity is rounded up to a power of two
+    public IKCache(IKSolver solver, double quantum, int capacity)
+    {
+        if (!(quantum > 0) || capacity < 1){
+            throw new IllegalArgumentException("Invalid cache quantum " + quantum + " or capacity " + capacity);
+        }
+        this.solver = solver;
+        this.quantum = quantum;
+        this.inv_quantum = 1.0/quantum;
+        int sets = Integer.highestOneBit(Math.max((capacity + WAYS - 1)/WAYS, 1) * 2 - 1);
+        set_mask = sets - 1;
+        entries = new AtomicReferenceArray<Entry>(sets*WAYS);
+        referenced = new AtomicIntegerArray(sets*WAYS);
+        hands = new AtomicIntegerArray(sets);
+    }
+
+    public double get_quantum(){
+        return quantum;
+    }
+
+    public int get_capacity(){
+        return entries.length();
+    }
+
+    // points answered without solving, repeats of a point
+    // missed earlier in the same batch included
+    public long get_hits(){
+        return hits.sum();
+    }
+
+    // grid points solved
+    public long get_misses(){
+        return misses.sum();
+    }
+
+    // fraction of lookups answered from the cache
+    public double get_hit_ratio(){
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double)h/total;
+    }
+
+    public void clear(){
+        for (int i = 0; i < entries.length(); i++){
+            entries.set(i, null);
+            referenced.set(i, 0);
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    public void solve(double[] x, double[] y,
+                      double[] theta1, double[] theta2, boolean[] valid,
+                      int from, int to){
+        // first pass answers hits and collects misses
+        int[] miss = null;
+        long[] miss_key = null;
+        int n_miss = 0;
+        for (int i = from; i < to; i++){
+            long key = key(x[i], y[i]);
+            Entry e = lookup(key);
+            if (e != null){
+                theta1[i] = e.theta1;
+                theta2[i] = e.theta2;
+                valid[i] = e.valid;
+            } else {
+                if (miss == null){
+                    miss = new int[to - i];
+                    miss_key = new long[to - i];
+                }
+                miss_key[n_miss] = key;
+                miss[n_miss++] = i;
+            }
+        }
+        if (n_miss == 0){
+            hits.add(to - from);
+            return;
+        }
+
+        // a grid point missed more than once in the batch (hatching and
+        // fills go over the same points) is solved and inserted once,
+        // so it does not take a second way of its set
+        int[] point = new int[n_miss];   // unique grid point of each miss
+        int[] first = new int[n_miss];   // first miss of each unique point
+        int n_points = 0;
+        int mask = Integer.highestOneBit(2*n_miss - 1)*2 - 1;
+        int[] slots = new int[mask + 1]; // open addressing, unique point + 1, 0 if free
+        for (int k = 0; k < n_miss; k++){
+            long key = miss_key[k];
+            int h = (int)(key * 0x9E3779B97F4A7C15L >>> 32) & mask;
+            while (slots[h] != 0 && miss_key[first[slots[h] - 1]] != key){
+                h = (h + 1) & mask;
+            }
+            if (slots[h] == 0){
+                first[n_points] = k;
+                slots[h] = ++n_points;
+            }
+            point[k] = slots[h] - 1;
+        }
+        hits.add(to - from - n_points);
+        misses.add(n_points);
+
+        // solve all missed grid points in one batch
+        double[] qx = new double[n_points];
+        double[] qy = new double[n_points];
+        double[] t1 = new double[n_points];
+        double[] t2 = new double[n_points];
+        boolean[] v = new boolean[n_points];
+        for (int u = 0; u < n_points; u++){
+            int i = miss[first[u]];
+            qx[u] = Math.rint(x[i]*inv_quantum)*quantum;
+            qy[u] = Math.rint(y[i]*inv_quantum)*quantum;
+        }
+        solver.solve(qx, qy, t1, t2, v, 0, n_points);
+        for (int u = 0; u < n_points; u++){
+            insert(new Entry(miss_key[first[u]], t1[u], t2[u], v[u]));
+        }
+        for (int k = 0; k < n_miss; k++){
+            int i = miss[k];
+            int u = point[k];
+            theta1[i] = t1[u];
+            theta2[i] = t2[u];
+            valid[i] = v[u];
+        }
+    }
+
+    // grid point of (x,y) packed into one long
+    private long key(double x, double y){
+        long qx = (long)Math.rint(x*inv_quantum);
+        long qy = (long)Math.rint(y*inv_quantum);
+        return (qx << 32) ^ (qy & 0xffffffffL);
+    }
+
+    private int set_of(long key){
+        // mix bits so neighbouring grid points spread over the sets
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 29)) & set_mask;
+    }
+
+    private Entry lookup(long key){
+        int base = set_of(key)*WAYS;
+        for (int w = 0; w < WAYS; w++){
+            Entry e = entries.get(base+w);
+            if (e != null && e.key == key){
+                if (referenced.get(base+w) == 0){
+                    referenced.lazySet(base+w, 1);
+                }
+                return e;
+            }
+        }
+        return null;
+    }
+
+    // puts entry in its set, evicting with the clock algorithm:
+    // the hand skips (and clears) recently used entries
+    private void insert(Entry e){
+        int set = set_of(e.key);
+        int base = set*WAYS;
+        int hand = hands.get(set);
+        int victim = hand & (WAYS-1);
+        for (int k = 0; k < 2*WAYS; k++){
+            int w = (hand + k) & (WAYS-1);
+            if (entries.get(base+w) == null || referenced.get(base+w) == 0){
+                victim = w;
+                break;
+            }
+            referenced.lazySet(base+w, 0);
+        }
+        entries.set(base+victim, e);
+        referenced.lazySet(base+victim, 1);
+        hands.lazySet(set, victim+1);
+    }
+}
@@ -0,0 +1,15 @@
+
+/**
+ * Inverse kinematics over arrays of tool positions.
+ * Implementations must not keep state between calls,
+ * so they can be shared by the threads of a parallel conversion.
+ */
+public interface IKSolver
+{
+    // motor angles (radians) for tool positions x[i],y[i], from <= i < to
+    // valid[i] is false if the point can not be reached,
+    // theta1[i] and theta2[i] are then set to NaN
+    void solve(double[] x, double[] y,
+               double[] theta1, double[] theta2, boolean[] valid,
+               int from, int to);
+}
@@ -0,0 +1,162 @@
+
+/**
+ * Inverse kinematics for densely sampled paths, where every point is
+ * close to the one before. Instead of solving each point from scratch
+ * (four atan2, four sin/cos and five square roots), the angles of the
+ * previous point are moved by Newton steps on the distance from each
+ * elbow to the tool: the first step is the step of the linkage Jacobian,
+ * the following ones correct it. Both motors are solved independently,
+ * as in the closed form, and elbows are turned by a short polynomial
+ * rotation, so a warm started point needs no trigonometry or square roots
+ * at all.
+ * The closed form solver is used for the first point of every call and
+ * whenever the warm start can not be trusted:
+ *   - the previous point was not reached, or is more than MAX_STEP*r
+ *     pixels away along x or y (the arm seldom gets there in a step),
+ *   - a step is larger than MAX_STEP radians,
+ *   - upper arm and forearm are within MIN_SIN (sine of the angle) of
+ *     being in line, where solutions meet (tool at full reach or at the motor),
+ *   - a motor angle leaves [-pi,0],
+ *   - steps are still above tolerance radians after MAX_ITERATIONS.
+ * Results then agree with the closed form within tolerance radians.
+ * Like the other solvers no state is kept between calls (runs only warm
+ * start within one call), so one solver can be used by many threads.
+ */
+import java.util.concurrent.atomic.LongAdder;
+
+public final class IncrementalIK implements IKSolver
+{
+    public static final double DEFAULT_TOLERANCE = 1e-9; // radians
+    static final double MAX_STEP = 0.05;  // radians per Newton step
+    static final double MIN_SIN = 0.05;
+    static final int MAX_ITERATIONS = 4;
+
+    private final IKSolver closed;   // solves points which are not warm started
+    private final double tolerance;
+    // geometry copied into fields to keep the inner loop tight
+    private final double xm1;
+    private final double ym1;
+    private final double xm2;
+    private final double ym2;
+    private final double r;
+    private final double r2;      // r*r
+    private final double max_jump; // pixels between points solved warm
+    private final LongAdder warm = new LongAdder();
+    private final LongAdder cold = new LongAdder();
+
+    // closed is normally InverseKinematics or WorkspaceMap for the geometry
+    public IncrementalIK(ArmGeometry geometry, IKSolver closed, double tolerance)
+    {
+        if (!(tolerance > 0)){
+            throw new IllegalArgumentException("Tolerance must be positive");
+        }
+        this.closed = closed;
+        this.tolerance = tolerance;
+        xm1 = geometry.get_xm1();
+        ym1 = geometry.get_ym1();
+        xm2 = geometry.get_xm2();
+        ym2 = geometry.get_ym2();
+        r = geometry.get_r();
+        r2 = r*r;
+        max_jump = MAX_STEP*r;
+    }
+
+    public double get_tolerance(){
+        return tolerance;
+    }
+
+    // points solved from the point before
+    public long get_warm_count(){
+        return warm.sum();
+    }
+
+    // points given to the closed form solver
+    public long get_cold_count(){
+        return cold.sum();
+    }
+
+    public void solve(double[] x, double[] y,
+                      double[] theta1, double[] theta2, boolean[] valid,
+                      int from, int to){
+        // state of each motor: angle, its cosine and sine
+        double[] m1 = new double[3];
+        double[] m2 = new double[3];
+        boolean warm_start = false;
+        int n_warm = 0;
+        for (int i = from; i < to; i++){
+            if (warm_start && near(x, y, i-1)
+                && step(x[i] - xm1, y[i] - ym1, m1)
+                && step(x[i] - xm2, y[i] - ym2, m2)){
+                theta1[i] = m1[0];
+                theta2[i] = m2[0];
+                valid[i] = true;
+                n_warm++;
+                continue;
+            }
+            closed.solve(x, y, theta1, theta2, valid, i, i+1);
+            // cos and sin are only worth it if the next point is close
+            warm_start = valid[i] && i+1 < to && near(x, y, i);
+            if (warm_start){
+                set(m1, theta1[i]);
+                set(m2, theta2[i]);
+            }
+        }
+        warm.add(n_warm);
+        cold.add(to - from - n_warm);
+    }
+
+    // is point i+1 close to point i?
+    private boolean near(double[] x, double[] y, int i){
+        return Math.abs(x[i+1] - x[i]) <= max_jump && Math.abs(y[i+1] - y[i]) <= max_jump;
+    }
+
+    private static void set(double[] m, double theta){
+        m[0] = theta;
+        m[1] = Math.cos(theta);
+        m[2] = Math.sin(theta);
+    }
+
+    // moves motor state m to put its elbow r from the tool at (dx,dy)
+    // relative to the motor; false (m is then undefined) if it can not be trusted
+    private boolean step(double dx, double dy, double[] m){
+        double theta = m[0];
+        double c = m[1];
+        double s = m[2];
+        for (int it = 0; it < MAX_ITERATIONS; it++){
+            // forearm, from elbow to tool
+            double fx = dx - r*c;
+            double fy = dy - r*s;
+            double g = fx*fx + fy*fy - r2;
+            // derivative of g is -2r times this cross product
+            double cross = c*fy - s*fx;
+            if (Math.abs(cross) < MIN_SIN*r){
+                return false; // arms nearly in line
+            }
+            double d = g/(2*r*cross);
+            if (Math.abs(d) > MAX_STEP){
+                return false;
+            }
+            // rotate elbow by d, cos and sin to 1e-15 for |d| <= MAX_STEP
+            double d2 = d*d;
+            double cd = 1 - d2/2*(1 - d2/12*(1 - d2/30));
+            double sd = d*(1 - d2/6*(1 - d2/20*(1 - d2/42)));
+            double cn = c*cd - s*sd;
+            double sn = s*cd + c*sd;
+            // keep the length 1, rounding would build up over long runs
+            double k = 1.5 - 0.5*(cn*cn + sn*sn);
+            c = cn*k;
+            s = sn*k;
+            theta += d;
+            if (Math.abs(d) <= tolerance){
+                if ((theta>0)||(theta<-Math.PI)){
+                    return false; // let the closed form say why
+                }
+                m[0] = theta;
+                m[1] = c;
+                m[2] = s;
+                return true;
+            }
+        }
+        return false;
+    }
+}
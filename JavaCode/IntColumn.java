@@ -0,0 +1,99 @@
+
+/**
+ * Growable column of primitive ints.
+ * Used instead of ArrayList<Integer> for long tool paths:
+ * samples are stored without boxing, 4 bytes each.
+ */
+
+import java.util.Arrays;
+
+public class IntColumn
+{
+    private int[] data;
+    private int size;
+
+    public IntColumn()
+    {
+        this(16);
+    }
+
+    public IntColumn(int capacity)
+    {
+        data = new int[Math.max(capacity, 1)];
+        size = 0;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public int get(int i){
+        if (i >= size){
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return data[i];
+    }
+
+    public void set(int i, int v){
+        if (i >= size){
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        data[i] = v;
+    }
+
+    public void add(int v){
+        ensure_capacity(size+1);
+        data[size++] = v;
+    }
+
+    // appends len values of src starting from off
+    public void add_all(int[] src, int off, int len){
+        ensure_capacity(size+len);
+        System.arraycopy(src, off, data, size, len);
+        size += len;
+    }
+
+    // copies len values starting from index from into dst at off
+    public void get_all(int from, int[] dst, int off, int len){
+        if (from+len > size){
+            throw new IndexOutOfBoundsException("Index: " + (from+len-1) + ", Size: " + size);
+        }
+        System.arraycopy(data, from, dst, off, len);
+    }
+
+    public void clear(){
+        size = 0;
+    }
+
+    // drops values from index n on
+    public void truncate(int n){
+        if (n < size){
+            size = Math.max(n, 0);
+        }
+    }
+
+    // replaces values from..to-1 with len values of src starting from off,
+    // moving the values after them
+    public void replace(int from, int to, int[] src, int off, int len){
+        if (from < 0 || to > size || from > to){
+            throw new IndexOutOfBoundsException("Range: " + from + ".." + to + ", Size: " + size);
+        }
+        ensure_capacity(size - (to - from) + len);
+        if (len != to - from){
+            System.arraycopy(data, to, data, from + len, size - to);
+        }
+        System.arraycopy(src, off, data, from, len);
+        size += len - (to - from);
+    }
+
+    public void ensure_capacity(int capacity){
+        if (capacity > data.length){
+            int grown = data.length + (data.length >> 1);
+            data = Arrays.copyOf(data, Math.max(grown, capacity));
+        }
+    }
+
+    public int[] to_array(){
+        return Arrays.copyOf(data, size);
+    }
+}
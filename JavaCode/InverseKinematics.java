@@ -0,0 +1,108 @@
+
+/**
+ * Batch inverse kinematics for the SCARA arm.
+ * Same equations as Arm.inverseKinematic (elbows facing out)
+ * but without any state: the solver only reads its ArmGeometry
+ * and writes into arrays supplied by the caller.
+ * It does not allocate, print or touch the UI,
+ * so one solver can be used from many threads at once.
+ */
+public final class InverseKinematics implements IKSolver
+{
+    // results of classify()
+    public static final int REACHABLE = 0;
+    public static final int OUT_OF_REACH = 1; // arms too short
+    public static final int JOINT_LIMIT = 2;  // motor angle outside of [-pi,0]
+
+    private final ArmGeometry geometry;
+    // geometry copied into fields to keep the inner loop tight
+    private final double xm1;
+    private final double ym1;
+    private final double xm2;
+    private final double ym2;
+    private final double r;
+    private final double r2;      // r*r
+    private final double reach;   // 2*r - longest distance arm can reach
+
+    public InverseKinematics(ArmGeometry geometry)
+    {
+        this.geometry = geometry;
+        xm1 = geometry.get_xm1();
+        ym1 = geometry.get_ym1();
+        xm2 = geometry.get_xm2();
+        ym2 = geometry.get_ym2();
+        r = geometry.get_r();
+        r2 = r*r;
+        reach = 2*r;
+    }
+
+    public ArmGeometry get_geometry(){
+        return geometry;
+    }
+
+    public void solve(double[] x, double[] y,
+                      double[] theta1, double[] theta2, boolean[] valid,
+                      int from, int to){
+        for (int i = from; i < to; i++){
+            valid[i] = (solve_point(x[i], y[i], theta1, theta2, i) == REACHABLE);
+            if (!valid[i]){
+                theta1[i] = Double.NaN;
+                theta2[i] = Double.NaN;
+            }
+        }
+    }
+
+    // why tool position (x,y) can or can not be reached:
+    // REACHABLE, OUT_OF_REACH or JOINT_LIMIT
+    public int classify(double x, double y){
+        return solve_point(x, y, null, null, 0);
+    }
+
+    // solves one point, angles are written into theta1[i], theta2[i]
+    // only if the point is reachable and arrays are given
+    private int solve_point(double xt, double yt, double[] theta1, double[] theta2, int i){
+        // distance between pen and motor 1
+        double dx1 = xt - xm1;
+        double dy1 = yt - ym1;
+        double d1 = Math.sqrt(dx1*dx1 + dy1*dy1);
+        if (d1 > reach){
+            return OUT_OF_REACH;
+        }
+        // elbow 1 position, elbow facing out
+        double h1 = Math.sqrt(r2 - d1*d1/4);
+        double thetaA = Math.atan2(dy1, dx1);
+        double xj1 = xm1 + dx1/2 - h1*Math.cos((Math.PI/2.0) + thetaA);
+        double yj1 = ym1 + dy1/2 - h1*Math.sin((Math.PI/2.0) + thetaA);
+        double t1 = Math.atan2(yj1-ym1, xj1-xm1);
+        if ((t1>0)||(t1<-Math.PI)){
+            return JOINT_LIMIT;
+        }
+
+        // distance between pen and motor 2
+        double dx2 = xt - xm2;
+        double dy2 = yt - ym2;
+        double d2 = Math.sqrt(dx2*dx2 + dy2*dy2);
+        if (d2 > reach){
+            return OUT_OF_REACH;
+        }
+        // elbow 2 position
+        double h2 = Math.sqrt(r2 - d2*d2/4);
+        double thetaB = Math.atan2(dy2, dx2);
+        double xj2 = xm2 + 0.5*dx2 - h2*Math.cos(thetaB - Math.PI/2.0);
+        double yj2 = ym2 + 0.5*dy2 - h2*Math.sin(thetaB - Math.PI/2.0);
+
+        double dj = Math.sqrt((xj2 - xj1)*(xj2 - xj1) + (yj2 - yj1)*(yj2 - yj1));
+        if (dj > reach){
+            return OUT_OF_REACH;
+        }
+        double t2 = Math.atan2(yj2-ym2, xj2-xm2);
+        if ((t2>0)||(t2<-Math.PI)){
+            return JOINT_LIMIT;
+        }
+        if (theta1 != null){
+            theta1[i] = t1;
+            theta2[i] = t2;
+        }
+        return REACHABLE;
+    }
+}
@@ -20,6 +20,7 @@ public class Main{
     private Arm arm;
     private Drawing drawing;
     private ToolPath tool_path;
+    private DrawingView view;
     // state of the GUI
     private int state; // 0 - nothing
                        // 1 - inverse point kinematics - point
@@ -37,7 +38,16 @@ public class Main{
         UI.addButton("Load path Ang:Play", this::load_ang);
         UI.addButton("Calibrate Arm", this::calibrateArm);
         UI.addButton("Convert Ang to PWM", this::save_pwm);
+        UI.addButton("Convert file to PWM", this::convert_file_to_pwm);
+        UI.addButton("Save PWM binary", this::save_pwm_binary);
+        UI.addButton("Save timed PWM", this::save_timed_pwm);
+        UI.addButton("Stream PWM to arm", this::stream_pwm);
         UI.addButton("Circle", this::circle);
+        UI.addButton("Set tolerance", this::set_tolerance);
+        UI.addButton("Elbows in/out", this::select_branches);
+        UI.addButton("Optimise pen-up moves", this::optimise_path);
+        UI.addButton("Simplify path", this::simplify_path);
+        UI.addButton("Verify accuracy", this::verify_accuracy);
        // UI.addButton("Quit", UI::quit);
         UI.setMouseMotionListener(this::doMouse);
         UI.setKeyListener(this::doKeys);
@@ -48,8 +58,9 @@ public class Main{
         this.arm = new Arm();
         this.drawing = new Drawing();
         this.tool_path = new ToolPath();
+        tool_path.follow(drawing, arm); // converted as it is drawn
+        this.view = new DrawingView(arm, drawing);
         this.run();
-        arm.draw();
     }
     
     public void doKeys(String action){
@@ -67,33 +78,19 @@ public class Main{
     public void doMouse(String action, double x, double y) {
          //UI.printf("Mouse Click:%s, state:%d  x:%3.1f  y:%3.1f\n",
          //   action,state,x,y);
-        UI.clearGraphics();
-        String out_str=String.format("%3.1f %3.1f",x,y);
-        UI.drawString(out_str, x+10,y+10);
-         // 
+         // view draws position of the mouse, and in state 2 segment
+         // from last entered point to current mouse position
          if ((state == 1)&&(action.equals("clicked"))){
           // draw as 
           
           arm.inverseKinematic(x,y);
-          arm.draw();
+          view.set_mouse(x,y,false);
           return;
         }
         
          if ( ((state == 2)||(state == 3))&&action.equals("moved") ){
-          // draw arm and path
+          // move arm, path is drawn by the view
           arm.inverseKinematic(x,y);
-          arm.draw();
-         
-          // draw segment from last entered point to current mouse position
-          if ((state == 2)&&(drawing.get_path_size()>0)){
-            PointXY lp = new PointXY();
-            lp = drawing.get_path_last_point();
-            //if (lp.get_pen()){
-               UI.setColor(Color.GRAY);
-               UI.drawLine(lp.get_x(),lp.get_y(),x,y);
-           // }
-          }
-           drawing.draw();
         }
         
         // add point
@@ -103,8 +100,6 @@ public class Main{
             drawing.add_point_to_path(x,y,true); // add point with pen down
             
             arm.inverseKinematic(x,y);
-            arm.draw();
-            drawing.draw();
             drawing.print_path();
         }
         
@@ -115,13 +110,11 @@ public class Main{
             drawing.add_point_to_path(x,y,false); // add point wit pen up
             
             arm.inverseKinematic(x,y);
-            arm.draw();
-            drawing.draw();
             drawing.print_path();
             state = 2;
         }
         
-        
+        view.set_mouse(x,y,state == 2);
     }
    
     
@@ -133,13 +126,41 @@ public class Main{
             y = (int)(180 + radius*0.9*Math.sin(Math.toRadians(i)));
             drawing.add_point_to_path(x,y, true);
             arm.inverseKinematic(x,y);
-            arm.draw();
-            drawing.draw();
             drawing.print_path();
             state = 2;
+            view.invalidate();
         }
     }
     
+    //Reorders strokes of the drawing to shorten moves with the pen up
+    public void optimise_path(){
+        double before = PathOptimizer.pen_up_travel(drawing);
+        drawing = new PathOptimizer(2000).optimize(drawing);
+        double after = PathOptimizer.pen_up_travel(drawing);
+        UI.printf("Pen-up travel %.0f -> %.0f pixels\n", before, after);
+        tool_path.follow(drawing, arm);
+        view.set_drawing(drawing);
+    }
+    
+    //Removes points which barely change the shape of the drawing
+    public void simplify_path(){
+        double tolerance = UI.askDouble("Max distance from the original lines, pixels:");
+        PathSimplifier simplifier = new PathSimplifier(tolerance);
+        drawing = simplifier.simplify(drawing);
+        UI.printf("Points %d -> %d (%.1f%% removed)\n", simplifier.get_input_size(),
+            simplifier.get_output_size(), 100*simplifier.get_reduction_ratio());
+        tool_path.follow(drawing, arm);
+        view.set_drawing(drawing);
+    }
+    
+    //Measures how far the calibrated arm will be from the drawing
+    public void verify_accuracy(){
+        RoundTripVerifier verifier = new RoundTripVerifier(arm, tool_path); // as it is saved
+        AccuracyReport report = verifier.verify(drawing);
+        UI.println(report.toString());
+        UI.println(report.count_above(1.0) + " samples more than 1 pixel off");
+    }
+    
     public void save_xy(){
         state = 0;
         String fname = UIFileChooser.save();
@@ -152,22 +173,20 @@ public class Main{
     
     public void inverse(){
          state = 1;
-         arm.draw();
+         view.invalidate();
     }
     
     public void load_xy(){
         state = 0;
         String fname = UIFileChooser.open();
         drawing.load_path(fname);
-        drawing.draw();
-        
-        arm.draw();
+        view.invalidate();
     }
     
     // save angles into the file
     public void save_ang(){
         String fname = UIFileChooser.open(); //Chooses location to save pwm file
-        tool_path.convert_drawing_to_angles(drawing,arm); 
+        tool_path.convert_drawing_to_angles_parallel(drawing,arm); 
         tool_path.save_angles(fname);
     }
     
@@ -178,11 +197,148 @@ public class Main{
     
     //Saves PWM values to a file.
     //Need to have calibrated the arm first.
+    //Angles are ready in the tool path, which follows the drawing
     public void save_pwm(){
         String fname = UIFileChooser.save(); //Chooses location to save pwm file
-        tool_path.convert_drawing_to_angles(drawing, arm);
-        tool_path.convert_angles_to_pwm(arm); //Calculates all pwm values from angle
-        tool_path.save_pwm_file(fname);//Saves the file of pwm values
+        if (fname == null){
+            return; // cancelled
+        }
+        try (PwmFileSink sink = new PwmFileSink(fname)) {
+            long n = tool_path.write_pwm(arm, sink);
+            UI.println("Saved " + n + " pwm values");
+        } catch (IOException e) {
+            UI.println("Problem writing to the file " + fname + ": " + e.getMessage());
+        }
+    }
+    
+    //Sends PWM values to the arm controller over the network,
+    //so the arm starts before all of them have arrived
+    public void stream_pwm(){
+        String host = UI.askString("Arm controller host:");
+        int port = UI.askInt("Port (usually " + PwmStreamSender.DEFAULT_PORT + "):");
+        // copy the values, so drawing can go on while they are sent
+        IntColumn pwm1 = new IntColumn();
+        IntColumn pwm2 = new IntColumn();
+        IntColumn pwm3 = new IntColumn();
+        try {
+            tool_path.write_pwm(arm, (p1, p2, p3, n) -> {
+                pwm1.add_all(p1, 0, n);
+                pwm2.add_all(p2, 0, n);
+                pwm3.add_all(p3, 0, n);
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // the copy does not throw
+        }
+        new Thread(() -> {
+            int n = pwm1.size();
+            int[] p1 = new int[PwmPipeline.BATCH];
+            int[] p2 = new int[PwmPipeline.BATCH];
+            int[] p3 = new int[PwmPipeline.BATCH];
+            try {
+                PwmStreamSender sender = new PwmStreamSender(host, port);
+                try {
+                    for (int i = 0; i < n; i += PwmPipeline.BATCH){
+                        int len = Math.min(PwmPipeline.BATCH, n - i);
+                        pwm1.get_all(i, p1, 0, len);
+                        pwm2.get_all(i, p2, 0, len);
+                        pwm3.get_all(i, p3, 0, len);
+                        sender.write(p1, p2, p3, len);
+                    }
+                } finally {
+                    sender.close(); // waits until every value is played, to report
+                }
+                UI.println("Streamed " + n + " pwm values to " + host + ", "
+                           + sender.get_connections() + " connections");
+            } catch (IOException e) {
+                UI.println("Problem streaming to " + host + ": " + e.getMessage());
+            }
+        }, "stream pwm").start();
+    }
+    
+    //Pipeline converting drawings with the settings of the tool path
+    private PwmPipeline new_pipeline(){
+        PwmPipeline pipeline = new PwmPipeline(arm, tool_path.n_steps);
+        pipeline.set_tolerance(arm.get_geometry(), tool_path.get_tolerance());
+        return pipeline;
+    }
+    
+    //Sets how far the pen may stray from drawn lines
+    //0 breaks every line into fixed number of steps
+    public void set_tolerance(){
+        double tolerance = UI.askDouble("Max distance of pen from the lines, pixels (0 - fixed steps):");
+        tool_path.set_tolerance(tolerance);
+    }
+    
+    //Switches between elbows always facing out and elbows
+    //turned in or out, whichever moves the motors least
+    public void select_branches(){
+        tool_path.set_select_branches(!tool_path.get_select_branches());
+        UI.println(tool_path.get_select_branches()
+                   ? "Elbows turn in where it saves motor travel, with the pen up"
+                   : "Elbows always face out");
+    }
+    
+    //Saves PWM values in the binary format used for playback
+    public void save_pwm_binary(){
+        String fname = UIFileChooser.save("Save binary pwm file");
+        if (fname == null){
+            return; // cancelled
+        }
+        try (ToolPathBinaryWriter sink = new ToolPathBinaryWriter(fname, ToolPathBinaryWriter.PWM,
+                arm.get_geometry(), arm.get_calibration())) {
+            long n = tool_path.write_pwm(arm, sink);
+            UI.println("Saved " + n + " pwm values");
+        } catch (IOException e) {
+            UI.println("Problem writing to the file " + fname + ": " + e.getMessage());
+        }
+    }
+    
+    //Saves PWM values with times, moving as fast as the servos allow
+    public void save_timed_pwm(){
+        String fname = UIFileChooser.save("Save timed pwm file");
+        if (fname == null){
+            return; // cancelled
+        }
+        ToolPath path = new ToolPath();
+        path.n_steps = tool_path.n_steps;
+        path.set_tolerance(tool_path.get_tolerance());
+        path.set_select_branches(tool_path.get_select_branches());
+        path.convert_drawing_to_angles_parallel(drawing, arm);
+        Trajectory trajectory = new TrajectoryPlanner().plan(path);
+        try {
+            if (fname.endsWith(".bin")){
+                trajectory.save_pwm_binary(fname, arm);
+            } else {
+                trajectory.save_pwm_file(fname, arm);
+            }
+            UI.printf("Saved %d timed pwm values, drawing takes %.1f s\n",
+                trajectory.size(), trajectory.get_duration());
+        } catch (IOException e) {
+            UI.println("Problem writing to the file " + fname + ": " + e.getMessage());
+        }
+    }
+    
+    //Converts a path file straight into a PWM file
+    //without loading the path into the drawing
+    public void convert_file_to_pwm(){
+        String path_name = UIFileChooser.open("Select path file");
+        if (path_name == null){
+            return; // cancelled
+        }
+        String fname = UIFileChooser.save("Save pwm file");
+        if (fname == null){
+            return;
+        }
+        try (PathFileSource source = new PathFileSource(path_name);
+             PwmFileSink sink = new PwmFileSink(fname)) {
+            long n = new_pipeline().run(source, sink);
+            UI.println("Saved " + n + " pwm values");
+            for (String error : source.get_errors()){
+                UI.println(path_name + ": " + error);
+            }
+        } catch (IOException e) {
+            UI.println("Problem converting " + path_name + ": " + e.getMessage());
+        }
     }
     
     public void calibrateArm(){
@@ -190,11 +346,9 @@ public class Main{
     }
     
     
+    //Redraws whenever something changes, never returns
     public void run() {
-        while(true) {
-            arm.draw();
-            UI.sleep(20);
-        }
+        view.run();
     }
 
     public static void main(String[] args){
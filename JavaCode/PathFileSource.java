@@ -0,0 +1,294 @@
+
+/**
+ * PathSource which reads a path file written by Drawing.save_path
+ * ("x y pen" on every line).
+ * File is read through a FileChannel into a byte buffer and numbers are
+ * parsed in place, without making a String for every line; only numbers
+ * with more than 15 significant digits go through Double.parseDouble.
+ * Values can be separated by spaces, commas or tabs.
+ * Malformed lines are skipped and reported with their line numbers
+ * (see get_errors()), the rest of the file is still read.
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PathFileSource implements PathSource, Closeable
+{
+    static final int BUFFER_SIZE = 1 << 16; // longest line that can be read
+    static final int MAX_ERRORS = 100;       // error messages kept, the rest are only counted
+
+    // exact powers of ten for the fast path of parse_number
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final FileChannel channel;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private final ByteBuffer wrapped = ByteBuffer.wrap(buf);
+    private int pos;            // start of unread bytes in buf
+    private int lim;            // end of valid bytes in buf
+    private boolean eof;
+    private int line_number;    // lines read so far
+    private int error_count;
+    private final List<String> errors = new ArrayList<String>();
+    private final char[] chars = new char[64]; // slow path of parse_number
+    // result of parse_number
+    private double number;
+    private boolean number_ok;
+    // values of the current line
+    private final double[] values = new double[3];
+
+    public PathFileSource(String fname) throws IOException
+    {
+        Path path = Paths.get(fname);
+        if (Files.isDirectory(path)){
+            // opens on some systems, reading it fails only later
+            throw new IOException(fname + " is a directory");
+        }
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    public int read(double[] x, double[] y, boolean[] pen, int max) throws IOException{
+        int n = 0;
+        while (n < max){
+            // find end of the next line
+            int end = index_of_newline(pos);
+            while (end < 0 && !eof){
+                if (pos == 0 && lim == buf.length){
+                    // line does not fit the buffer, skip it
+                    line_number++;
+                    error("line longer than " + BUFFER_SIZE + " bytes");
+                    skip_line();
+                    end = -2;
+                    break;
+                }
+                fill();
+                end = index_of_newline(pos);
+            }
+            if (end == -2){
+                continue;
+            }
+            if (end < 0){
+                if (pos == lim){
+                    break; // end of file
+                }
+                end = lim; // last line without newline
+            }
+            line_number++;
+            if (parse_line(pos, end)){
+                x[n] = values[0];
+                y[n] = values[1];
+                pen[n] = values[2] == 1;
+                n++;
+            }
+            pos = Math.min(end + 1, lim);
+        }
+        return n;
+    }
+
+    // malformed lines found so far, as "line N: reason"
+    public List<String> get_errors(){
+        return errors;
+    }
+
+    // number of malformed lines, including those not kept in get_errors()
+    public int get_error_count(){
+        return error_count;
+    }
+
+    public int get_line_number(){
+        return line_number;
+    }
+
+    public void close() throws IOException{
+        channel.close();
+    }
+
+    private void error(String message){
+        error_count++;
+        if (errors.size() < MAX_ERRORS){
+            errors.add("line " + line_number + ": " + message);
+        }
+    }
+
+    private int index_of_newline(int from){
+        for (int i = from; i < lim; i++){
+            if (buf[i] == '\n'){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // moves unread bytes to the start of the buffer and reads more
+    private void fill() throws IOException{
+        System.arraycopy(buf, pos, buf, 0, lim - pos);
+        lim -= pos;
+        pos = 0;
+        wrapped.limit(buf.length).position(lim);
+        int k = channel.read(wrapped);
+        if (k < 0){
+            eof = true;
+        } else {
+            lim += k;
+        }
+    }
+
+    // drops bytes up to and including the next newline
+    private void skip_line() throws IOException{
+        while (true){
+            int end = index_of_newline(pos);
+            if (end >= 0){
+                pos = end + 1;
+                return;
+            }
+            pos = lim;
+            if (eof){
+                return;
+            }
+            fill();
+        }
+    }
+
+    private static boolean is_separator(byte b){
+        return b == ' ' || b == ',' || b == '\t' || b == '\r';
+    }
+
+    // parses "x y pen" between start and end into values
+    // returns false for blank or malformed lines
+    private boolean parse_line(int start, int end){
+        int i = start;
+        int k = 0;
+        while (true){
+            while (i < end && is_separator(buf[i])){
+                i++;
+            }
+            if (i == end){
+                break;
+            }
+            int token = i;
+            while (i < end && !is_separator(buf[i])){
+                i++;
+            }
+            if (k == 3){
+                error("more than 3 values");
+                return false;
+            }
+            parse_number(token, i);
+            if (!number_ok){
+                error("\"" + new String(buf, token, i - token) + "\" is not a number");
+                return false;
+            }
+            values[k++] = number;
+        }
+        if (k == 0){
+            return false; // blank line, not an error
+        }
+        if (k < 3){
+            error("expected \"x y pen\" but got " + k + " values");
+            return false;
+        }
+        return true;
+    }
+
+    // parses number between start and end into number/number_ok
+    private void parse_number(int start, int end){
+        int i = start;
+        boolean negative = false;
+        if (buf[i] == '-' || buf[i] == '+'){
+            negative = buf[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;        // significant digits in mantissa
+        int exponent = 0;      // power of ten to apply to mantissa
+        boolean any = false;   // at least one digit seen
+        boolean exact = true;  // mantissa holds all digits
+        for (; i < end && buf[i] >= '0' && buf[i] <= '9'; i++){
+            any = true;
+            if (digits < 18){
+                mantissa = mantissa*10 + (buf[i] - '0');
+                if (mantissa != 0){
+                    digits++;
+                }
+            } else {
+                exponent++;
+                exact = false;
+            }
+        }
+        if (i < end && buf[i] == '.'){
+            i++;
+            for (; i < end && buf[i] >= '0' && buf[i] <= '9'; i++){
+                any = true;
+                if (digits < 18){
+                    mantissa = mantissa*10 + (buf[i] - '0');
+                    if (mantissa != 0){
+                        digits++;
+                    }
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+            }
+        }
+        if (any && i < end && (buf[i] == 'e' || buf[i] == 'E')){
+            i++;
+            boolean negative_exp = false;
+            if (i < end && (buf[i] == '-' || buf[i] == '+')){
+                negative_exp = buf[i] == '-';
+                i++;
+            }
+            int e = 0;
+            boolean exp_digits = false;
+            for (; i < end && buf[i] >= '0' && buf[i] <= '9'; i++){
+                exp_digits = true;
+                if (e < 100000){
+                    e = e*10 + (buf[i] - '0');
+                }
+            }
+            if (!exp_digits){
+                any = false;
+            }
+            exponent += negative_exp ? -e : e;
+        }
+        if (!any || i != end){
+            parse_slow(start, end); // NaN, Infinity, or not a number
+            return;
+        }
+        // mantissa and power of ten both exact in a double: result is correctly rounded
+        if (exact && digits <= 15 && exponent >= -22 && exponent <= 22){
+            double v = mantissa;
+            v = exponent < 0 ? v/POW10[-exponent] : v*POW10[exponent];
+            number = negative ? -v : v;
+            number_ok = true;
+            return;
+        }
+        parse_slow(start, end);
+    }
+
+    private void parse_slow(int start, int end){
+        int len = end - start;
+        if (len > chars.length){
+            number_ok = false;
+            return;
+        }
+        for (int i = 0; i < len; i++){
+            chars[i] = (char)buf[start + i];
+        }
+        try {
+            number = Double.parseDouble(new String(chars, 0, len));
+            number_ok = true;
+        } catch (NumberFormatException e) {
+            number_ok = false;
+        }
+    }
+}
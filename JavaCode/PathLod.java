@@ -0,0 +1,125 @@
+
+/**
+ * Level of detail for drawing long paths on the screen.
+ * For every zoom level in use the path is decimated in screen space:
+ * the plane is divided into cells no bigger than a pixel, and a point
+ * is left out if it falls into the same cell as the last point kept
+ * with the same pen, so the line is never more than a pixel off.
+ * However many points the path has, no more lines are drawn than
+ * there are cell crossings.
+ * Levels are built the first time they are drawn and then follow
+ * points appended to the path, looking at every new point once.
+ * Lines are drawn as two shapes, one for each pen, instead of
+ * one drawLine and setColor per line.
+ * The owner calls reset() when points are removed or changed.
+ */
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+class PathLod
+{
+    static final int MIN_LEVEL = -8;  // cells of 1/256 pixel, zoomed in
+    static final int MAX_LEVEL = 16;  // cells of 65536 pixels, zoomed out
+
+    private final Level[] levels = new Level[MAX_LEVEL - MIN_LEVEL + 1];
+
+    // decimated path, cells of 2^level units of the path
+    private static class Level
+    {
+        final double cell;
+        double[] x = new double[16];
+        double[] y = new double[16];
+        boolean[] pen = new boolean[16];
+        int n;          // points kept
+        int processed;  // points of the path looked at
+        long cx;        // cell of the last point kept
+        long cy;
+
+        Level(int level){
+            cell = Math.scalb(1.0, level);
+        }
+
+        // looks at points appended to the path since the last update
+        void update(Drawing path){
+            int size = path.get_drawing_size();
+            for (int i = processed; i < size; i++){
+                double x_i = path.get_x(i);
+                double y_i = path.get_y(i);
+                boolean pen_i = path.get_pen(i);
+                long px = (long)Math.floor(x_i/cell);
+                long py = (long)Math.floor(y_i/cell);
+                if (n > 0 && px == cx && py == cy && pen_i == pen[n-1]){
+                    continue; // within a pixel of the last point kept
+                }
+                if (n == x.length){
+                    x = Arrays.copyOf(x, 2*n);
+                    y = Arrays.copyOf(y, 2*n);
+                    pen = Arrays.copyOf(pen, 2*n);
+                }
+                x[n] = x_i;
+                y[n] = y_i;
+                pen[n] = pen_i;
+                n++;
+                cx = px;
+                cy = py;
+            }
+            processed = size;
+        }
+    }
+
+    // forgets all levels, for when points were removed or changed
+    void reset(){
+        Arrays.fill(levels, null);
+    }
+
+    // draws lines ending at kept points from.. with g,
+    // pen down in blue over pen up in light gray
+    // returns number of points kept, to continue from when points are appended
+    int render(Graphics2D g, Drawing path, int from){
+        Level l = level(g);
+        l.update(path);
+        Path2D.Double down = new Path2D.Double(Path2D.WIND_NON_ZERO, Math.max(l.n - from, 2));
+        Path2D.Double up = new Path2D.Double();
+        int down_end = -1; // last point of each shape, to join lines into one polyline
+        int up_end = -1;
+        for (int i = Math.max(from, 1); i < l.n; i++){
+            if (l.pen[i]){
+                if (down_end != i-1){
+                    down.moveTo(l.x[i-1], l.y[i-1]);
+                }
+                down.lineTo(l.x[i], l.y[i]);
+                down_end = i;
+            } else {
+                if (up_end != i-1){
+                    up.moveTo(l.x[i-1], l.y[i-1]);
+                }
+                up.lineTo(l.x[i], l.y[i]);
+                up_end = i;
+            }
+        }
+        if (up_end >= 0){
+            g.setColor(Color.LIGHT_GRAY);
+            g.draw(up);
+        }
+        if (down_end >= 0){
+            g.setColor(Color.BLUE);
+            g.draw(down);
+        }
+        return l.n;
+    }
+
+    // level with cells no bigger than a pixel of g
+    private Level level(Graphics2D g){
+        AffineTransform t = g.getTransform();
+        double scale = Math.sqrt(Math.abs(t.getDeterminant())); // pixels per unit
+        int k = scale > 0 ? (int)Math.floor(-Math.log(scale)/Math.log(2)) : MAX_LEVEL;
+        k = Math.max(MIN_LEVEL, Math.min(k, MAX_LEVEL));
+        if (levels[k - MIN_LEVEL] == null){
+            levels[k - MIN_LEVEL] = new Level(k);
+        }
+        return levels[k - MIN_LEVEL];
+    }
+}
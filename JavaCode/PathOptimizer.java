@@ -0,0 +1,264 @@
+
+/**
+ * Reorders strokes of a drawing to shorten moves with the pen up.
+ * Drawing is split into strokes: a point reached with the pen up
+ * followed by the points reached with the pen down. Strokes are then
+ * ordered greedily, always going to the nearest free stroke end
+ * (found through a grid of stroke ends), and the order is improved
+ * with 2-opt moves until no move helps or time runs out.
+ * A stroke may be drawn backwards if that is shorter.
+ * Points which do not start or continue a pen-down line are dropped,
+ * as the pen never touches the paper there.
+ */
+public class PathOptimizer
+{
+    static final int TWO_OPT_WINDOW = 1000; // strokes checked after each position
+
+    private final long time_budget; // milliseconds for 2-opt
+
+    // strokes of the drawing being optimised
+    private int n;          // number of strokes
+    private int[] first;    // index of the first point of stroke k
+    private int[] last;     // index of the last point of stroke k
+    private double[] px;    // coordinates of all points
+    private double[] py;
+    // tour: order[i] is the stroke drawn i-th, reversed[i] if drawn backwards
+    private int[] order;
+    private boolean[] reversed;
+    private double start_x; // arm position before the first stroke
+    private double start_y;
+
+    public PathOptimizer(long time_budget)
+    {
+        this.time_budget = time_budget;
+    }
+
+    // returns new drawing with the same strokes in a shorter order
+    public Drawing optimize(Drawing drawing){
+        split(drawing);
+        Drawing result = new Drawing();
+        if (n == 0){
+            return result;
+        }
+        greedy();
+        two_opt(System.currentTimeMillis() + time_budget);
+        for (int i = 0; i < n; i++){
+            int k = order[i];
+            if (reversed[i]){
+                for (int j = last[k]; j >= first[k]; j--){
+                    result.append_point(px[j], py[j], j != last[k]);
+                }
+            } else {
+                for (int j = first[k]; j <= last[k]; j++){
+                    result.append_point(px[j], py[j], j != first[k]);
+                }
+            }
+        }
+        return result;
+    }
+
+    // total distance travelled with the pen up
+    public static double pen_up_travel(Drawing drawing){
+        double total = 0;
+        for (int i = 1; i < drawing.get_drawing_size(); i++){
+            if (!drawing.get_pen(i)){
+                total += Math.hypot(drawing.get_x(i) - drawing.get_x(i-1), drawing.get_y(i) - drawing.get_y(i-1));
+            }
+        }
+        return total;
+    }
+
+    private void split(Drawing drawing){
+        int size = drawing.get_drawing_size();
+        px = new double[size];
+        py = new double[size];
+        first = new int[size];
+        last = new int[size];
+        n = 0;
+        for (int i = 0; i < size; i++){
+            px[i] = drawing.get_x(i);
+            py[i] = drawing.get_y(i);
+            if (i > 0 && drawing.get_pen(i)){
+                if (n > 0 && last[n-1] == i-1){
+                    last[n-1] = i;       // stroke continues
+                } else {
+                    first[n] = i-1;      // stroke starts at the previous point
+                    last[n] = i;
+                    n++;
+                }
+            }
+        }
+        if (size > 0){
+            start_x = px[0];
+            start_y = py[0];
+        }
+    }
+
+    private double sx(int k, boolean rev){
+        return rev ? px[last[k]] : px[first[k]];
+    }
+    private double sy(int k, boolean rev){
+        return rev ? py[last[k]] : py[first[k]];
+    }
+    private double ex(int k, boolean rev){
+        return rev ? px[first[k]] : px[last[k]];
+    }
+    private double ey(int k, boolean rev){
+        return rev ? py[first[k]] : py[last[k]];
+    }
+
+    // nearest neighbour order, using a uniform grid of stroke ends
+    private void greedy(){
+        double min_x = start_x;
+        double min_y = start_y;
+        double max_x = start_x;
+        double max_y = start_y;
+        for (int k = 0; k < n; k++){
+            for (int e = 0; e < 2; e++){
+                double x = e == 0 ? px[first[k]] : px[last[k]];
+                double y = e == 0 ? py[first[k]] : py[last[k]];
+                min_x = Math.min(min_x, x);
+                min_y = Math.min(min_y, y);
+                max_x = Math.max(max_x, x);
+                max_y = Math.max(max_y, y);
+            }
+        }
+        int side = Math.max(1, (int)Math.sqrt(n));
+        double cell = Math.max(Math.max(max_x - min_x, max_y - min_y)/side, 1e-9);
+        int cols = (int)((max_x - min_x)/cell) + 1;
+        int rows = (int)((max_y - min_y)/cell) + 1;
+        // ends sorted by cell: ends[cell_start[c]..cell_end[c]-1] are in cell c
+        // an end is stroke*2 (first point) or stroke*2+1 (last point)
+        int[] cell_start = new int[cols*rows + 1];
+        int[] cell_of = new int[2*n];
+        for (int e = 0; e < 2*n; e++){
+            int p = (e & 1) == 0 ? first[e >> 1] : last[e >> 1];
+            int c = (int)((px[p] - min_x)/cell) + cols*(int)((py[p] - min_y)/cell);
+            cell_of[e] = c;
+            cell_start[c+1]++;
+        }
+        for (int c = 0; c < cols*rows; c++){
+            cell_start[c+1] += cell_start[c];
+        }
+        // cell_end[c] shrinks as strokes are used, so used ends are not scanned again
+        int[] ends = new int[2*n];
+        int[] slot = new int[2*n];  // position of end e in ends
+        int[] cell_end = cell_start.clone();
+        for (int e = 0; e < 2*n; e++){
+            slot[e] = cell_end[cell_of[e]];
+            ends[cell_end[cell_of[e]]++] = e;
+        }
+
+        order = new int[n];
+        reversed = new boolean[n];
+        double x = start_x;
+        double y = start_y;
+        for (int i = 0; i < n; i++){
+            int cx = (int)((x - min_x)/cell);
+            int cy = (int)((y - min_y)/cell);
+            int best = -1;
+            double best_d = Double.POSITIVE_INFINITY;
+            // search rings of cells around (x,y) until nothing closer can be found
+            for (int ring = 0; ring <= cols + rows; ring++){
+                if (best >= 0 && (ring - 1)*cell > Math.sqrt(best_d)){
+                    break;
+                }
+                for (int gy = cy - ring; gy <= cy + ring; gy++){
+                    if (gy < 0 || gy >= rows){
+                        continue;
+                    }
+                    boolean edge_row = (gy == cy - ring || gy == cy + ring);
+                    for (int gx = cx - ring; gx <= cx + ring; gx += (edge_row || ring == 0) ? 1 : 2*ring){
+                        if (gx < 0 || gx >= cols){
+                            continue;
+                        }
+                        int c = gx + cols*gy;
+                        for (int j = cell_start[c]; j < cell_end[c]; j++){
+                            int e = ends[j];
+                            int p = (e & 1) == 0 ? first[e >> 1] : last[e >> 1];
+                            double dx = px[p] - x;
+                            double dy = py[p] - y;
+                            double d = dx*dx + dy*dy;
+                            if (d < best_d){
+                                best_d = d;
+                                best = e;
+                            }
+                        }
+                    }
+                }
+            }
+            int k = best >> 1;
+            remove(2*k, ends, slot, cell_of, cell_end);
+            remove(2*k + 1, ends, slot, cell_of, cell_end);
+            order[i] = k;
+            reversed[i] = (best & 1) == 1; // entered at its last point
+            x = ex(k, reversed[i]);
+            y = ey(k, reversed[i]);
+        }
+    }
+
+    // removes end e from its cell by moving the last end of the cell into its slot
+    private static void remove(int e, int[] ends, int[] slot, int[] cell_of, int[] cell_end){
+        int c = cell_of[e];
+        int last_slot = --cell_end[c];
+        int moved = ends[last_slot];
+        ends[slot[e]] = moved;
+        slot[moved] = slot[e];
+        ends[last_slot] = e;
+        slot[e] = last_slot;
+    }
+
+    // 2-opt: reverse part i..j of the tour (and direction of its strokes)
+    // whenever it shortens the pen-up moves around it
+    private void two_opt(long deadline){
+        boolean improved = true;
+        while (improved && System.currentTimeMillis() < deadline){
+            improved = false;
+            for (int i = 0; i < n - 1; i++){
+                if ((i & 63) == 0 && System.currentTimeMillis() >= deadline){
+                    return;
+                }
+                // end of the stroke before position i
+                double ax = i == 0 ? start_x : ex(order[i-1], reversed[i-1]);
+                double ay = i == 0 ? start_y : ey(order[i-1], reversed[i-1]);
+                double bx = sx(order[i], reversed[i]);
+                double by = sy(order[i], reversed[i]);
+                double d_ab = Math.hypot(bx - ax, by - ay);
+                int max_j = Math.min(n - 1, i + TWO_OPT_WINDOW);
+                for (int j = i + 1; j <= max_j; j++){
+                    double cx = ex(order[j], reversed[j]);
+                    double cy = ey(order[j], reversed[j]);
+                    double delta = Math.hypot(cx - ax, cy - ay) - d_ab;
+                    if (j < n - 1){
+                        double dx = sx(order[j+1], reversed[j+1]);
+                        double dy = sy(order[j+1], reversed[j+1]);
+                        delta += Math.hypot(dx - bx, dy - by) - Math.hypot(dx - cx, dy - cy);
+                    }
+                    if (delta < -1e-9){
+                        reverse(i, j);
+                        improved = true;
+                        bx = sx(order[i], reversed[i]);
+                        by = sy(order[i], reversed[i]);
+                        d_ab = Math.hypot(bx - ax, by - ay);
+                    }
+                }
+            }
+        }
+    }
+
+    private void reverse(int i, int j){
+        while (i < j){
+            int k = order[i];
+            boolean r = reversed[i];
+            order[i] = order[j];
+            reversed[i] = !reversed[j];
+            order[j] = k;
+            reversed[j] = !r;
+            i++;
+            j--;
+        }
+        if (i == j){
+            reversed[i] = !reversed[i];
+        }
+    }
+}
@@ -0,0 +1,187 @@
+
+/**
+ * Removes points of a drawing which barely change its shape,
+ * so fewer points go through inverse kinematics and servo moves.
+ * Works like Visvalingam-Whyatt: points are kept in a heap ordered by
+ * how far the drawing would move if the point was removed, and the
+ * cheapest point is removed until every remaining one costs more than
+ * the tolerance. Cost includes the error already made by removing its
+ * neighbours, so no original point ends up further than `tolerance`
+ * pixels from the simplified lines. Runs in O(n log n).
+ * Only points inside pen-down lines are removed: start and end of
+ * every stroke and all pen-up moves are kept.
+ */
+public class PathSimplifier
+{
+    private final double tolerance; // pixels
+    private int input_size;
+    private int output_size;
+
+    // state of the current run
+    private double[] px;
+    private double[] py;
+    private int[] prev;        // linked list of points still in the drawing
+    private int[] next;
+    private double[] span_err; // error bound of removed points between prev[i] and i
+    private double[] key;      // cost of removing point i
+    private int[] heap;        // candidate points, heap ordered by key
+    private int[] heap_pos;    // position of point i in heap, -1 if not there
+    private int heap_size;
+
+    public PathSimplifier(double tolerance)
+    {
+        this.tolerance = tolerance;
+    }
+
+    public int get_input_size(){
+        return input_size;
+    }
+
+    public int get_output_size(){
+        return output_size;
+    }
+
+    // fraction of points removed by the last simplify()
+    public double get_reduction_ratio(){
+        return input_size == 0 ? 0 : 1.0 - (double)output_size/input_size;
+    }
+
+    // returns simplified copy of the drawing
+    public Drawing simplify(Drawing drawing){
+        int n = drawing.get_drawing_size();
+        input_size = n;
+        px = new double[n];
+        py = new double[n];
+        boolean[] pen = new boolean[n];
+        drawing.get_points(0, n, px, py, pen, 0);
+        prev = new int[n];
+        next = new int[n];
+        span_err = new double[n];
+        key = new double[n];
+        heap = new int[n];
+        heap_pos = new int[n];
+        heap_size = 0;
+        for (int i = 0; i < n; i++){
+            prev[i] = i - 1;
+            next[i] = i + 1;
+            heap_pos[i] = -1;
+        }
+        // point can go if lines into and out of it are both drawn
+        for (int i = 1; i < n - 1; i++){
+            if (pen[i] && pen[i+1]){
+                key[i] = cost(i);
+                heap_pos[i] = heap_size;
+                heap[heap_size++] = i;
+            }
+        }
+        for (int k = heap_size/2 - 1; k >= 0; k--){
+            sift_down(k);
+        }
+
+        boolean[] removed = new boolean[n];
+        while (heap_size > 0 && key[heap[0]] <= tolerance){
+            int i = pop();
+            int a = prev[i];
+            int b = next[i];
+            // removed points between a and b stay within this distance of line a-b
+            span_err[b] = key[i];
+            next[a] = b;
+            prev[b] = a;
+            removed[i] = true;
+            if (heap_pos[a] >= 0){
+                update(a);
+            }
+            if (heap_pos[b] >= 0){
+                update(b);
+            }
+        }
+
+        Drawing result = new Drawing();
+        for (int i = 0; i < n; i++){
+            if (!removed[i]){
+                result.append_point(px[i], py[i], pen[i]);
+            }
+        }
+        output_size = result.get_drawing_size();
+        px = null;
+        py = null;
+        return result;
+    }
+
+    // how far the drawing moves if point i is removed
+    private double cost(int i){
+        int a = prev[i];
+        int b = next[i];
+        double d = distance(i, a, b);
+        return d + Math.max(span_err[i], span_err[b]);
+    }
+
+    // distance from point i to the line segment a-b
+    private double distance(int i, int a, int b){
+        double lx = px[b] - px[a];
+        double ly = py[b] - py[a];
+        double len2 = lx*lx + ly*ly;
+        double s = len2 == 0 ? 0 : Math.max(0, Math.min(1, ((px[i]-px[a])*lx + (py[i]-py[a])*ly)/len2));
+        double dx = px[i] - (px[a] + s*lx);
+        double dy = py[i] - (py[a] + s*ly);
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+
+    private void update(int i){
+        double old = key[i];
+        key[i] = cost(i);
+        if (key[i] < old){
+            sift_up(heap_pos[i]);
+        } else {
+            sift_down(heap_pos[i]);
+        }
+    }
+
+    private int pop(){
+        int top = heap[0];
+        heap_pos[top] = -1;
+        heap_size--;
+        if (heap_size > 0){
+            heap[0] = heap[heap_size];
+            heap_pos[heap[0]] = 0;
+            sift_down(0);
+        }
+        return top;
+    }
+
+    private void sift_up(int k){
+        int i = heap[k];
+        while (k > 0){
+            int parent = (k - 1) >> 1;
+            if (key[heap[parent]] <= key[i]){
+                break;
+            }
+            heap[k] = heap[parent];
+            heap_pos[heap[k]] = k;
+            k = parent;
+        }
+        heap[k] = i;
+        heap_pos[i] = k;
+    }
+
+    private void sift_down(int k){
+        int i = heap[k];
+        while (true){
+            int child = 2*k + 1;
+            if (child >= heap_size){
+                break;
+            }
+            if (child + 1 < heap_size && key[heap[child+1]] < key[heap[child]]){
+                child++;
+            }
+            if (key[heap[child]] >= key[i]){
+                break;
+            }
+            heap[k] = heap[child];
+            heap_pos[heap[k]] = k;
+            k = child;
+        }
+        heap[k] = i;
+        heap_pos[i] = k;
+    }
+}
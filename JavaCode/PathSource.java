@@ -0,0 +1,14 @@
+
+/**
+ * Producer of drawing points for the streaming conversion (PwmPipeline).
+ * Points are handed out in batches, so the whole path never
+ * has to be held in memory.
+ */
+import java.io.IOException;
+
+public interface PathSource
+{
+    // reads up to max points into x, y and pen starting from index 0
+    // returns number of points read, 0 at the end of the path
+    int read(double[] x, double[] y, boolean[] pen, int max) throws IOException;
+}
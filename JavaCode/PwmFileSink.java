@@ -0,0 +1,72 @@
+
+/**
+ * PwmSink which writes motor control values into a text file,
+ * in the same "pwm1,pwm2,pwm3" format as ToolPath.save_pwm_file.
+ * Lines are formatted into a reused char buffer instead of String.format.
+ */
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+public class PwmFileSink implements PwmSink, Closeable
+{
+    private final Writer w;
+    private final char[] line = new char[48]; // one formatted line
+
+    public PwmFileSink(String fname) throws IOException
+    {
+        this(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(fname))), 1 << 16));
+    }
+
+    public PwmFileSink(Writer w)
+    {
+        this.w = w;
+    }
+
+    public void write(int[] pwm1, int[] pwm2, int[] pwm3, int n) throws IOException{
+        for (int i = 0; i < n; i++){
+            int len = format(pwm1[i], 4, line, 0);
+            line[len++] = ',';
+            len = format(pwm2[i], 4, line, len);
+            line[len++] = ',';
+            len = format(pwm3[i], 1, line, len);
+            line[len++] = '\n';
+            w.write(line, 0, len);
+        }
+    }
+
+    public void flush() throws IOException{
+        w.flush();
+    }
+
+    public void close() throws IOException{
+        w.close();
+    }
+
+    // writes v right aligned in width characters (like %4d) into buf at off
+    // returns index after the last written character
+    static int format(int v, int width, char[] buf, int off){
+        long a = Math.abs((long)v);
+        int digits = 1;
+        for (long t = a; t >= 10; t /= 10){
+            digits++;
+        }
+        int len = digits + (v < 0 ? 1 : 0);
+        for (int i = len; i < width; i++){
+            buf[off++] = ' ';
+        }
+        if (v < 0){
+            buf[off++] = '-';
+        }
+        int end = off + digits;
+        for (int i = end-1; i >= off; i--){
+            buf[i] = (char)('0' + a%10);
+            a /= 10;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,97 @@
+
+/**
+ * Dense angle -> pwm table for both servo motors.
+ * pwm values are tabulated every `resolution` degrees over the working
+ * range of the motors and looked up by index plus linear interpolation,
+ * so converting a sample costs no division.
+ * Table is filled from any function of the angle, so a non-linear
+ * calibration curve costs the same as the linear one at runtime.
+ * Angles outside of the table are converted by the function itself.
+ * For the linear functions of ServoCalibration the table does not pay
+ * off: a division is cheaper than the lookup, which reads two doubles
+ * from tables too large for L1, and the lookup takes 1.5 to 2 times as
+ * long (map_pwm and map_pwm_lookup in benchmarks). It is only for
+ * non-linear curves, and the arm converts without it unless asked to.
+ */
+import java.util.function.DoubleUnaryOperator;
+
+public final class PwmLookupTable
+{
+    public static final double DEFAULT_RESOLUTION = 0.01; // degrees
+    // motor angles allowed by inverse kinematics, degrees
+    public static final double MIN_ANGLE = -180.0;
+    public static final double MAX_ANGLE = 0.0;
+
+    private final double min;         // angle of the first entry
+    private final double resolution;  // degrees between entries
+    private final double inv_resolution;
+    private final int last;           // index of the last entry
+    private final double[] table1;    // pwm of motor 1 for each entry
+    private final double[] table2;    // ditto for motor 2
+    private final DoubleUnaryOperator pwm1_fn;
+    private final DoubleUnaryOperator pwm2_fn;
+
+    public PwmLookupTable(DoubleUnaryOperator pwm1_fn, DoubleUnaryOperator pwm2_fn,
+                          double min, double max, double resolution)
+    {
+        if (!(resolution > 0) || !(max > min)){
+            throw new IllegalArgumentException("Invalid table range " + min + ".." + max + " step " + resolution);
+        }
+        this.min = min;
+        this.resolution = resolution;
+        this.inv_resolution = 1.0/resolution;
+        this.pwm1_fn = pwm1_fn;
+        this.pwm2_fn = pwm2_fn;
+        last = (int)Math.ceil((max - min)*inv_resolution);
+        // one spare entry so interpolation at the last index stays in the array
+        table1 = new double[last + 2];
+        table2 = new double[last + 2];
+        for (int k = 0; k < table1.length; k++){
+            double theta = min + k*resolution;
+            table1[k] = pwm1_fn.applyAsDouble(theta);
+            table2[k] = pwm2_fn.applyAsDouble(theta);
+        }
+    }
+
+    // table for the linear functions fitted during calibration
+    public static PwmLookupTable build(ServoCalibration c, double resolution){
+        final double s1 = c.get_m1Slope();
+        final double b1 = c.get_m1B();
+        final double s2 = c.get_m2Slope();
+        final double b2 = c.get_m2B();
+        return new PwmLookupTable(t -> (t - b1)/s1, t -> (t - b2)/s2,
+                                  MIN_ANGLE, MAX_ANGLE, resolution);
+    }
+
+    public double get_resolution(){
+        return resolution;
+    }
+
+    // pwm of motor 1 for angle theta1 (degrees)
+    public int pwm1(double theta1){
+        return (int)lookup(table1, pwm1_fn, theta1);
+    }
+    // ditto for motor 2
+    public int pwm2(double theta2){
+        return (int)lookup(table2, pwm2_fn, theta2);
+    }
+
+    // pwm for angles (degrees) theta1[i], theta2[i], from <= i < to
+    public void map(double[] theta1, double[] theta2, int[] pwm1, int[] pwm2,
+                    int from, int to){
+        for (int i = from; i < to; i++){
+            pwm1[i] = (int)lookup(table1, pwm1_fn, theta1[i]);
+            pwm2[i] = (int)lookup(table2, pwm2_fn, theta2[i]);
+        }
+    }
+
+    private double lookup(double[] table, DoubleUnaryOperator fn, double theta){
+        double pos = (theta - min)*inv_resolution;
+        if (!(pos >= 0) || pos > last){
+            return fn.applyAsDouble(theta); // outside of the table (or NaN)
+        }
+        int k = (int)pos;
+        double frac = pos - k;
+        return table[k] + frac*(table[k+1] - table[k]);
+    }
+}
@@ -0,0 +1,151 @@
+
+/**
+ * Streaming conversion of a drawing into motor control signals:
+ * path points -> segments broken into n_steps -> inverse kinematics
+ * -> pwm -> sink.
+ * Stages pass fixed-size batches of primitive arrays, so memory used
+ * does not depend on size of the drawing, and the first pwm values
+ * reach the sink before the rest of the drawing is read.
+ * Output is the same as ToolPath.convert_drawing_to_angles followed
+ * by ToolPath.convert_angles_to_pwm.
+ */
+import java.io.IOException;
+
+public class PwmPipeline
+{
+    public static final int BATCH = 4096; // samples converted at once
+    static final int POINT_BATCH = 1024;  // points read from the source at once
+
+    private final IKSolver ik;
+    private final ServoCalibration calibration;
+    private final PwmLookupTable table; // used instead of calibration if not null
+    private final int n_steps;
+    private final double start_theta1; // angles of the arm before the path starts
+    private final double start_theta2;
+    private AdaptiveSubdivision adaptive; // null for fixed n_steps
+
+    // points read from the source
+    private final double[] px = new double[POINT_BATCH];
+    private final double[] py = new double[POINT_BATCH];
+    private final boolean[] ppen = new boolean[POINT_BATCH];
+    // samples of the current batch
+    private final double[] x = new double[BATCH];
+    private final double[] y = new double[BATCH];
+    private final boolean[] pen = new boolean[BATCH];
+    private final double[] theta1 = new double[BATCH];
+    private final double[] theta2 = new double[BATCH];
+    private final boolean[] valid = new boolean[BATCH];
+    private final int[] pwm1 = new int[BATCH];
+    private final int[] pwm2 = new int[BATCH];
+    private final int[] pwm3 = new int[BATCH];
+    private int n;        // samples in the current batch
+    private double t1;    // last reachable angles, radians
+    private double t2;
+    private long samples; // samples written during this run
+
+    public PwmPipeline(Arm arm, int n_steps)
+    {
+        this(arm.get_solver(), arm.get_calibration(), arm.get_pwm_table(), n_steps,
+             arm.get_theta1(), arm.get_theta2());
+    }
+
+    public PwmPipeline(ArmGeometry geometry, ServoCalibration calibration,
+                       int n_steps, double theta1, double theta2)
+    {
+        this(new InverseKinematics(geometry), calibration, null, n_steps, theta1, theta2);
+    }
+
+    public PwmPipeline(IKSolver ik, ServoCalibration calibration, PwmLookupTable table,
+                       int n_steps, double theta1, double theta2)
+    {
+        this.ik = ik;
+        this.calibration = calibration;
+        this.table = table;
+        this.n_steps = n_steps;
+        this.start_theta1 = theta1;
+        this.start_theta2 = theta2;
+    }
+
+    // lines are broken up adaptively so the tool stays within
+    // tolerance pixels of them (see AdaptiveSubdivision), 0 for fixed n_steps
+    public void set_tolerance(ArmGeometry geometry, double tolerance){
+        adaptive = tolerance > 0 ? new AdaptiveSubdivision(geometry, ik, tolerance, n_steps) : null;
+    }
+
+    // converts whole path from source and writes it into sink
+    // returns number of samples written
+    public long run(PathSource source, PwmSink sink) throws IOException{
+        n = 0;
+        samples = 0;
+        t1 = start_theta1;
+        t2 = start_theta2;
+        boolean first = true;
+        double x0 = 0;
+        double y0 = 0;
+        boolean pen0 = false;
+        int k;
+        while ((k = source.read(px, py, ppen, POINT_BATCH)) > 0){
+            for (int i = 0; i < k; i++){
+                if (first){
+                    first = false;
+                } else if (adaptive != null){
+                    adaptive.clear();
+                    adaptive.segment(x0, y0, px[i], py[i], pen0);
+                    for (int j = 0; j < adaptive.size(); j++){
+                        if (n == BATCH){
+                            flush(sink);
+                        }
+                        x[n] = adaptive.get_x().get(j);
+                        y[n] = adaptive.get_y().get(j);
+                        pen[n] = pen0;
+                        n++;
+                    }
+                } else {
+                    // break line between points into n_steps segments
+                    for (int j = 0; j < n_steps; j++){
+                        if (n == BATCH){
+                            flush(sink);
+                        }
+                        x[n] = x0 + j*(px[i]-x0)/n_steps;
+                        y[n] = y0 + j*(py[i]-y0)/n_steps;
+                        pen[n] = pen0;
+                        n++;
+                    }
+                }
+                x0 = px[i];
+                y0 = py[i];
+                pen0 = ppen[i];
+            }
+        }
+        if (n > 0){
+            flush(sink);
+        }
+        return samples;
+    }
+
+    // solves current batch and hands its pwm values to the sink
+    private void flush(PwmSink sink) throws IOException{
+        ik.solve(x, y, theta1, theta2, valid, 0, n);
+        for (int i = 0; i < n; i++){
+            // unreachable points keep the last reachable angles
+            if (valid[i]){
+                t1 = theta1[i];
+                t2 = theta2[i];
+            }
+            theta1[i] = t1*180/Math.PI;
+            theta2[i] = t2*180/Math.PI;
+            pwm3[i] = pen[i] ? ToolPath.PEN_DOWN_PWM : ToolPath.PEN_UP_PWM;
+        }
+        if (table != null){
+            table.map(theta1, theta2, pwm1, pwm2, 0, n);
+        } else {
+            for (int i = 0; i < n; i++){
+                pwm1[i] = calibration.pwm1(theta1[i]);
+                pwm2[i] = calibration.pwm2(theta2[i]);
+            }
+        }
+        sink.write(pwm1, pwm2, pwm3, n);
+        samples += n;
+        n = 0;
+    }
+}
@@ -0,0 +1,13 @@
+
+/**
+ * Consumer of motor control signals produced by PwmPipeline:
+ * a file, the arm controller or anything else that takes pwm triples.
+ */
+import java.io.IOException;
+
+public interface PwmSink
+{
+    // takes n samples of pwm1, pwm2 and pwm3 (pen) starting from index 0
+    // arrays are reused by the caller after the method returns
+    void write(int[] pwm1, int[] pwm2, int[] pwm3, int n) throws IOException;
+}
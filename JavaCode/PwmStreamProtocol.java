@@ -0,0 +1,102 @@
+
+/**
+ * Frames sent between PwmStreamSender and the arm controller
+ * (or PwmStreamReceiver standing in for it) over TCP.
+ *
+ * Every frame (little endian, as ToolPathBinaryWriter):
+ *   int16 type, int16 reserved (0), int32 payload size, payload
+ * Sender to controller:
+ *   HELLO:  magic "SCRA", int16 version, int16 record type (PWM),
+ *           int64 stream id (the same after reconnecting)
+ *   DATA:   int64 index of the first sample, then PWM records of
+ *           ToolPathBinaryWriter: int16 pwm1, int16 pwm2, int16 pwm3
+ *   END:    int64 number of samples in the stream
+ * Controller to sender:
+ *   CREDIT: int64 samples received, int64 limit - samples below the
+ *           limit may be sent. Answers HELLO (the sender resumes from
+ *           samples received), and comes again as samples are received
+ *           and played, at least every HEARTBEAT_MILLIS.
+ *   DONE:   int64 number of samples received, all of them
+ * Counts are from the start of the stream, so a frame lost with the
+ * connection is simply sent again.
+ */
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+final class PwmStreamProtocol
+{
+    static final short VERSION = 1;
+
+    // frame types
+    static final short HELLO = 1;
+    static final short DATA = 2;
+    static final short END = 3;
+    static final short CREDIT = 4;
+    static final short DONE = 5;
+
+    static final int FRAME_HEADER_SIZE = 8;
+    static final int HELLO_SIZE = 16;
+    static final int MAX_DATA_SAMPLES = 1024; // samples in one DATA frame
+    static final int MAX_PAYLOAD = 8 + MAX_DATA_SAMPLES*ToolPathBinaryWriter.PWM_RECORD_SIZE;
+    static final long HEARTBEAT_MILLIS = 1000;
+
+    private PwmStreamProtocol(){
+    }
+
+    // buffer for building or reading one frame
+    static ByteBuffer new_buffer(){
+        return ByteBuffer.allocate(FRAME_HEADER_SIZE + MAX_PAYLOAD).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // starts frame of type in buffer, payload is put after it
+    static void begin(ByteBuffer buffer, short type){
+        buffer.clear();
+        buffer.putShort(type);
+        buffer.putShort((short)0);
+        buffer.putInt(0); // size, filled in by send()
+    }
+
+    // sends frame built in buffer (not flushed)
+    static void send(ByteBuffer buffer, OutputStream out) throws IOException{
+        buffer.putInt(4, buffer.position() - FRAME_HEADER_SIZE);
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    // reads next frame into buffer, returns its type
+    // payload is left between position and limit of the buffer
+    static short receive(ByteBuffer buffer, InputStream in) throws IOException{
+        buffer.clear();
+        read_fully(in, buffer.array(), 0, FRAME_HEADER_SIZE);
+        short type = buffer.getShort(0);
+        int size = buffer.getInt(4);
+        if (size < 0 || size > MAX_PAYLOAD){
+            throw new IOException("Bad frame size " + size + " of frame type " + type);
+        }
+        read_fully(in, buffer.array(), FRAME_HEADER_SIZE, size);
+        buffer.position(FRAME_HEADER_SIZE);
+        buffer.limit(FRAME_HEADER_SIZE + size);
+        return type;
+    }
+
+    private static void read_fully(InputStream in, byte[] b, int off, int len) throws IOException{
+        while (len > 0){
+            int k = in.read(b, off, len);
+            if (k < 0){
+                throw new EOFException("Connection closed");
+            }
+            off += k;
+            len -= k;
+        }
+    }
+
+    // checks payload size of a frame just received
+    static void expect(ByteBuffer buffer, int size, short type) throws IOException{
+        if (buffer.remaining() < size){
+            throw new IOException("Frame type " + type + " too short: " + buffer.remaining() + " bytes");
+        }
+    }
+}
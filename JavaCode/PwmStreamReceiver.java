@@ -0,0 +1,369 @@
+
+/**
+ * Stands in for the arm controller on the Pi, to try PwmStreamSender
+ * on one machine: accepts streams (see PwmStreamProtocol), keeps
+ * received samples in a bounded ring and plays them at a fixed number
+ * of samples per second, as the servos would take them.
+ *
+ *   java PwmStreamReceiver [options]
+ *     -p port      port to listen on (default PwmStreamSender.DEFAULT_PORT)
+ *     -r rate      samples played per second (default 50, 0 - as fast as they come)
+ *     -c capacity  samples the ring holds (default 4096)
+ *     -drop n      close the connection after every n samples received,
+ *                  to see the sender resume
+ *     -o file      write played samples into file, as ToolPath.save_pwm_file
+ *
+ * For every stream it prints the time from the first connection to the
+ * first sample played, samples per second, how often the ring ran empty
+ * while samples were still to come, and how many connections it took.
+ * Credit is given for free space in the ring, so the sender never
+ * overruns it however slowly samples are played.
+ */
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class PwmStreamReceiver implements Closeable
+{
+    public static final double DEFAULT_RATE = 50;     // samples per second
+    public static final int DEFAULT_CAPACITY = 4096;  // samples
+
+    private final ServerSocket server;
+    private final double rate;
+    private final PwmSink sink;       // played samples, null if not kept
+    private final long drop_every;    // 0 - never drop
+    private final Thread acceptor;
+    private final Thread player;
+
+    // ring of samples played..received-1, sample k at k & mask; guarded by this
+    private final short[] ring1;
+    private final short[] ring2;
+    private final short[] ring3;
+    private final int mask;
+    private long stream_id;
+    private boolean streaming;        // a stream has started and is not played out
+    private long received;
+    private long played;
+    private long total = -1;          // samples in the stream once END came
+    private long credit_played;       // played when credit was last sent
+    private long credit_millis;       // when credit was last sent
+    private OutputStream out;         // to the sender, null if not connected
+    private final ByteBuffer tx = PwmStreamProtocol.new_buffer();
+    private volatile boolean stopped;
+
+    // statistics of the current stream
+    private long start_nanos;         // first HELLO
+    private long first_played_nanos;
+    private long end_nanos;           // last sample played
+    private int underruns;
+    private int connections;
+    private long streams;             // streams played out
+
+    public PwmStreamReceiver(int port, double rate, int capacity, long drop_every, PwmSink sink) throws IOException
+    {
+        if (capacity < 1 || !(rate >= 0) || drop_every < 0){
+            throw new IllegalArgumentException("Invalid capacity " + capacity + ", rate " + rate
+                                               + " or drop " + drop_every);
+        }
+        int c = Integer.highestOneBit(Math.max(capacity*2 - 1, 1));
+        ring1 = new short[c];
+        ring2 = new short[c];
+        ring3 = new short[c];
+        mask = c - 1;
+        this.rate = rate;
+        this.sink = sink;
+        this.drop_every = drop_every;
+        server = new ServerSocket(port);
+        acceptor = new Thread(this::accept, "pwm receiver on " + server.getLocalPort());
+        player = new Thread(this::play, "pwm player");
+        acceptor.setDaemon(true);
+        player.setDaemon(true);
+        acceptor.start();
+        player.start();
+    }
+
+    public static void main(String[] args){
+        int port = PwmStreamSender.DEFAULT_PORT;
+        double rate = DEFAULT_RATE;
+        int capacity = DEFAULT_CAPACITY;
+        long drop = 0;
+        String fname = null;
+        try {
+            for (int i = 0; i < args.length; i++){
+                String a = args[i];
+                if (a.equals("-p")){
+                    port = Integer.parseInt(args[++i]);
+                } else if (a.equals("-r")){
+                    rate = Double.parseDouble(args[++i]);
+                } else if (a.equals("-c")){
+                    capacity = Integer.parseInt(args[++i]);
+                } else if (a.equals("-drop")){
+                    drop = Long.parseLong(args[++i]);
+                } else if (a.equals("-o")){
+                    fname = args[++i];
+                } else {
+                    throw new IllegalArgumentException("unknown option " + a);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("bad options: " + e.getMessage());
+            System.err.println("usage: java PwmStreamReceiver [-p port] [-r rate] [-c capacity] [-drop n] [-o file]");
+            System.exit(2);
+        }
+        try (PwmFileSink file = fname != null ? new PwmFileSink(fname) : null;
+             PwmStreamReceiver receiver = new PwmStreamReceiver(port, rate, capacity, drop, file)) {
+            System.out.println("Listening on port " + receiver.get_port());
+            while (true){
+                receiver.await_stream();
+                if (file != null){
+                    file.flush();
+                }
+                System.out.println(receiver.report());
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    public int get_port(){
+        return server.getLocalPort();
+    }
+
+    // waits until a stream has been received and played out
+    public synchronized void await_stream() throws InterruptedException{
+        long n = streams;
+        while (streams == n && !stopped){
+            wait();
+        }
+    }
+
+    public synchronized long get_played(){
+        return played;
+    }
+
+    // statistics of the last stream
+    public synchronized String report(){
+        double startup = played > 0 ? (first_played_nanos - start_nanos)/1e6 : 0;
+        double seconds = (end_nanos - start_nanos)/1e9;
+        return String.format("%d samples in %.3f s (%.0f samples/s), first played after %.1f ms, "
+                             + "%d underruns, %d connections",
+                             played, seconds, played/seconds, startup, underruns, connections);
+    }
+
+    public void close() throws IOException{
+        stopped = true;
+        server.close();
+        synchronized (this){
+            notifyAll();
+        }
+    }
+
+    // takes connections one at a time
+    private void accept(){
+        while (!stopped){
+            try (Socket socket = server.accept()) {
+                socket.setTcpNoDelay(true);
+                receive(socket);
+            } catch (IOException e) {
+                // connection dropped, sender connects again
+            }
+            synchronized (this){
+                out = null;
+            }
+        }
+    }
+
+    // reads frames of one connection
+    private void receive(Socket socket) throws IOException{
+        InputStream in = new BufferedInputStream(socket.getInputStream(), 1 << 16);
+        ByteBuffer rx = PwmStreamProtocol.new_buffer();
+        if (PwmStreamProtocol.receive(rx, in) != PwmStreamProtocol.HELLO){
+            throw new IOException("Stream must start with HELLO");
+        }
+        PwmStreamProtocol.expect(rx, PwmStreamProtocol.HELLO_SIZE, PwmStreamProtocol.HELLO);
+        byte[] magic = new byte[4];
+        rx.get(magic);
+        short version = rx.getShort();
+        short type = rx.getShort();
+        long id = rx.getLong();
+        if (!Arrays.equals(magic, ToolPathBinaryWriter.MAGIC) || version != PwmStreamProtocol.VERSION
+            || type != ToolPathBinaryWriter.PWM){
+            throw new IOException("Not a pwm stream of version " + PwmStreamProtocol.VERSION);
+        }
+        synchronized (this){
+            if (!streaming || id != stream_id){
+                // new stream, anything left of the old one is dropped
+                stream_id = id;
+                streaming = true;
+                received = 0;
+                played = 0;
+                total = -1;
+                credit_played = 0;
+                start_nanos = System.nanoTime();
+                first_played_nanos = 0;
+                underruns = 0;
+                connections = 0;
+            }
+            connections++;
+            out = new BufferedOutputStream(socket.getOutputStream());
+            send_credit();
+        }
+        long drop_at;
+        synchronized (this){
+            drop_at = drop_every > 0 ? (received/drop_every + 1)*drop_every : Long.MAX_VALUE;
+        }
+        while (true){
+            short frame = PwmStreamProtocol.receive(rx, in);
+            synchronized (this){
+                if (frame == PwmStreamProtocol.DATA){
+                    PwmStreamProtocol.expect(rx, 8, frame);
+                    long first = rx.getLong();
+                    int n = rx.remaining()/ToolPathBinaryWriter.PWM_RECORD_SIZE;
+                    if (first > received){
+                        throw new IOException("Samples " + received + ".." + first + " missing");
+                    }
+                    if (first + n > played + mask + 1){
+                        throw new IOException("Sender overran its credit");
+                    }
+                    for (long k = first; k < first + n; k++){
+                        int slot = (int)k & mask;
+                        short p1 = rx.getShort();
+                        short p2 = rx.getShort();
+                        short p3 = rx.getShort();
+                        if (k >= received){ // earlier ones came before the connection dropped
+                            ring1[slot] = p1;
+                            ring2[slot] = p2;
+                            ring3[slot] = p3;
+                        }
+                    }
+                    received = Math.max(received, first + n);
+                    notifyAll();
+                    send_credit();
+                    if (received >= drop_at){
+                        return; // simulated dropped connection
+                    }
+                } else if (frame == PwmStreamProtocol.END){
+                    PwmStreamProtocol.expect(rx, 8, frame);
+                    total = rx.getLong();
+                    if (total != received){
+                        throw new IOException("END after " + total + " samples, received " + received);
+                    }
+                    PwmStreamProtocol.begin(tx, PwmStreamProtocol.DONE);
+                    tx.putLong(received);
+                    PwmStreamProtocol.send(tx, out);
+                    out.flush();
+                    notifyAll();
+                } else {
+                    throw new IOException("Unexpected frame type " + frame + " from sender");
+                }
+            }
+        }
+    }
+
+    // tells the sender what has been received and how far it may send
+    // (called holding the lock)
+    private void send_credit() throws IOException{
+        if (out == null){
+            return;
+        }
+        PwmStreamProtocol.begin(tx, PwmStreamProtocol.CREDIT);
+        tx.putLong(received);
+        tx.putLong(played + mask + 1);
+        PwmStreamProtocol.send(tx, out);
+        out.flush();
+        credit_played = played;
+        credit_millis = System.currentTimeMillis();
+    }
+
+    // plays samples at the rate, giving credit as the ring empties
+    private void play(){
+        int batch = 256;
+        int[] p1 = new int[batch];
+        int[] p2 = new int[batch];
+        int[] p3 = new int[batch];
+        double next = System.nanoTime(); // when the next sample is due
+        boolean starved = false;
+        while (!stopped){
+            int n;
+            boolean finished = false; // last samples of the stream
+            synchronized (this){
+                long now = System.nanoTime();
+                if (played == received){
+                    next = Math.max(next, now); // no catching up after running empty
+                }
+                long due = rate == 0 ? batch : now >= next ? (long)((now - next)*rate/1e9) + 1 : 0;
+                n = (int)Math.min(Math.min(received - played, due), batch);
+                for (int i = 0; i < n; i++){
+                    int slot = (int)(played + i) & mask;
+                    p1[i] = ring1[slot];
+                    p2[i] = ring2[slot];
+                    p3[i] = ring3[slot];
+                }
+                if (n > 0 && played == 0){
+                    first_played_nanos = now;
+                }
+                played += n;
+                if (rate > 0){
+                    next += n*1e9/rate;
+                }
+                if (streaming && played == total){
+                    // stream played out, announced once the sink has the samples
+                    streaming = false;
+                    end_nanos = now;
+                    finished = true;
+                }
+                if (streaming && played > 0 && played == received){
+                    if (!starved){
+                        underruns++; // ran empty with samples still to come
+                    }
+                    starved = true;
+                } else if (n > 0){
+                    starved = false;
+                }
+                long millis = System.currentTimeMillis();
+                if (played - credit_played > mask/4
+                    || (played != credit_played && millis - credit_millis >= 100)
+                    || millis - credit_millis >= PwmStreamProtocol.HEARTBEAT_MILLIS){
+                    try {
+                        send_credit();
+                    } catch (IOException e) {
+                        out = null; // connection dropped, sender connects again
+                    }
+                }
+                if (n == 0 && !finished){
+                    // until the next sample is due, or samples come
+                    long wait = played < received ? Math.max((long)(next - now)/1000000, 1) : 10;
+                    try {
+                        wait(Math.min(wait, 10));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            if (sink != null && n > 0){
+                try {
+                    sink.write(p1, p2, p3, n);
+                } catch (IOException e) {
+                    System.err.println("Can not write played samples: " + e.getMessage());
+                }
+            }
+            if (finished){
+                synchronized (this){
+                    streams++;
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,388 @@
+
+/**
+ * Streams pwm values to the arm controller over TCP while they are
+ * produced, instead of saving a file and copying it to the Pi: the arm
+ * starts drawing as soon as the first samples arrive.
+ * Samples written to the sender go into a bounded ring buffer; when it
+ * is full write() waits, so a PwmPipeline feeding it never gets far
+ * ahead of the arm. A network thread sends the ring in DATA frames
+ * (see PwmStreamProtocol) only as far as the controller gives credit,
+ * so the controller's buffer never overflows.
+ * Samples stay in the ring until the controller has received them. If
+ * the connection drops, the sender connects again, up to MAX_RETRIES
+ * times in a row with growing pauses, and resumes from the samples the
+ * controller says it has received.
+ * close() waits until the controller has received all samples; if the
+ * link can not be kept up, write() and close() throw IOException.
+ * From the command line a path file is converted and streamed as it
+ * is read (try it with PwmStreamReceiver):
+ *
+ *   java PwmStreamSender [-h host] [-p port] [-n n_steps] [-t tolerance]
+ *                        calibration_file path_file
+ */
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class PwmStreamSender implements PwmSink, Closeable
+{
+    public static final int DEFAULT_PORT = 5005;
+    public static final int DEFAULT_CAPACITY = 1 << 16; // samples in the ring
+    static final int MAX_RETRIES = 8;            // connections in a row without progress
+    static final long FIRST_RETRY_MILLIS = 100;  // pause doubles after each failure
+    static final long MAX_RETRY_MILLIS = 5000;
+    static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    static final int READ_TIMEOUT_MILLIS = (int)(5*PwmStreamProtocol.HEARTBEAT_MILLIS);
+
+    private final InetSocketAddress address;
+    private final long stream_id;
+    private final Thread network;
+
+    // ring of samples acked..written-1, sample k at k & mask; guarded by this
+    private final short[] ring1;
+    private final short[] ring2;
+    private final short[] ring3;
+    private final int mask;
+    private long written;   // samples written by the caller
+    private long acked;     // samples received by the controller
+    private long sent;      // samples sent on this connection
+    private long limit;     // samples the controller has credit for
+    private boolean closed; // no more samples will be written
+    private boolean done;   // controller has received them all
+    private IOException failure; // link given up
+
+    // statistics
+    private int connections;
+    private long resent;    // samples sent more than once
+
+    public PwmStreamSender(String host, int port) throws IOException
+    {
+        this(host, port, DEFAULT_CAPACITY);
+    }
+
+    // capacity is rounded up to a power of two
+    public PwmStreamSender(String host, int port, int capacity) throws IOException
+    {
+        if (capacity < 1){
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        int c = Integer.highestOneBit(Math.max(capacity*2 - 1, 1));
+        ring1 = new short[c];
+        ring2 = new short[c];
+        ring3 = new short[c];
+        mask = c - 1;
+        address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()){
+            throw new IOException("Unknown host " + host);
+        }
+        stream_id = new Random().nextLong();
+        network = new Thread(this::run, "pwm stream to " + host + ":" + port);
+        network.setDaemon(true);
+        network.start();
+    }
+
+    public static void main(String[] args){
+        String host = "localhost";
+        int port = DEFAULT_PORT;
+        int n_steps = 2;
+        double tolerance = 0;
+        List<String> rest = new ArrayList<String>();
+        try {
+            for (int i = 0; i < args.length; i++){
+                String a = args[i];
+                if (a.equals("-h")){
+                    host = args[++i];
+                } else if (a.equals("-p")){
+                    port = Integer.parseInt(args[++i]);
+                } else if (a.equals("-n")){
+                    n_steps = Integer.parseInt(args[++i]);
+                } else if (a.equals("-t")){
+                    tolerance = Double.parseDouble(args[++i]);
+                } else if (a.startsWith("-")){
+                    throw new IllegalArgumentException("unknown option " + a);
+                } else {
+                    rest.add(a);
+                }
+            }
+        } catch (RuntimeException e) {
+            rest.clear(); // missing or malformed option value
+        }
+        if (rest.size() != 2 || n_steps < 1){
+            System.err.println("usage: java PwmStreamSender [-h host] [-p port] [-n n_steps] [-t tolerance]");
+            System.err.println("                            calibration_file path_file");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        try {
+            Arm arm = new Arm();
+            arm.calibrate(rest.get(0));
+            PwmPipeline pipeline = new PwmPipeline(arm.get_geometry(), arm.get_calibration(), n_steps,
+                                                   arm.get_theta1(), arm.get_theta2());
+            pipeline.set_tolerance(arm.get_geometry(), tolerance);
+            long n;
+            int connections;
+            long resent;
+            try (PathFileSource source = new PathFileSource(rest.get(1))) {
+                PwmStreamSender sender = new PwmStreamSender(host, port);
+                try {
+                    n = pipeline.run(source, sender);
+                } finally {
+                    sender.close(); // waits for the controller, to report
+                }
+                connections = sender.get_connections();
+                resent = sender.get_resent();
+            }
+            double seconds = (System.nanoTime() - start)/1e9;
+            System.out.printf("Streamed %d pwm values in %.3f s, %d connections, %d values sent again%n",
+                              n, seconds, connections, resent);
+        } catch (IOException e) {
+            System.err.println(e.getMessage() + (e.getCause() != null ? ": " + e.getCause().getMessage() : ""));
+            System.exit(1);
+        }
+    }
+
+    public synchronized void write(int[] pwm1, int[] pwm2, int[] pwm3, int n) throws IOException{
+        if (closed){
+            throw new IOException("Stream closed");
+        }
+        int i = 0;
+        while (i < n){
+            // wait for room in the ring
+            while (failure == null && written - acked > mask){
+                await();
+            }
+            if (failure != null){
+                throw new IOException("Link to " + address + " failed", failure);
+            }
+            int k = (int)Math.min(n - i, mask + 1 - (written - acked));
+            for (int j = 0; j < k; j++){
+                int slot = (int)(written + j) & mask;
+                ring1[slot] = (short)pwm1[i+j];
+                ring2[slot] = (short)pwm2[i+j];
+                ring3[slot] = (short)pwm3[i+j];
+            }
+            written += k;
+            i += k;
+            notifyAll();
+        }
+    }
+
+    // waits until the controller has received every sample
+    public void close() throws IOException{
+        synchronized (this){
+            if (closed && done){
+                return; // closed already
+            }
+            closed = true;
+            notifyAll();
+            while (failure == null && !done){
+                await();
+            }
+            if (failure != null){
+                throw new IOException("Link to " + address + " failed", failure);
+            }
+        }
+    }
+
+    public synchronized long get_written(){
+        return written;
+    }
+
+    public synchronized long get_acked(){
+        return acked;
+    }
+
+    // connections made, more than one if the link dropped
+    public synchronized int get_connections(){
+        return connections;
+    }
+
+    public synchronized long get_resent(){
+        return resent;
+    }
+
+    private void await() throws IOException{
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while streaming pwm");
+        }
+    }
+
+    // network thread: connects and streams until done or given up
+    private void run(){
+        int failures = 0;
+        long pause = FIRST_RETRY_MILLIS;
+        while (true){
+            long before;
+            synchronized (this){
+                before = acked;
+            }
+            try (Socket socket = new Socket()) {
+                socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                if (stream(socket)){
+                    return;
+                }
+            } catch (IOException e) {
+                synchronized (this){
+                    if (acked > before){
+                        failures = 0; // got somewhere, start counting again
+                        pause = FIRST_RETRY_MILLIS;
+                    }
+                    if (++failures > MAX_RETRIES){
+                        failure = e;
+                        notifyAll();
+                        return;
+                    }
+                }
+            }
+            try {
+                Thread.sleep(pause);
+            } catch (InterruptedException e) {
+                return;
+            }
+            pause = Math.min(2*pause, MAX_RETRY_MILLIS);
+        }
+    }
+
+    // streams over one connection, true when the controller has all samples
+    private boolean stream(Socket socket) throws IOException{
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        ByteBuffer tx = PwmStreamProtocol.new_buffer();
+        ByteBuffer rx = PwmStreamProtocol.new_buffer();
+
+        PwmStreamProtocol.begin(tx, PwmStreamProtocol.HELLO);
+        tx.put(ToolPathBinaryWriter.MAGIC);
+        tx.putShort(PwmStreamProtocol.VERSION);
+        tx.putShort(ToolPathBinaryWriter.PWM);
+        tx.putLong(stream_id);
+        PwmStreamProtocol.send(tx, out);
+        out.flush();
+        if (PwmStreamProtocol.receive(rx, in) != PwmStreamProtocol.CREDIT){
+            throw new IOException("Controller did not answer HELLO with CREDIT");
+        }
+        synchronized (this){
+            connections++;
+            long received = credit(rx);
+            // resume from what the controller has
+            if (received < acked){
+                failure = new IOException("Controller lost samples " + received + ".." + acked
+                                          + ", can not resume");
+                notifyAll();
+                return true;
+            }
+            if (sent > received){
+                resent += sent - received; // lost with the last connection
+            }
+            sent = received;
+        }
+
+        boolean end_sent = false;
+        while (true){
+            // credit which has come in meanwhile
+            while (in.available() >= PwmStreamProtocol.FRAME_HEADER_SIZE){
+                if (frame(rx, in)){
+                    return true;
+                }
+            }
+            int n = 0;
+            boolean wait_controller = false;
+            synchronized (this){
+                if (sent < written && sent < limit){
+                    // next DATA frame
+                    n = (int)Math.min(Math.min(written, limit) - sent, PwmStreamProtocol.MAX_DATA_SAMPLES);
+                    PwmStreamProtocol.begin(tx, PwmStreamProtocol.DATA);
+                    tx.putLong(sent);
+                    for (int j = 0; j < n; j++){
+                        int slot = (int)(sent + j) & mask;
+                        tx.putShort(ring1[slot]);
+                        tx.putShort(ring2[slot]);
+                        tx.putShort(ring3[slot]);
+                    }
+                    sent += n;
+                } else if (closed && sent == written && !end_sent){
+                    PwmStreamProtocol.begin(tx, PwmStreamProtocol.END);
+                    tx.putLong(written);
+                    end_sent = true;
+                    n = -1;
+                } else if (end_sent || sent < written || written - acked > mask){
+                    // waiting for credit, acks or DONE
+                    wait_controller = true;
+                } else {
+                    // waiting for samples, reading credit now and then
+                    try {
+                        wait(PwmStreamProtocol.HEARTBEAT_MILLIS/4);
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException("Interrupted while streaming pwm");
+                    }
+                }
+            }
+            if (n != 0){
+                PwmStreamProtocol.send(tx, out);
+            }
+            if (wait_controller){
+                out.flush();
+                if (frame(rx, in)){
+                    return true;
+                }
+            } else if (n == 0){
+                out.flush();
+            }
+        }
+    }
+
+    // reads one frame from the controller, true if it was DONE
+    private boolean frame(ByteBuffer rx, InputStream in) throws IOException{
+        short type;
+        try {
+            type = PwmStreamProtocol.receive(rx, in);
+        } catch (SocketTimeoutException e) {
+            throw new IOException("Controller silent for " + READ_TIMEOUT_MILLIS + " ms", e);
+        }
+        synchronized (this){
+            if (type == PwmStreamProtocol.CREDIT){
+                credit(rx);
+                return false;
+            }
+            if (type == PwmStreamProtocol.DONE){
+                PwmStreamProtocol.expect(rx, 8, type);
+                long received = rx.getLong();
+                if (received != written){
+                    throw new IOException("Controller says DONE after " + received + " of " + written + " samples");
+                }
+                acked = received;
+                done = true;
+                notifyAll();
+                return true;
+            }
+            throw new IOException("Unexpected frame type " + type + " from controller");
+        }
+    }
+
+    // takes CREDIT frame, returns samples received
+    private long credit(ByteBuffer rx) throws IOException{
+        PwmStreamProtocol.expect(rx, 16, PwmStreamProtocol.CREDIT);
+        long received = rx.getLong();
+        limit = rx.getLong();
+        if (received > acked && received <= written){
+            acked = received; // ring space freed
+            notifyAll();
+        }
+        return received;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Measures how far the arm really goes from the points of a drawing.
+ * The drawing is converted by a ToolPath with the settings of the one
+ * which is exported (samples per line, tolerance, elbow branches), the
+ * pwm values it writes (write_pwm: the (int) truncation, or the lookup
+ * table if the arm has one) are turned back into angles with the fitted
+ * servo lines, and forward kinematics gives the position the tool
+ * reaches. So exactly what is exported is checked. Errors from
+ * calibration, pwm rounding and points needing the other assembly mode
+ * of the linkage all show up here.
+ */
+import java.io.IOException;
+
+public class RoundTripVerifier
+{
+    private final Arm arm;
+    private final int n_steps;              // as ToolPath.n_steps
+    private final double tolerance;         // as ToolPath.get_tolerance
+    private final boolean select_branches;  // as ToolPath.get_select_branches
+
+    // verifies drawings as tool_path converts them
+    public RoundTripVerifier(Arm arm, ToolPath tool_path)
+    {
+        this.arm = arm;
+        this.n_steps = tool_path.n_steps;
+        this.tolerance = tool_path.get_tolerance();
+        this.select_branches = tool_path.get_select_branches();
+    }
+
+    // error of every sample of the drawing
+    public AccuracyReport verify(Drawing drawing){
+        ToolPath tool_path = new ToolPath();
+        tool_path.n_steps = n_steps;
+        tool_path.set_tolerance(tolerance);
+        tool_path.set_select_branches(select_branches);
+        DoubleColumn x = new DoubleColumn();
+        DoubleColumn y = new DoubleColumn();
+        IntColumn pwm1 = new IntColumn();
+        IntColumn pwm2 = new IntColumn();
+        // the drawing must not change between conversion and sampling
+        synchronized (drawing){
+            tool_path.convert_drawing_to_angles_parallel(drawing, arm);
+            tool_path.sample_positions(drawing, arm, x, y);
+        }
+        try {
+            tool_path.write_pwm(arm, (p1, p2, p3, len) -> {
+                pwm1.add_all(p1, 0, len);
+                pwm2.add_all(p2, 0, len);
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // the copy does not throw
+        }
+        int n = x.size();
+        if (pwm1.size() != n){
+            throw new IllegalStateException(pwm1.size() + " samples converted, " + n + " sampled");
+        }
+
+        // angles the servos go to for the pwm of each sample
+        ServoCalibration calibration = arm.get_calibration();
+        double[] theta1 = new double[n];
+        double[] theta2 = new double[n];
+        for (int k = 0; k < n; k++){
+            theta1[k] = calibration.angle1(pwm1.get(k))*Math.PI/180;
+            theta2[k] = calibration.angle2(pwm2.get(k))*Math.PI/180;
+        }
+        double[] xt = new double[n];
+        double[] yt = new double[n];
+        boolean[] reached = new boolean[n];
+        arm.get_fk().solve(theta1, theta2, xt, yt, reached, 0, n);
+        double[] error = new double[n];
+        for (int k = 0; k < n; k++){
+            if (tool_path.unreachable.get(k)){
+                error[k] = Double.NaN;
+            } else if (!reached[k]){
+                error[k] = Double.POSITIVE_INFINITY; // forearms can not meet
+            } else {
+                error[k] = Math.hypot(xt[k] - x.get(k), yt[k] - y.get(k));
+            }
+        }
+        return new AccuracyReport(error);
+    }
+}
@@ -0,0 +1,69 @@
+
+/**
+ * Calibrated linear function of each servo motor,
+ * angle = slope*pwm + b (angles in degrees),
+ * as fitted by Arm.m1Fit and Arm.m2Fit.
+ * Objects of this class never change and can be shared between threads.
+ */
+public final class ServoCalibration
+{
+    private final double m1Slope;
+    private final double m1B;
+    private final double m2Slope;
+    private final double m2B;
+
+    public ServoCalibration(double m1Slope, double m1B, double m2Slope, double m2B)
+    {
+        this.m1Slope = m1Slope;
+        this.m1B = m1B;
+        this.m2Slope = m2Slope;
+        this.m2B = m2B;
+    }
+
+    public double get_m1Slope(){
+        return m1Slope;
+    }
+    public double get_m1B(){
+        return m1B;
+    }
+    public double get_m2Slope(){
+        return m2Slope;
+    }
+    public double get_m2B(){
+        return m2B;
+    }
+
+    // pwm of motor 1 for angle theta1 (degrees), same as Arm.get_pwm1
+    public int pwm1(double theta1){
+        return (int)((theta1 - m1B)/m1Slope);
+    }
+    // ditto for motor 2
+    public int pwm2(double theta2){
+        return (int)((theta2 - m2B)/m2Slope);
+    }
+
+    // angle (degrees) motor 1 goes to for the pwm, inverse of pwm1
+    public double angle1(int pwm){
+        return m1Slope*pwm + m1B;
+    }
+    // ditto for motor 2
+    public double angle2(int pwm){
+        return m2Slope*pwm + m2B;
+    }
+
+    // same functions of both servos
+    @Override
+    public boolean equals(Object o){
+        if (!(o instanceof ServoCalibration)){
+            return false;
+        }
+        ServoCalibration c = (ServoCalibration)o;
+        return Double.compare(m1Slope, c.m1Slope) == 0 && Double.compare(m1B, c.m1B) == 0
+            && Double.compare(m2Slope, c.m2Slope) == 0 && Double.compare(m2B, c.m2B) == 0;
+    }
+
+    @Override
+    public int hashCode(){
+        return java.util.Arrays.hashCode(new double[] {m1Slope, m1B, m2Slope, m2B});
+    }
+}
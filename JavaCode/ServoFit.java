@@ -0,0 +1,91 @@
+
+/**
+ * Line angle = slope*pwm + b fitted to the measurements of one servo
+ * by ServoFitter, with statistics telling how well it fits.
+ * Measurements rejected as outliers are left out of the statistics
+ * but still have their residuals.
+ * Objects never change once built.
+ */
+public final class ServoFit
+{
+    private final double slope;
+    private final double b;
+    private final double slope_error;  // standard error of slope
+    private final double b_error;      // standard error of b
+    private final double r2;           // coefficient of determination
+    private final double rms;          // weighted rms residual, degrees
+    private final double[] residuals;  // measured - fitted angle, degrees
+    private final boolean[] outliers;
+    private final int n_outliers;
+
+    ServoFit(double slope, double b, double slope_error, double b_error,
+             double r2, double rms, double[] residuals, boolean[] outliers)
+    {
+        this.slope = slope;
+        this.b = b;
+        this.slope_error = slope_error;
+        this.b_error = b_error;
+        this.r2 = r2;
+        this.rms = rms;
+        this.residuals = residuals;
+        this.outliers = outliers;
+        int k = 0;
+        for (boolean o : outliers){
+            if (o){
+                k++;
+            }
+        }
+        n_outliers = k;
+    }
+
+    public double get_slope(){
+        return slope;
+    }
+
+    public double get_b(){
+        return b;
+    }
+
+    public double get_slope_error(){
+        return slope_error;
+    }
+
+    public double get_b_error(){
+        return b_error;
+    }
+
+    public double get_r2(){
+        return r2;
+    }
+
+    public double get_rms(){
+        return rms;
+    }
+
+    public int get_size(){
+        return residuals.length;
+    }
+
+    // measured angle i minus the angle of the line at its pwm
+    public double get_residual(int i){
+        return residuals[i];
+    }
+
+    public boolean is_outlier(int i){
+        return outliers[i];
+    }
+
+    public int get_outlier_count(){
+        return n_outliers;
+    }
+
+    // angle (degrees) for pwm
+    public double angle(double pwm){
+        return slope*pwm + b;
+    }
+
+    public String toString(){
+        return String.format("angle = %.5f(+-%.5f)*pwm + %.2f(+-%.2f), R2 %.4f, rms %.2f degrees, %d of %d outliers",
+                             slope, slope_error, b, b_error, r2, rms, n_outliers, residuals.length);
+    }
+}
@@ -0,0 +1,307 @@
+
+/**
+ * Fits the linear function angle = slope*pwm + b of a servo to
+ * calibration measurements, for both motors.
+ * Sums are collected in one pass with running means (Welford's method,
+ * weighted), which stays accurate for pwm values around 1500 where the
+ * usual sums of squares lose most of their digits.
+ * Measurements may be weighted, and bad readings can be kept from
+ * pulling the line away:
+ *   NONE   - plain (weighted) least squares
+ *   HUBER  - least squares reweighted until the fit settles, with weight
+ *            falling off for residuals above HUBER_K robust standard
+ *            deviations; residuals above OUTLIER_SIGMAS of them are outliers.
+ *            Standard deviation comes from the median residual of each
+ *            step, and is at least MIN_SIGMA: angles are read in whole degrees,
+ *            so otherwise the line could settle through half of the readings
+ *            exactly and call the rest outliers.
+ *   RANSAC - line through the pair of measurements with most others within
+ *            threshold degrees of it, refitted to those; the rest are outliers
+ * RANSAC tries every pair for small sweeps and RANSAC_TRIALS random pairs
+ * (always the same ones) for large ones.
+ * The fitter keeps no state between fits and can be shared by threads.
+ */
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class ServoFitter
+{
+    public static final int NONE = 0;
+    public static final int HUBER = 1;
+    public static final int RANSAC = 2;
+
+    public static final double HUBER_K = 1.345;
+    public static final double OUTLIER_SIGMAS = 3;
+    public static final double MIN_SIGMA = 0.5;         // degrees
+    public static final double DEFAULT_THRESHOLD = 3;   // degrees, for RANSAC
+    public static final int RANSAC_TRIALS = 2000;
+    static final int MAX_ITERATIONS = 50;             // Huber reweighting
+
+    private final int method;
+    private final double threshold;
+
+    public ServoFitter()
+    {
+        this(HUBER, DEFAULT_THRESHOLD);
+    }
+
+    // threshold is only used by RANSAC
+    public ServoFitter(int method, double threshold)
+    {
+        if (method != NONE && method != HUBER && method != RANSAC){
+            throw new IllegalArgumentException("Unknown fitting method " + method);
+        }
+        if (threshold <= 0){
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+        this.method = method;
+        this.threshold = threshold;
+    }
+
+    // running weighted means and sums of products of deviations
+    private static class Moments
+    {
+        double w;    // sum of weights
+        double mx;   // mean pwm
+        double my;   // mean angle
+        double sxx;
+        double sxy;
+        double syy;
+        int n;       // measurements with weight
+
+        void add(double x, double y, double weight){
+            if (weight <= 0){
+                return;
+            }
+            n++;
+            w += weight;
+            double dx = x - mx;
+            double dy = y - my;
+            mx += weight*dx/w;
+            my += weight*dy/w;
+            sxx += weight*dx*(x - mx);
+            sxy += weight*dx*(y - my);
+            syy += weight*dy*(y - my);
+        }
+
+        double slope(){
+            return sxy/sxx;
+        }
+
+        double b(){
+            return my - slope()*mx;
+        }
+    }
+
+    public ServoFit fit(List<Integer> pwm, List<Integer> angle){
+        if (pwm.size() != angle.size()){
+            throw new IllegalArgumentException("Got " + pwm.size() + " pwm values and " + angle.size() + " angles");
+        }
+        double[] x = new double[pwm.size()];
+        double[] y = new double[angle.size()];
+        for (int i = 0; i < x.length; i++){
+            x[i] = pwm.get(i);
+            y[i] = angle.get(i);
+        }
+        return fit(x, y, null);
+    }
+
+    // weight[i] is how much measurement i counts, null for all the same
+    public ServoFit fit(double[] pwm, double[] angle, double[] weight){
+        int n = pwm.length;
+        if (angle.length != n || (weight != null && weight.length != n)){
+            throw new IllegalArgumentException("Measurement arrays differ in length");
+        }
+        double[] w = new double[n];
+        for (int i = 0; i < n; i++){
+            w[i] = weight == null ? 1 : weight[i];
+            if (!(w[i] >= 0) || Double.isInfinite(w[i])){
+                throw new IllegalArgumentException("Bad weight " + w[i] + " of measurement " + i);
+            }
+        }
+        boolean[] outliers = new boolean[n];
+        Moments m = moments(pwm, angle, w, outliers);
+        check(m);
+        double slope = m.slope();
+        double b = m.b();
+        if (method == HUBER){
+            double[] line = huber(pwm, angle, w, slope, b, outliers);
+            slope = line[0];
+            b = line[1];
+        } else if (method == RANSAC){
+            double[] line = ransac(pwm, angle, w, slope, b, outliers);
+            slope = line[0];
+            b = line[1];
+        }
+        return statistics(pwm, angle, w, slope, b, outliers);
+    }
+
+    // sums over measurements which are not outliers
+    private static Moments moments(double[] x, double[] y, double[] w, boolean[] outliers){
+        Moments m = new Moments();
+        for (int i = 0; i < x.length; i++){
+            if (!outliers[i]){
+                m.add(x[i], y[i], w[i]);
+            }
+        }
+        return m;
+    }
+
+    private static void check(Moments m){
+        if (m.n < 2 || !(m.sxx > 0)){
+            throw new IllegalArgumentException("Need measurements at two or more different pwm values");
+        }
+    }
+
+    // iteratively reweighted least squares, marks outliers
+    private double[] huber(double[] x, double[] y, double[] w, double slope, double b, boolean[] outliers){
+        int n = x.length;
+        double[] r = new double[n];
+        double[] hw = new double[n];
+        double sigma = MIN_SIGMA;
+        for (int it = 0; it < MAX_ITERATIONS; it++){
+            residuals(x, y, slope, b, r);
+            sigma = Math.max(robust_sigma(r, w), MIN_SIGMA);
+            double k = HUBER_K*sigma;
+            for (int i = 0; i < n; i++){
+                double a = Math.abs(r[i]);
+                hw[i] = a <= k ? w[i] : w[i]*k/a;
+            }
+            Moments m = moments(x, y, hw, outliers);
+            check(m);
+            double s = m.slope();
+            double c = m.b();
+            boolean settled = Math.abs(s - slope) <= 1e-12*Math.abs(s) && Math.abs(c - b) <= 1e-9*(1 + Math.abs(c));
+            slope = s;
+            b = c;
+            if (settled){
+                break;
+            }
+        }
+        residuals(x, y, slope, b, r);
+        for (int i = 0; i < n; i++){
+            outliers[i] = Math.abs(r[i]) > OUTLIER_SIGMAS*sigma;
+        }
+        return new double[]{slope, b};
+    }
+
+    // standard deviation from median absolute residual of weighted measurements
+    private static double robust_sigma(double[] r, double[] w){
+        double[] a = new double[r.length];
+        int m = 0;
+        for (int i = 0; i < r.length; i++){
+            if (w[i] > 0){
+                a[m++] = Math.abs(r[i]);
+            }
+        }
+        Arrays.sort(a, 0, m);
+        double median = m % 2 == 1 ? a[m/2] : (a[m/2 - 1] + a[m/2])/2;
+        return median/0.6745;
+    }
+
+    // best line through pairs of measurements refitted to its inliers, marks outliers
+    private double[] ransac(double[] x, double[] y, double[] w, double slope, double b, boolean[] outliers){
+        int n = x.length;
+        long pairs = (long)n*(n - 1)/2;
+        Random random = new Random(n);
+        int best = count_inliers(x, y, w, slope, b); // least squares line to beat
+        double best_spread = spread(x, y, w, slope, b);
+        for (long t = 0; t < Math.min(pairs, RANSAC_TRIALS); t++){
+            int i;
+            int j;
+            if (pairs <= RANSAC_TRIALS){
+                // t-th pair (i, j), i < j
+                i = (int)((Math.sqrt(8.0*t + 1) + 1)/2);
+                j = (int)(t - (long)i*(i - 1)/2);
+            } else {
+                i = random.nextInt(n);
+                j = random.nextInt(n);
+            }
+            if (w[i] == 0 || w[j] == 0 || x[i] == x[j]){
+                continue;
+            }
+            double s = (y[j] - y[i])/(x[j] - x[i]);
+            double c = y[i] - s*x[i];
+            int k = count_inliers(x, y, w, s, c);
+            if (k < best){
+                continue;
+            }
+            double spread = spread(x, y, w, s, c);
+            if (k > best || spread < best_spread){
+                best = k;
+                best_spread = spread;
+                slope = s;
+                b = c;
+            }
+        }
+        // refit to inliers, then once more to the inliers of the refitted line
+        for (int pass = 0; pass < 2; pass++){
+            for (int i = 0; i < n; i++){
+                outliers[i] = Math.abs(y[i] - slope*x[i] - b) > threshold;
+            }
+            Moments m = moments(x, y, w, outliers);
+            if (m.n < 2 || !(m.sxx > 0)){
+                break; // keep the line through the pair
+            }
+            slope = m.slope();
+            b = m.b();
+        }
+        for (int i = 0; i < n; i++){
+            outliers[i] = Math.abs(y[i] - slope*x[i] - b) > threshold;
+        }
+        return new double[]{slope, b};
+    }
+
+    private int count_inliers(double[] x, double[] y, double[] w, double slope, double b){
+        int k = 0;
+        for (int i = 0; i < x.length; i++){
+            if (w[i] > 0 && Math.abs(y[i] - slope*x[i] - b) <= threshold){
+                k++;
+            }
+        }
+        return k;
+    }
+
+    // sum of absolute residuals of inliers, to choose between lines with as many
+    private double spread(double[] x, double[] y, double[] w, double slope, double b){
+        double sum = 0;
+        for (int i = 0; i < x.length; i++){
+            double a = Math.abs(y[i] - slope*x[i] - b);
+            if (w[i] > 0 && a <= threshold){
+                sum += a;
+            }
+        }
+        return sum;
+    }
+
+    private static void residuals(double[] x, double[] y, double slope, double b, double[] r){
+        for (int i = 0; i < x.length; i++){
+            r[i] = y[i] - (slope*x[i] + b);
+        }
+    }
+
+    // R2, rms and standard errors over measurements which are not outliers
+    private static ServoFit statistics(double[] x, double[] y, double[] w, double slope, double b, boolean[] outliers){
+        int n = x.length;
+        double[] r = new double[n];
+        residuals(x, y, slope, b, r);
+        Moments m = moments(x, y, w, outliers);
+        double ss = 0; // weighted sum of squared residuals
+        for (int i = 0; i < n; i++){
+            if (!outliers[i]){
+                ss += w[i]*r[i]*r[i];
+            }
+        }
+        double r2 = m.syy > 0 ? 1 - ss/m.syy : 1;
+        double rms = m.w > 0 ? Math.sqrt(ss/m.w) : 0;
+        double slope_error = Double.NaN;
+        double b_error = Double.NaN;
+        if (m.n > 2 && m.sxx > 0){
+            double s2 = ss/(m.n - 2); // variance of a measurement of weight 1
+            slope_error = Math.sqrt(s2/m.sxx);
+            b_error = Math.sqrt(s2*(1/m.w + m.mx*m.mx/m.sxx));
+        }
+        return new ServoFit(slope, b, slope_error, b_error, r2, rms, r, outliers);
+    }
+}
@@ -6,6 +6,15 @@
  * for given drawing and arm configuration.
  * Arm hardware takes sequence of pwm values 
  * to drive the motors
+ * A tool path can follow a drawing: it is then told about every
+ * change of the drawing (see DrawingListener) and converts only the
+ * lines which changed, so it is ready whenever it is saved.
+ * With elbow branches chosen (set_select_branches) every point may be
+ * reached with either elbow turned in, choosing for the least motor
+ * travel over the whole path (see BranchSelector); the path is then
+ * converted serially, and again as a whole the first time it is used
+ * after the drawing changed, so loading or editing stays cheap.
+ * Adaptive subdivision still places samples as for elbows facing out.
  * @Arthur Roberts 
  * @1000000.0
  */
@@ -22,20 +31,40 @@ import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-public class ToolPath
+public class ToolPath implements DrawingListener
 {
     int n_steps; //The number of segments each line in the path will be broken up into
+    double tolerance; //If above 0 lines are broken up adaptively instead, so the tool stays within tolerance pixels of the line
+    boolean select_branches; //If true elbows may face in or out, whichever moves the motors least
+
+    // samples converted by one fork-join task, smaller chunks are not worth splitting
+    static final int PARALLEL_CHUNK = 4096;
+
+    // pwm of the pen servo
+    static final int PEN_DOWN_PWM = 2000;
+    static final int PEN_UP_PWM = 1750;
 
     // storage for angles and 
     // moto control signals
-    ArrayList<Double> theta1_vector; //List of angles for motor one for each point in the path. Stored in degrees
-    ArrayList<Double> theta2_vector; //List of angles for motor two for each point in the path. Stored in degrees
-    ArrayList<Integer> pen_vector; //List of 1's or 0's if the pen is up or down for each point in the path
+    DoubleColumn theta1_vector; //Angles for motor one for each point in the path. Stored in degrees
+    DoubleColumn theta2_vector; //Angles for motor two for each point in the path. Stored in degrees
+    BitSet pen_vector; //Bit i is set if the pen is down for point i in the path
+    
+    IntColumn pwm1_vector; //The pwm value for each angle in theta1_vector
+    IntColumn pwm2_vector; //The pwm value for each angle in theta2_vector
+    IntColumn pwm3_vector; //The pwm value for each bit in pen_vector
+    private ServoCalibration pwm_calibration; //Calibration the pwm values were converted with
+    private PwmLookupTable pwm_table; //Lookup table they were converted with, null if none
     
-    ArrayList<Integer> pwm1_vector; //The pwm value for each angle in theta1_vector
-    ArrayList<Integer> pwm2_vector; //The pwm value for each angle in theta2_vector
-    ArrayList<Integer> pwm3_vector; //The pwm value for each 1 or 0 in pen_vector
+    IntColumn segment_start; //Index of the first point of each line of the drawing
+    BitSet unreachable; //Bit i is set if point i can not be reached, it keeps the angles of point i-1
+    
+    private Drawing followed; //Drawing kept up to date with, null if none
+    private Arm followed_arm;
+    private boolean stale; //Branches are chosen and the followed drawing changed since it was converted
     
     String calibFile;
     /**
@@ -45,102 +74,751 @@ public class ToolPath
     {
         // initialise instance variables
         n_steps = 2;
-        theta1_vector = new ArrayList<Double>();
-        theta2_vector = new ArrayList<Double>();
-        pen_vector = new ArrayList<Integer>();
-        pwm1_vector = new ArrayList<Integer>();
-        pwm2_vector = new ArrayList<Integer>();
-        pwm3_vector = new ArrayList<Integer>();
+        tolerance = 0;
+        theta1_vector = new DoubleColumn();
+        theta2_vector = new DoubleColumn();
+        pen_vector = new BitSet();
+        pwm1_vector = new IntColumn();
+        pwm2_vector = new IntColumn();
+        pwm3_vector = new IntColumn();
+        segment_start = new IntColumn();
+        unreachable = new BitSet();
+    }
+
+    // max distance (pixels) of the tool from the drawn lines
+    // for adaptive subdivision, 0 to use fixed n_steps
+    // a followed drawing is converted again
+    public void set_tolerance(double tolerance){
+        this.tolerance = tolerance;
+        Drawing drawing;
+        Arm arm;
+        synchronized (this){
+            drawing = followed;
+            arm = followed_arm;
+        }
+        if (drawing != null){
+            follow(drawing, arm);
+        }
+    }
+
+    public double get_tolerance(){
+        return tolerance;
+    }
+
+    // lets points be reached with elbows turned in (see BranchSelector)
+    // a followed drawing is converted again
+    public void set_select_branches(boolean select_branches){
+        this.select_branches = select_branches;
+        Drawing drawing;
+        Arm arm;
+        synchronized (this){
+            drawing = followed;
+            arm = followed_arm;
+        }
+        if (drawing != null){
+            follow(drawing, arm);
+        }
+    }
+
+    public boolean get_select_branches(){
+        return select_branches;
+    }
+
+    // removes all points of the tool path
+    public synchronized void clear(){
+        theta1_vector.clear();
+        theta2_vector.clear();
+        pen_vector.clear();
+        pwm1_vector.clear();
+        pwm2_vector.clear();
+        pwm3_vector.clear();
+        segment_start.clear();
+        unreachable.clear();
     }
 
     /**********CONVERT (X,Y) PATH into angles******************/
+    // replaces the tool path with the drawing converted to angles
+    // (nothing to do if the drawing is followed already)
     public void convert_drawing_to_angles(Drawing drawing,Arm arm){
+        update();
+        convert(drawing, arm);
+    }
+
+    private synchronized void convert(Drawing drawing,Arm arm){
+        if (drawing == followed && arm == followed_arm){
+            return; // up to date
+        }
+        clear();
+        int n_segments = drawing.get_drawing_size()-1;
+        if (n_segments <= 0){
+            return;
+        }
+        if (tolerance > 0){
+            convert_adaptive(drawing, arm, false);
+            return;
+        }
+        // break every line between two points into n_steps segments
+        int n = n_segments*n_steps;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        boolean[] pen = new boolean[n];
+        sample_segments(drawing, 0, n_segments, x, y, pen, 0);
+
+        double[] theta1 = new double[n];
+        double[] theta2 = new double[n];
+        boolean[] valid = new boolean[n];
+        solve(arm, x, y, pen, theta1, theta2, valid, n);
+        append_angles(arm, theta1, theta2, valid, pen, n);
+        add_fixed_segment_starts(n_segments);
+    }
+
+    // every line starts n_steps points after the previous one
+    private void add_fixed_segment_starts(int n_segments){
+        segment_start.ensure_capacity(n_segments);
+        for (int i = 0; i < n_segments; i++){
+            segment_start.add(i*n_steps);
+        }
+    }
+
+    // same as convert_drawing_to_angles, but the drawing is split into chunks
+    // solved on the common ForkJoinPool. Every chunk writes into its own slots
+    // of the preallocated arrays, so the result is identical to the serial one
+    public void convert_drawing_to_angles_parallel(Drawing drawing,Arm arm){
+        update();
+        convert_parallel(drawing, arm);
+    }
+
+    private synchronized void convert_parallel(Drawing drawing,Arm arm){
+        if (drawing == followed && arm == followed_arm){
+            return; // up to date
+        }
+        if (select_branches){
+            convert(drawing, arm); // branches are chosen in order
+            return;
+        }
+        clear();
+        int n_segments = drawing.get_drawing_size()-1;
+        if (n_segments <= 0){
+            return;
+        }
+        if (tolerance > 0){
+            convert_adaptive(drawing, arm, true);
+            return;
+        }
+        int n = n_segments*n_steps;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        boolean[] pen = new boolean[n];
+        double[] theta1 = new double[n];
+        double[] theta2 = new double[n];
+        boolean[] valid = new boolean[n];
+        IKSolver ik = arm.get_solver();
+        ForkJoinPool.commonPool().invoke(new ConvertTask(drawing, ik, 0, n_segments,
+                x, y, pen, theta1, theta2, valid));
+        append_angles(arm, theta1, theta2, valid, pen, n);
+        add_fixed_segment_starts(n_segments);
+    }
+
+    // converts segments from..to-1, splitting in halves until chunk is small enough
+    private class ConvertTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Drawing drawing;
+        private final IKSolver ik;
+        private final int from;
+        private final int to;
+        private final double[] x;
+        private final double[] y;
+        private final boolean[] pen;
+        private final double[] theta1;
+        private final double[] theta2;
+        private final boolean[] valid;
 
-        // for all points of the drawing...        
-        for (int i = 0;i < drawing.get_drawing_size()-1;i++){ 
+        ConvertTask(Drawing drawing, IKSolver ik, int from, int to,
+                    double[] x, double[] y, boolean[] pen,
+                    double[] theta1, double[] theta2, boolean[] valid){
+            this.drawing = drawing;
+            this.ik = ik;
+            this.from = from;
+            this.to = to;
+            this.x = x;
+            this.y = y;
+            this.pen = pen;
+            this.theta1 = theta1;
+            this.theta2 = theta2;
+            this.valid = valid;
+        }
+
+        @Override
+        protected void compute(){
+            if ((to-from)*n_steps <= PARALLEL_CHUNK){
+                sample_segments(drawing, from, to, x, y, pen, from*n_steps);
+                ik.solve(x, y, theta1, theta2, valid, from*n_steps, to*n_steps);
+                return;
+            }
+            int mid = (from+to) >>> 1;
+            invokeAll(new ConvertTask(drawing, ik, from, mid, x, y, pen, theta1, theta2, valid),
+                      new ConvertTask(drawing, ik, mid, to, x, y, pen, theta1, theta2, valid));
+        }
+    }
+
+    // conversion with adaptive subdivision. Number of samples per line is not
+    // known in advance, so in parallel every chunk of lines is subdivided into
+    // its own buffers which are then joined in order and solved
+    private void convert_adaptive(Drawing drawing, Arm arm, boolean parallel){
+        int n_segments = drawing.get_drawing_size()-1;
+        IKSolver ik = arm.get_solver();
+        int per_chunk = Math.max(1, PARALLEL_CHUNK/n_steps);
+        int n_chunks = parallel ? (n_segments + per_chunk - 1)/per_chunk : 1;
+        AdaptiveSubdivision[] parts = new AdaptiveSubdivision[n_chunks];
+        if (parallel){
+            ForkJoinPool.commonPool().invoke(new SubdivideTask(drawing, arm.get_geometry(), ik,
+                    parts, 0, n_chunks, per_chunk));
+        } else {
+            parts[0] = new AdaptiveSubdivision(arm.get_geometry(), ik, tolerance, n_steps);
+            parts[0].subdivide(drawing, 0, n_segments);
+        }
+
+        int n = 0;
+        for (AdaptiveSubdivision part : parts){
+            n += part.size();
+        }
+        double[] x = new double[n];
+        double[] y = new double[n];
+        boolean[] pen = new boolean[n];
+        int k = 0;
+        for (AdaptiveSubdivision part : parts){
+            IntColumn starts = part.get_line_start();
+            for (int i = 0; i < starts.size(); i++){
+                segment_start.add(k + starts.get(i));
+            }
+            part.get_x().get_all(0, x, k, part.size());
+            part.get_y().get_all(0, y, k, part.size());
+            BitSet p = part.get_pen();
+            for (int i = p.nextSetBit(0); i >= 0; i = p.nextSetBit(i+1)){
+                pen[k+i] = true;
+            }
+            k += part.size();
+        }
+
+        double[] theta1 = new double[n];
+        double[] theta2 = new double[n];
+        boolean[] valid = new boolean[n];
+        if (parallel){
+            ForkJoinPool.commonPool().invoke(new SolveTask(ik, x, y, theta1, theta2, valid, 0, n));
+        } else {
+            solve(arm, x, y, pen, theta1, theta2, valid, n);
+        }
+        append_angles(arm, theta1, theta2, valid, pen, n);
+    }
+
+    // motor angles (radians) for samples 0..n-1, elbows facing out
+    // or with branches chosen for the whole path
+    private void solve(Arm arm, double[] x, double[] y, boolean[] pen,
+                       double[] theta1, double[] theta2, boolean[] valid, int n){
+        if (select_branches){
+            new BranchSelector(arm.get_geometry()).select(x, y, pen, n,
+                arm.get_theta1(), arm.get_theta2(), theta1, theta2, valid, null);
+        } else {
+            arm.get_solver().solve(x, y, theta1, theta2, valid, 0, n);
+        }
+    }
+
+    // subdivides chunks from..to-1 of per_chunk lines each
+    private class SubdivideTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Drawing drawing;
+        private final ArmGeometry geometry;
+        private final IKSolver ik;
+        private final AdaptiveSubdivision[] parts;
+        private final int from;
+        private final int to;
+        private final int per_chunk;
+
+        SubdivideTask(Drawing drawing, ArmGeometry geometry, IKSolver ik,
+                      AdaptiveSubdivision[] parts, int from, int to, int per_chunk){
+            this.drawing = drawing;
+            this.geometry = geometry;
+            this.ik = ik;
+            this.parts = parts;
+            this.from = from;
+            this.to = to;
+            this.per_chunk = per_chunk;
+        }
+
+        @Override
+        protected void compute(){
+            if (to - from == 1){
+                int n_segments = drawing.get_drawing_size()-1;
+                AdaptiveSubdivision part = new AdaptiveSubdivision(geometry, ik, tolerance, n_steps);
+                part.subdivide(drawing, from*per_chunk, Math.min((from+1)*per_chunk, n_segments));
+                parts[from] = part;
+                return;
+            }
+            int mid = (from+to) >>> 1;
+            invokeAll(new SubdivideTask(drawing, geometry, ik, parts, from, mid, per_chunk),
+                      new SubdivideTask(drawing, geometry, ik, parts, mid, to, per_chunk));
+        }
+    }
+
+    // solves samples from..to-1, splitting in halves until chunk is small enough
+    private static class SolveTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final IKSolver ik;
+        private final double[] x;
+        private final double[] y;
+        private final double[] theta1;
+        private final double[] theta2;
+        private final boolean[] valid;
+        private final int from;
+        private final int to;
+
+        SolveTask(IKSolver ik, double[] x, double[] y,
+                  double[] theta1, double[] theta2, boolean[] valid, int from, int to){
+            this.ik = ik;
+            this.x = x;
+            this.y = y;
+            this.theta1 = theta1;
+            this.theta2 = theta2;
+            this.valid = valid;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if (to - from <= PARALLEL_CHUNK){
+                ik.solve(x, y, theta1, theta2, valid, from, to);
+                return;
+            }
+            int mid = (from+to) >>> 1;
+            invokeAll(new SolveTask(ik, x, y, theta1, theta2, valid, from, mid),
+                      new SolveTask(ik, x, y, theta1, theta2, valid, mid, to));
+        }
+    }
+
+    // positions of the tool for segments from..to-1 of the drawing
+    // segment i starts at slot base + (i-from)*n_steps, so chunks can be filled independently
+    void sample_segments(Drawing drawing, int from, int to,
+                         double[] x, double[] y, boolean[] pen, int base){
+        for (int i = from; i < to; i++){
             // take two points
-            PointXY p0 = drawing.get_drawing_point(i);
-            PointXY p1 = drawing.get_drawing_point(i+1);
-            // break line between points into segments: n_steps of them
+            double x0 = drawing.get_x(i);
+            double y0 = drawing.get_y(i);
+            double x1 = drawing.get_x(i+1);
+            double y1 = drawing.get_y(i+1);
+            boolean pen0 = drawing.get_pen(i);
+            int k = base + (i-from)*n_steps;
             for ( int j = 0 ; j< n_steps;j++) { // break segment into n_steps str. lines
-                double x = p0.get_x() + j*(p1.get_x()-p0.get_x())/n_steps;
-                double y = p0.get_y() + j*(p1.get_y()-p0.get_y())/n_steps;
-                arm.inverseKinematic(x, y);
-                theta1_vector.add(arm.get_theta1()*180/Math.PI);
-                theta2_vector.add(arm.get_theta2()*180/Math.PI);
-                if (p0.get_pen()){ 
-                    pen_vector.add(1);
-                } else {
-                    pen_vector.add(0);
+                x[k+j] = x0 + j*(x1-x0)/n_steps;
+                y[k+j] = y0 + j*(y1-y0)/n_steps;
+                pen[k+j] = pen0;
+            }
+        }
+    }
+
+    // positions the tool is sent to, one for every sample of the drawing
+    // in the order of the tool path, as the conversions place them
+    // (for checking the converted path against the drawing)
+    void sample_positions(Drawing drawing, Arm arm, DoubleColumn x, DoubleColumn y){
+        int n_segments = drawing.get_drawing_size()-1;
+        if (n_segments <= 0){
+            return;
+        }
+        if (tolerance > 0){
+            AdaptiveSubdivision part = new AdaptiveSubdivision(arm.get_geometry(), arm.get_solver(), tolerance, n_steps);
+            part.subdivide(drawing, 0, n_segments);
+            x.add_all(part.get_x().to_array(), 0, part.size());
+            y.add_all(part.get_y().to_array(), 0, part.size());
+            return;
+        }
+        int n = n_segments*n_steps;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        sample_segments(drawing, 0, n_segments, xs, ys, new boolean[n], 0);
+        x.add_all(xs, 0, n);
+        y.add_all(ys, 0, n);
+    }
+
+    // stores solved angles (radians) in degrees.
+    // Unreachable points keep the last reachable angles, as the arm
+    // stays where it was, starting from the current angles of the arm
+    void append_angles(Arm arm, double[] theta1, double[] theta2,
+                       boolean[] valid, boolean[] pen, int n){
+        int base = theta1_vector.size();
+        double t1 = arm.get_theta1();
+        double t2 = arm.get_theta2();
+        // convert in place, then append in bulk
+        for (int i = 0; i < n; i++){
+            if (valid[i]){
+                t1 = theta1[i];
+                t2 = theta2[i];
+            }
+            theta1[i] = t1*180/Math.PI;
+            theta2[i] = t2*180/Math.PI;
+            if (pen[i]){
+                pen_vector.set(base+i);
+            } else {
+                pen_vector.clear(base+i);
+            }
+            unreachable.set(base+i, !valid[i]);
+        }
+        theta1_vector.add_all(theta1, 0, n);
+        theta2_vector.add_all(theta2, 0, n);
+    }
+
+    // converts the drawing now, then keeps the tool path up to date
+    // as the drawing changes, until unfollow() or another drawing is followed
+    public void follow(Drawing drawing, Arm arm){
+        detach();
+        // lock the drawing first, as when it tells about changes
+        synchronized (drawing){
+            synchronized (this){
+                convert_parallel(drawing, arm);
+                followed = drawing;
+                followed_arm = arm;
+                drawing.add_listener(this);
+            }
+        }
+    }
+
+    // stops following, the tool path keeps the drawing as it is now
+    public void unfollow(){
+        update();
+        detach();
+    }
+
+    private synchronized void detach(){
+        if (followed != null){
+            followed.remove_listener(this);
+            followed = null;
+            followed_arm = null;
+        }
+        stale = false;
+    }
+
+    // converts the followed drawing again if it changed while branches
+    // are chosen (see points_changed); called before the tool path is used
+    void update(){
+        Drawing drawing;
+        synchronized (this){
+            if (!stale){
+                return;
+            }
+            drawing = followed;
+        }
+        // lock the drawing first, as when it tells about changes
+        synchronized (drawing){
+            synchronized (this){
+                if (stale && drawing == followed){
+                    followed = null; // so it is not taken as up to date
+                    convert(drawing, followed_arm);
+                    followed = drawing;
+                    stale = false;
                 }
             }
         }
     }
 
-    public void save_angles(String fname){
-        for ( int i = 0 ; i < theta1_vector.size(); i++){
-            UI.printf(" t1=%3.1f t2=%3.1f pen=%d\n",
-                theta1_vector.get(i),theta2_vector.get(i),pen_vector.get(i));
-        }
-
-        try {
-            //Whatever the file path is.
-            File statText = new File(fname);
-            FileOutputStream is = new FileOutputStream(statText);
-            OutputStreamWriter osw = new OutputStreamWriter(is);    
-            Writer w = new BufferedWriter(osw);
-            String str_out;
-            for (int i = 1; i < theta1_vector.size() ; i++){
-                str_out = String.format("%3.1f,%3.1f,%d\n",
-                    theta1_vector.get(i),theta2_vector.get(i),pen_vector.get(i));
-                w.write(str_out);
-            }
-            w.close();
-        } catch (IOException e) {
-            UI.println("Problem writing to the file statsTest.txt");
+    // converts lines touching the changed points again
+    public synchronized void points_changed(Drawing drawing, int from, int to){
+        if (drawing != followed){
+            return;
         }
+        if (select_branches){
+            // any change may change the best branches all along the path,
+            // converted once when the path is next used (see update())
+            stale = true;
+            pwm1_vector.clear();
+            pwm2_vector.clear();
+            pwm3_vector.clear();
+            return;
+        }
+        int n_segments = Math.max(drawing.get_drawing_size()-1, 0);
+        int old_segments = segment_start.size();
+        // point i is the end of line i-1 and the start of line i
+        int s0 = Math.min(Math.max(from-1, 0), Math.min(n_segments, old_segments));
+        int old_end = old_segments;   // lines s0..old_end-1 are replaced
+        int new_end = n_segments;     // by lines s0..new_end-1
+        if (n_segments == old_segments){
+            old_end = new_end = Math.max(s0, Math.min(to, n_segments));
+        }
+        if (s0 == old_end && s0 == new_end){
+            return;
+        }
+        replace_segments(drawing, followed_arm, s0, old_end, new_end);
+    }
+
+    // replaces points of lines s0..old_end-1 with the points of lines
+    // s0..new_end-1 of the drawing, as convert_drawing_to_angles would make them
+    private void replace_segments(Drawing drawing, Arm arm, int s0, int old_end, int new_end){
+        int size = theta1_vector.size();
+        int k0 = s0 < segment_start.size() ? segment_start.get(s0) : size;
+        int k1 = old_end < segment_start.size() ? segment_start.get(old_end) : size;
 
+        // points of the new lines, and where each line starts
+        int n;
+        double[] x;
+        double[] y;
+        boolean[] pen;
+        int[] starts = new int[new_end - s0];
+        if (tolerance > 0){
+            AdaptiveSubdivision part = new AdaptiveSubdivision(arm.get_geometry(), arm.get_solver(),
+                                                               tolerance, n_steps);
+            part.subdivide(drawing, s0, new_end);
+            n = part.size();
+            x = part.get_x().to_array();
+            y = part.get_y().to_array();
+            pen = new boolean[n];
+            BitSet p = part.get_pen();
+            for (int i = p.nextSetBit(0); i >= 0; i = p.nextSetBit(i+1)){
+                pen[i] = true;
+            }
+            part.get_line_start().get_all(0, starts, 0, starts.length);
+        } else {
+            n = (new_end - s0)*n_steps;
+            x = new double[n];
+            y = new double[n];
+            pen = new boolean[n];
+            sample_segments(drawing, s0, new_end, x, y, pen, 0);
+            for (int i = 0; i < starts.length; i++){
+                starts[i] = i*n_steps;
+            }
+        }
+        double[] theta1 = new double[n];
+        double[] theta2 = new double[n];
+        boolean[] valid = new boolean[n];
+        if (n > PARALLEL_CHUNK){
+            // whole drawing loaded, say
+            ForkJoinPool.commonPool().invoke(new SolveTask(arm.get_solver(), x, y, theta1, theta2, valid, 0, n));
+        } else {
+            arm.get_solver().solve(x, y, theta1, theta2, valid, 0, n);
+        }
+
+        // degrees, unreachable points keep the angles of the point before
+        double t1 = k0 > 0 ? theta1_vector.get(k0-1) : arm.get_theta1()*180/Math.PI;
+        double t2 = k0 > 0 ? theta2_vector.get(k0-1) : arm.get_theta2()*180/Math.PI;
+        boolean[] missed = new boolean[n];
+        for (int i = 0; i < n; i++){
+            if (valid[i]){
+                t1 = theta1[i]*180/Math.PI;
+                t2 = theta2[i]*180/Math.PI;
+            }
+            theta1[i] = t1;
+            theta2[i] = t2;
+            missed[i] = !valid[i];
+        }
+        theta1_vector.replace(k0, k1, theta1, 0, n);
+        theta2_vector.replace(k0, k1, theta2, 0, n);
+        replace_bits(pen_vector, k0, k1, size, pen, n);
+        replace_bits(unreachable, k0, k1, size, missed, n);
+
+        // lines after the change move by the change of the number of points
+        for (int i = 0; i < starts.length; i++){
+            starts[i] += k0;
+        }
+        segment_start.replace(s0, old_end, starts, 0, starts.length);
+        int shift = n - (k1 - k0);
+        if (shift != 0){
+            for (int i = new_end; i < segment_start.size(); i++){
+                segment_start.set(i, segment_start.get(i) + shift);
+            }
+        }
+        // unreachable points just after the change keep the new angles
+        for (int k = k0 + n; k < theta1_vector.size() && unreachable.get(k); k++){
+            theta1_vector.set(k, theta1_vector.get(k-1));
+            theta2_vector.set(k, theta2_vector.get(k-1));
+        }
+        // pwm values from k0 on are converted again when needed
+        pwm1_vector.truncate(k0);
+        pwm2_vector.truncate(k0);
+        pwm3_vector.truncate(k0);
+    }
+
+    // replaces bits from..to-1 of bits (holding size bits) with src[0..n-1]
+    private static void replace_bits(BitSet bits, int from, int to, int size, boolean[] src, int n){
+        if (n == to - from){
+            for (int i = 0; i < n; i++){
+                bits.set(from+i, src[i]);
+            }
+            return; // bits after do not move
+        }
+        BitSet tail = bits.get(to, Math.max(to, size));
+        bits.clear(from, Math.max(from, size));
+        for (int i = 0; i < n; i++){
+            if (src[i]){
+                bits.set(from+i);
+            }
+        }
+        for (int i = tail.nextSetBit(0); i >= 0; i = tail.nextSetBit(i+1)){
+            bits.set(from+n+i);
+        }
+    }
+
+    // number of points in the tool path
+    public int get_size(){
+        update();
+        return theta1_vector.size();
+    }
+
+    // 1 if pen is down at point i, 0 otherwise
+    int get_pen(int i){
+        return pen_vector.get(i) ? 1 : 0;
+    }
+
+    // every sample is saved, from the first point of the drawing on,
+    // as by all other exporters
+    public void save_angles(String fname){
+        update();
+        synchronized (this){
+            for ( int i = 0 ; i < theta1_vector.size(); i++){
+                UI.printf(" t1=%3.1f t2=%3.1f pen=%d\n",
+                    theta1_vector.get(i),theta2_vector.get(i),get_pen(i));
+            }
+
+            try {
+                //Whatever the file path is.
+                File statText = new File(fname);
+                FileOutputStream is = new FileOutputStream(statText);
+                OutputStreamWriter osw = new OutputStreamWriter(is);    
+                Writer w = new BufferedWriter(osw);
+                String str_out;
+                for (int i = 0; i < theta1_vector.size() ; i++){
+                    str_out = String.format("%3.1f,%3.1f,%d\n",
+                        theta1_vector.get(i),theta2_vector.get(i),get_pen(i));
+                    w.write(str_out);
+                }
+                w.close();
+            } catch (IOException e) {
+                UI.println("Problem writing to the file statsTest.txt");
+            }
+        }
     }
 
     // takes sequence of angles and converts it 
     // into sequence of motor signals
+    // values converted with another calibration or table are converted again
     public void convert_angles_to_pwm(Arm arm){
-        // for each angle
-        for (int i=0 ; i < theta1_vector.size();i++){
+        update();
+        synchronized (this){
+            convert_pwm(arm);
+        }
+    }
+
+    // converts angles not converted yet (holding the lock)
+    private void convert_pwm(Arm arm){
+        ServoCalibration calibration = arm.get_calibration();
+        if (!calibration.equals(pwm_calibration) || arm.get_pwm_table() != pwm_table){
+            pwm1_vector.clear();
+            pwm2_vector.clear();
+            pwm3_vector.clear();
+            pwm_calibration = calibration;
+            pwm_table = arm.get_pwm_table();
+        }
+        int n = theta1_vector.size();
+        pwm1_vector.ensure_capacity(n);
+        pwm2_vector.ensure_capacity(n);
+        pwm3_vector.ensure_capacity(n);
+        if (arm.get_pwm_table() != null){
+            convert_angles_to_pwm(arm.get_pwm_table());
+            return;
+        }
+        // for each angle not converted yet
+        for (int i=pwm1_vector.size() ; i < n;i++){
             arm.set_angles(theta1_vector.get(i),theta2_vector.get(i));
             pwm1_vector.add(arm.get_pwm1());
             pwm2_vector.add(arm.get_pwm2());
-            if(pen_vector.get(i) == 1){
-                pwm3_vector.add(2000);
+            if(pen_vector.get(i)){
+                pwm3_vector.add(PEN_DOWN_PWM);
             }
             else{
-                pwm3_vector.add(1750);
+                pwm3_vector.add(PEN_UP_PWM);
             }
         }
     }
 
-    // save file with motor control values
-    public void save_pwm_file(String fname){
-        for ( int i = 0 ; i < theta1_vector.size(); i++){
-            UI.printf(" t1=%4d t2=%4d pen=%d\n",
-                pwm1_vector.get(i),pwm2_vector.get(i),pen_vector.get(i));
+    // same, with pwm values looked up in the table, one batch at a time
+    void convert_angles_to_pwm(PwmLookupTable table){
+        int n = theta1_vector.size();
+        int batch = Math.min(PwmPipeline.BATCH, Math.max(n - pwm1_vector.size(), 0));
+        double[] t1 = new double[batch];
+        double[] t2 = new double[batch];
+        int[] p1 = new int[batch];
+        int[] p2 = new int[batch];
+        for (int i = pwm1_vector.size(); i < n; i += batch){
+            int len = Math.min(batch, n - i);
+            theta1_vector.get_all(i, t1, 0, len);
+            theta2_vector.get_all(i, t2, 0, len);
+            table.map(t1, t2, p1, p2, 0, len);
+            pwm1_vector.add_all(p1, 0, len);
+            pwm2_vector.add_all(p2, 0, len);
+            for (int j = i; j < i+len; j++){
+                pwm3_vector.add(pen_vector.get(j) ? PEN_DOWN_PWM : PEN_UP_PWM);
+            }
         }
-        
-        try {
-            //Whatever the file path is.
-            File statText = new File(fname);
-            FileOutputStream os = new FileOutputStream(statText);
-            OutputStreamWriter osw = new OutputStreamWriter(os);    
-            Writer w = new BufferedWriter(osw);
-            String str_out;
-            for (int i = 1; i < theta1_vector.size() ; i++){
-                str_out = String.format("%4d,%4d,%d\n",
-                    pwm1_vector.get(i),pwm2_vector.get(i),pwm3_vector.get(i));
-                w.write(str_out);
+    }
+
+    // converts angles not converted yet and hands all pwm values
+    // to the sink, as PwmPipeline would for the drawing
+    // returns number of values written
+    public long write_pwm(Arm arm, PwmSink sink) throws IOException{
+        update();
+        synchronized (this){
+            convert_pwm(arm);
+            int n = pwm1_vector.size();
+            int batch = Math.min(PwmPipeline.BATCH, n);
+            int[] p1 = new int[batch];
+            int[] p2 = new int[batch];
+            int[] p3 = new int[batch];
+            for (int i = 0; i < n; i += batch){
+                int len = Math.min(batch, n - i);
+                pwm1_vector.get_all(i, p1, 0, len);
+                pwm2_vector.get_all(i, p2, 0, len);
+                pwm3_vector.get_all(i, p3, 0, len);
+                sink.write(p1, p2, p3, len);
             }
-            w.close();
+            return n;
+        }
+    }
+
+    // save file with motor control values, every sample as save_angles
+    // (see PwmFileSink), converting angles not converted yet
+    public void save_pwm_file(String fname, Arm arm){
+        try (PwmFileSink sink = new PwmFileSink(fname)) {
+            write_pwm(arm, sink);
         } catch (IOException e) {
-            UI.println("Problem writing to the file statsTest.txt");
+            UI.println("Problem writing to the file " + fname + ": " + e.getMessage());
+        }
+    }
+
+    // save angles in binary format (see ToolPathBinaryWriter)
+    public void save_angles_binary(String fname, Arm arm){
+        update();
+        synchronized (this){
+            int n = theta1_vector.size();
+            int batch = Math.min(PwmPipeline.BATCH, n);
+            double[] t1 = new double[batch];
+            double[] t2 = new double[batch];
+            boolean[] pen = new boolean[batch];
+            try (ToolPathBinaryWriter w = new ToolPathBinaryWriter(fname, ToolPathBinaryWriter.ANGLES,
+                    arm.get_geometry(), arm.get_calibration())) {
+                for (int i = 0; i < n; i += batch){
+                    int len = Math.min(batch, n - i);
+                    theta1_vector.get_all(i, t1, 0, len);
+                    theta2_vector.get_all(i, t2, 0, len);
+                    for (int j = 0; j < len; j++){
+                        pen[j] = pen_vector.get(i+j);
+                    }
+                    w.write_angles(t1, t2, pen, len);
+                }
+            } catch (IOException e) {
+                UI.println("Problem writing to the file " + fname + ": " + e.getMessage());
+            }
         }
     }
 
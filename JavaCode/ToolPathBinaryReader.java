@@ -0,0 +1,180 @@
+
+/**
+ * Reads binary tool path files written by ToolPathBinaryWriter.
+ * The file is memory-mapped, so records are read straight from the
+ * page cache without copying and can be accessed in any order.
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class ToolPathBinaryReader implements Closeable
+{
+    private final FileChannel channel;
+    private final ByteBuffer data;     // mapped file
+    private final short type;          // ToolPathBinaryWriter.PWM or ANGLES
+    private final int record_size;
+    private final int count;
+    private final ArmGeometry geometry;
+    private final ServoCalibration calibration;
+
+    public ToolPathBinaryReader(String fname) throws IOException
+    {
+        channel = FileChannel.open(Paths.get(fname), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < ToolPathBinaryWriter.HEADER_SIZE){
+                throw new IOException(fname + " is too short for a tool path file");
+            }
+            if (size > Integer.MAX_VALUE){
+                throw new IOException(fname + " is too large to map");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            data = mapped.order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < ToolPathBinaryWriter.MAGIC.length; i++){
+                if (data.get(i) != ToolPathBinaryWriter.MAGIC[i]){
+                    throw new IOException(fname + " is not a tool path file");
+                }
+            }
+            short version = data.getShort(4);
+            if (version != ToolPathBinaryWriter.VERSION){
+                throw new IOException(fname + ": unsupported version " + version);
+            }
+            type = data.getShort(6);
+            if (type != ToolPathBinaryWriter.PWM && type != ToolPathBinaryWriter.ANGLES
+                    && type != ToolPathBinaryWriter.TIMED_PWM){
+                throw new IOException(fname + ": unknown record type " + type);
+            }
+            record_size = data.getShort(8);
+            if (record_size != ToolPathBinaryWriter.record_size(type)){
+                throw new IOException(fname + ": bad record size " + record_size);
+            }
+            long n = data.getLong(ToolPathBinaryWriter.COUNT_OFFSET);
+            if (n < 0 || ToolPathBinaryWriter.HEADER_SIZE + n*record_size > size){
+                throw new IOException(fname + " is truncated: header says " + n + " records");
+            }
+            count = (int)n;
+            geometry = new ArmGeometry(data.getDouble(20), data.getDouble(28), data.getDouble(36),
+                                       data.getDouble(44), data.getDouble(52));
+            calibration = new ServoCalibration(data.getDouble(60), data.getDouble(68),
+                                               data.getDouble(76), data.getDouble(84));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public short get_type(){
+        return type;
+    }
+
+    // number of records
+    public int size(){
+        return count;
+    }
+
+    public ArmGeometry get_geometry(){
+        return geometry;
+    }
+
+    public ServoCalibration get_calibration(){
+        return calibration;
+    }
+
+    private int offset(int i){
+        if (i < 0 || i >= count){
+            throw new IndexOutOfBoundsException("Record: " + i + ", Size: " + count);
+        }
+        return ToolPathBinaryWriter.HEADER_SIZE + i*record_size;
+    }
+
+    private void check(short expected){
+        if (type != expected){
+            throw new IllegalStateException("File holds " + type_name());
+        }
+    }
+
+    private String type_name(){
+        if (type == ToolPathBinaryWriter.PWM){
+            return "pwm";
+        }
+        return type == ToolPathBinaryWriter.ANGLES ? "angles" : "timed pwm";
+    }
+
+    // position of pwm1 in a record, pwm and timed pwm records only
+    private int pwm_offset(){
+        if (type == ToolPathBinaryWriter.ANGLES){
+            throw new IllegalStateException("File holds angles");
+        }
+        return type == ToolPathBinaryWriter.TIMED_PWM ? 8 : 0;
+    }
+
+    // pwm records
+    public int get_pwm1(int i){
+        return data.getShort(offset(i) + pwm_offset());
+    }
+    public int get_pwm2(int i){
+        return data.getShort(offset(i) + pwm_offset() + 2);
+    }
+    public int get_pwm3(int i){
+        return data.getShort(offset(i) + pwm_offset() + 4);
+    }
+
+    // timed pwm records, microseconds from start
+    public long get_time(int i){
+        check(ToolPathBinaryWriter.TIMED_PWM);
+        return data.getLong(offset(i));
+    }
+
+    // angle records, degrees
+    public double get_theta1(int i){
+        check(ToolPathBinaryWriter.ANGLES);
+        return data.getFloat(offset(i));
+    }
+    public double get_theta2(int i){
+        check(ToolPathBinaryWriter.ANGLES);
+        return data.getFloat(offset(i) + 4);
+    }
+    public boolean get_pen(int i){
+        check(ToolPathBinaryWriter.ANGLES);
+        return data.getShort(offset(i) + 8) == 1;
+    }
+
+    // hands pwm records from..to-1 to the sink in batches
+    // (times of timed records are dropped)
+    public void replay(PwmSink sink, int from, int to) throws IOException{
+        int skip = pwm_offset();
+        if (from < 0 || to > count || from > to){
+            throw new IndexOutOfBoundsException("Records " + from + ".." + to + ", Size: " + count);
+        }
+        int batch = Math.min(PwmPipeline.BATCH, to - from);
+        int[] pwm1 = new int[batch];
+        int[] pwm2 = new int[batch];
+        int[] pwm3 = new int[batch];
+        int pos = ToolPathBinaryWriter.HEADER_SIZE + from*record_size + skip;
+        for (int i = from; i < to; i += batch){
+            int n = Math.min(batch, to - i);
+            for (int k = 0; k < n; k++){
+                pwm1[k] = data.getShort(pos);
+                pwm2[k] = data.getShort(pos + 2);
+                pwm3[k] = data.getShort(pos + 4);
+                pos += record_size;
+            }
+            sink.write(pwm1, pwm2, pwm3, n);
+        }
+    }
+
+    // hands all pwm records to the sink
+    public void replay(PwmSink sink) throws IOException{
+        replay(sink, 0, count);
+    }
+
+    public void close() throws IOException{
+        channel.close();
+    }
+}
@@ -0,0 +1,168 @@
+
+/**
+ * Writes tool path into the compact binary format read by
+ * ToolPathBinaryReader, for the playback pipeline
+ * (the text files of ToolPath stay for humans).
+ *
+ * Format (little endian):
+ *   header, HEADER_SIZE bytes:
+ *     magic "SCRA", int16 version, int16 record type, int16 record size,
+ *     int16 reserved, int64 number of records,
+ *     geometry: float64 xm1, ym1, xm2, ym2, r
+ *     calibration: float64 m1Slope, m1B, m2Slope, m2B
+ *   followed by fixed-width records:
+ *     PWM:    int16 pwm1, int16 pwm2, int16 pwm3 (pen)
+ *     ANGLES: float32 theta1, float32 theta2 (degrees), int16 pen (1 down, 0 up)
+ *     TIMED_PWM: int64 time (microseconds from start), int16 pwm1, int16 pwm2, int16 pwm3
+ * Records are collected in a direct buffer and written through a FileChannel;
+ * number of records is filled in when the file is closed.
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class ToolPathBinaryWriter implements PwmSink, Closeable
+{
+    static final byte[] MAGIC = {'S', 'C', 'R', 'A'};
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 96;
+    static final int COUNT_OFFSET = 12; // position of number of records in the header
+
+    // record types
+    public static final short PWM = 1;
+    public static final short ANGLES = 2;
+    public static final short TIMED_PWM = 3;
+    static final int PWM_RECORD_SIZE = 6;
+    static final int ANGLES_RECORD_SIZE = 10;
+    static final int TIMED_PWM_RECORD_SIZE = 14;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final short type;
+    private long count; // records written
+
+    public ToolPathBinaryWriter(String fname, short type,
+                                ArmGeometry geometry, ServoCalibration calibration) throws IOException
+    {
+        if (type != PWM && type != ANGLES && type != TIMED_PWM){
+            throw new IllegalArgumentException("Unknown record type " + type);
+        }
+        this.type = type;
+        channel = FileChannel.open(Paths.get(fname), StandardOpenOption.CREATE,
+                                   StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort(type);
+        buffer.putShort((short)record_size(type));
+        buffer.putShort((short)0);
+        buffer.putLong(0); // number of records, written by close()
+        buffer.putDouble(geometry.get_xm1());
+        buffer.putDouble(geometry.get_ym1());
+        buffer.putDouble(geometry.get_xm2());
+        buffer.putDouble(geometry.get_ym2());
+        buffer.putDouble(geometry.get_r());
+        buffer.putDouble(calibration.get_m1Slope());
+        buffer.putDouble(calibration.get_m1B());
+        buffer.putDouble(calibration.get_m2Slope());
+        buffer.putDouble(calibration.get_m2B());
+        while (buffer.position() < HEADER_SIZE){
+            buffer.put((byte)0);
+        }
+        count = 0;
+    }
+
+    static int record_size(short type){
+        if (type == PWM){
+            return PWM_RECORD_SIZE;
+        }
+        return type == ANGLES ? ANGLES_RECORD_SIZE : TIMED_PWM_RECORD_SIZE;
+    }
+
+    // appends n pwm records
+    public void write(int[] pwm1, int[] pwm2, int[] pwm3, int n) throws IOException{
+        if (type != PWM){
+            throw new IllegalStateException("File does not hold untimed pwm");
+        }
+        for (int i = 0; i < n; i++){
+            if (buffer.remaining() < PWM_RECORD_SIZE){
+                drain();
+            }
+            buffer.putShort(to_short(pwm1[i], count + i));
+            buffer.putShort(to_short(pwm2[i], count + i));
+            buffer.putShort(to_short(pwm3[i], count + i));
+        }
+        count += n;
+    }
+
+    // appends n angle records, angles in degrees
+    public void write_angles(double[] theta1, double[] theta2, boolean[] pen, int n) throws IOException{
+        if (type != ANGLES){
+            throw new IllegalStateException("File does not hold angles");
+        }
+        for (int i = 0; i < n; i++){
+            if (buffer.remaining() < ANGLES_RECORD_SIZE){
+                drain();
+            }
+            buffer.putFloat((float)theta1[i]);
+            buffer.putFloat((float)theta2[i]);
+            buffer.putShort((short)(pen[i] ? 1 : 0));
+        }
+        count += n;
+    }
+
+    // appends n pwm records with their times (microseconds from start)
+    public void write_timed(long[] time, int[] pwm1, int[] pwm2, int[] pwm3, int n) throws IOException{
+        if (type != TIMED_PWM){
+            throw new IllegalStateException("File does not hold timed pwm");
+        }
+        for (int i = 0; i < n; i++){
+            if (buffer.remaining() < TIMED_PWM_RECORD_SIZE){
+                drain();
+            }
+            buffer.putLong(time[i]);
+            buffer.putShort(to_short(pwm1[i], count + i));
+            buffer.putShort(to_short(pwm2[i], count + i));
+            buffer.putShort(to_short(pwm3[i], count + i));
+        }
+        count += n;
+    }
+
+    // pwm value of record index as stored in the file
+    private static short to_short(int pwm, long index) throws IOException{
+        if (pwm < Short.MIN_VALUE || pwm > Short.MAX_VALUE){
+            throw new IOException("pwm value " + pwm + " of record " + index + " does not fit the binary format (is the arm calibrated?)");
+        }
+        return (short)pwm;
+    }
+
+    // writes buffered bytes into the file
+    private void drain() throws IOException{
+        buffer.flip();
+        while (buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public long get_count(){
+        return count;
+    }
+
+    public void close() throws IOException{
+        try {
+            drain();
+            buffer.putLong(count).flip();
+            long pos = COUNT_OFFSET;
+            while (buffer.hasRemaining()){
+                pos += channel.write(buffer, pos);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+
+/**
+ * Motor angles and pen sampled at a fixed servo update rate,
+ * as produced by TrajectoryPlanner. Sample i is sent at time
+ * i*get_period() seconds from the start.
+ */
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.BitSet;
+
+public class Trajectory
+{
+    private final double period;  // seconds between samples
+    private final DoubleColumn theta1 = new DoubleColumn(); // degrees
+    private final DoubleColumn theta2 = new DoubleColumn();
+    private final BitSet pen = new BitSet();
+
+    public Trajectory(double period)
+    {
+        this.period = period;
+    }
+
+    void add(double t1, double t2, boolean pen_down){
+        if (pen_down){
+            pen.set(theta1.size());
+        }
+        theta1.add(t1);
+        theta2.add(t2);
+    }
+
+    public int size(){
+        return theta1.size();
+    }
+
+    public double get_period(){
+        return period;
+    }
+
+    // seconds from the start to sample i
+    public double get_time(int i){
+        return i*period;
+    }
+
+    // seconds from the first to the last sample
+    public double get_duration(){
+        return size() == 0 ? 0 : get_time(size() - 1);
+    }
+
+    public double get_theta1(int i){
+        return theta1.get(i);
+    }
+
+    public double get_theta2(int i){
+        return theta2.get(i);
+    }
+
+    public boolean get_pen(int i){
+        return pen.get(i);
+    }
+
+    private long micros(int i){
+        return Math.round(get_time(i)*1e6);
+    }
+
+    // pwm values of samples from..from+len-1, using the arm's table if it has one
+    private void to_pwm(Arm arm, int from, int len, double[] t1, double[] t2,
+                        int[] p1, int[] p2, int[] p3){
+        theta1.get_all(from, t1, 0, len);
+        theta2.get_all(from, t2, 0, len);
+        PwmLookupTable table = arm.get_pwm_table();
+        if (table != null){
+            table.map(t1, t2, p1, p2, 0, len);
+        } else {
+            ServoCalibration calibration = arm.get_calibration();
+            for (int j = 0; j < len; j++){
+                p1[j] = calibration.pwm1(t1[j]);
+                p2[j] = calibration.pwm2(t2[j]);
+            }
+        }
+        for (int j = 0; j < len; j++){
+            p3[j] = pen.get(from + j) ? ToolPath.PEN_DOWN_PWM : ToolPath.PEN_UP_PWM;
+        }
+    }
+
+    // saves "time,pwm1,pwm2,pwm3" lines, time in microseconds from the start
+    public void save_pwm_file(String fname, Arm arm) throws IOException{
+        int n = size();
+        int batch = Math.min(PwmPipeline.BATCH, n);
+        double[] t1 = new double[batch];
+        double[] t2 = new double[batch];
+        int[] p1 = new int[batch];
+        int[] p2 = new int[batch];
+        int[] p3 = new int[batch];
+        char[] line = new char[64];
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(fname))), 1 << 16)) {
+            for (int i = 0; i < n; i += batch){
+                int len = Math.min(batch, n - i);
+                to_pwm(arm, i, len, t1, t2, p1, p2, p3);
+                for (int j = 0; j < len; j++){
+                    String time = Long.toString(micros(i + j));
+                    time.getChars(0, time.length(), line, 0);
+                    int k = time.length();
+                    line[k++] = ',';
+                    k = PwmFileSink.format(p1[j], 4, line, k);
+                    line[k++] = ',';
+                    k = PwmFileSink.format(p2[j], 4, line, k);
+                    line[k++] = ',';
+                    k = PwmFileSink.format(p3[j], 1, line, k);
+                    line[k++] = '\n';
+                    w.write(line, 0, k);
+                }
+            }
+        }
+    }
+
+    // saves timed pwm records in binary format (see ToolPathBinaryWriter)
+    public void save_pwm_binary(String fname, Arm arm) throws IOException{
+        int n = size();
+        int batch = Math.min(PwmPipeline.BATCH, n);
+        double[] t1 = new double[batch];
+        double[] t2 = new double[batch];
+        long[] time = new long[batch];
+        int[] p1 = new int[batch];
+        int[] p2 = new int[batch];
+        int[] p3 = new int[batch];
+        try (ToolPathBinaryWriter w = new ToolPathBinaryWriter(fname, ToolPathBinaryWriter.TIMED_PWM,
+                arm.get_geometry(), arm.get_calibration())) {
+            for (int i = 0; i < n; i += batch){
+                int len = Math.min(batch, n - i);
+                to_pwm(arm, i, len, t1, t2, p1, p2, p3);
+                for (int j = 0; j < len; j++){
+                    time[j] = micros(i + j);
+                }
+                w.write_timed(time, p1, p2, p3, len);
+            }
+        }
+    }
+}
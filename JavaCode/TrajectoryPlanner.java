@@ -0,0 +1,242 @@
+
+/**
+ * Times the moves of a tool path so the motors never go faster or
+ * accelerate harder than the servos can, and the drawing takes as
+ * little time as possible.
+ * Samples of the tool path are joined by straight lines in motor angle
+ * space. Every line gets a trapezoidal speed profile (accelerate, cruise,
+ * decelerate), and speeds at the joints between lines are found by a
+ * backward and a forward pass, so the arm slows down only as much as the
+ * following lines need. The motion is then sampled at the servo update rate.
+ * At a corner, velocity of a motor changes at once. Corner speed is limited
+ * so the change is no more than the motor can do within one update, and,
+ * for short lines where many corners fall into one update, no more than
+ * it can do while crossing half of both lines (this keeps the centripetal
+ * acceleration of curves within the limits).
+ * Half of the acceleration limit is given to speeding up and slowing down
+ * along lines and half to corners, as both can fall into one update.
+ * The arm stops whenever the pen goes up or down and waits pen_delay
+ * seconds for the pen servo, at the sample whose pen differs from the
+ * one before: the pen of a sample holds from that sample on, so it
+ * changes at the same sample as in the untimed exports.
+ */
+public class TrajectoryPlanner
+{
+    // hobby servo, about 60 degrees in 0.15 s
+    public static final double DEFAULT_MAX_VELOCITY = 400;      // degrees/s
+    public static final double DEFAULT_MAX_ACCELERATION = 4000; // degrees/s^2
+    public static final double DEFAULT_RATE = 50;               // Hz, one pwm frame per 20 ms
+    public static final double DEFAULT_PEN_DELAY = 0.2;         // seconds
+
+    private final double max_vel1;   // degrees/s
+    private final double max_vel2;
+    private final double max_acc1;   // degrees/s^2
+    private final double max_acc2;
+    private final double rate;       // samples per second
+    private final double pen_delay;  // seconds
+
+    // lines with non-zero length, in motor angle space
+    private int n;
+    private double[] start1;   // start angles
+    private double[] start2;
+    private double[] dir1;     // unit direction
+    private double[] dir2;
+    private double[] length;   // degrees
+    private double[] v_max;    // speed along the line, degrees/s
+    private double[] acc;      // acceleration along the line, degrees/s^2
+    private double[] v_start;  // speed at the start of line k, v_start[n] at the end
+    private double[] dwell;    // seconds to wait before line k for the pen
+    private boolean[] pen;     // pen during line k
+    private double end1;       // last angles
+    private double end2;
+    private double end_dwell;  // pen moves after the last line
+    private boolean end_pen;   // pen after the last sample
+
+    public TrajectoryPlanner()
+    {
+        this(DEFAULT_MAX_VELOCITY, DEFAULT_MAX_VELOCITY,
+             DEFAULT_MAX_ACCELERATION, DEFAULT_MAX_ACCELERATION,
+             DEFAULT_RATE, DEFAULT_PEN_DELAY);
+    }
+
+    public TrajectoryPlanner(double max_vel1, double max_vel2, double max_acc1, double max_acc2,
+                             double rate, double pen_delay)
+    {
+        if (max_vel1 <= 0 || max_vel2 <= 0 || max_acc1 <= 0 || max_acc2 <= 0 || rate <= 0 || pen_delay < 0){
+            throw new IllegalArgumentException("Limits and rate must be positive");
+        }
+        this.max_vel1 = max_vel1;
+        this.max_vel2 = max_vel2;
+        this.max_acc1 = max_acc1;
+        this.max_acc2 = max_acc2;
+        this.rate = rate;
+        this.pen_delay = pen_delay;
+    }
+
+    // timed samples of the angles in the tool path
+    public Trajectory plan(ToolPath tool_path){
+        Trajectory trajectory = new Trajectory(1/rate);
+        int size = tool_path.get_size();
+        if (size == 0){
+            return trajectory;
+        }
+        build_lines(tool_path);
+        plan_speeds();
+        sample(trajectory);
+        return trajectory;
+    }
+
+    // splits the tool path into lines, dropping those of zero length
+    private void build_lines(ToolPath tool_path){
+        int size = tool_path.get_size();
+        start1 = new double[size];
+        start2 = new double[size];
+        dir1 = new double[size];
+        dir2 = new double[size];
+        length = new double[size];
+        v_max = new double[size];
+        acc = new double[size];
+        v_start = new double[size + 1];
+        dwell = new double[size];
+        pen = new boolean[size];
+        n = 0;
+        boolean pen_now = tool_path.pen_vector.get(0);
+        double wait = 0;
+        double a1 = tool_path.theta1_vector.get(0);
+        double a2 = tool_path.theta2_vector.get(0);
+        for (int i = 1; i < size; i++){
+            double b1 = tool_path.theta1_vector.get(i);
+            double b2 = tool_path.theta2_vector.get(i);
+            // pen of a sample holds while moving away from it, as ToolPath
+            // gives the samples of a line the pen of its start point,
+            // so the pen moves while the arm waits at that sample
+            boolean pen_i = tool_path.pen_vector.get(i-1);
+            if (pen_i != pen_now){
+                wait += pen_delay;
+                pen_now = pen_i;
+            }
+            double d1 = b1 - a1;
+            double d2 = b2 - a2;
+            double len = Math.sqrt(d1*d1 + d2*d2);
+            if (len == 0){
+                continue;
+            }
+            double u1 = d1/len;
+            double u2 = d2/len;
+            start1[n] = a1;
+            start2[n] = a2;
+            dir1[n] = u1;
+            dir2[n] = u2;
+            length[n] = len;
+            v_max[n] = Math.min(limit(max_vel1, Math.abs(u1)), limit(max_vel2, Math.abs(u2)));
+            acc[n] = Math.min(limit(max_acc1/2, Math.abs(u1)), limit(max_acc2/2, Math.abs(u2)));
+            dwell[n] = wait;
+            pen[n] = pen_now;
+            n++;
+            wait = 0;
+            a1 = b1;
+            a2 = b2;
+        }
+        // pen of the last sample, moved once the arm is there
+        if (tool_path.pen_vector.get(size-1) != pen_now){
+            wait += pen_delay;
+            pen_now = !pen_now;
+        }
+        end1 = a1;
+        end2 = a2;
+        end_dwell = wait;
+        end_pen = pen_now;
+    }
+
+    // largest speed along a line for which motor limit is kept
+    // when the motor moves by part of each degree along the line
+    private static double limit(double motor_limit, double part){
+        return part == 0 ? Double.POSITIVE_INFINITY : motor_limit/part;
+    }
+
+    // largest corner speed v at which a motor changes its velocity by v*turn
+    // within min(one update, half/v) seconds
+    private double corner(double max_acc, double turn, double half){
+        if (turn == 0){
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.min(max_acc/(rate*turn), Math.sqrt(max_acc*half/turn));
+    }
+
+    // speeds at the joints between lines
+    private void plan_speeds(){
+        if (n == 0){
+            return;
+        }
+        // largest speeds allowed by the corners
+        v_start[0] = 0;
+        v_start[n] = 0;
+        for (int k = 1; k < n; k++){
+            if (dwell[k] > 0){
+                v_start[k] = 0; // stop for the pen
+                continue;
+            }
+            double v = Math.min(v_max[k-1], v_max[k]);
+            double half = (length[k-1] + length[k])/2;
+            v = Math.min(v, corner(max_acc1/2, Math.abs(dir1[k] - dir1[k-1]), half));
+            v = Math.min(v, corner(max_acc2/2, Math.abs(dir2[k] - dir2[k-1]), half));
+            v_start[k] = v;
+        }
+        // backward: must be able to slow down for the following lines
+        for (int k = n - 1; k >= 0; k--){
+            v_start[k] = Math.min(v_start[k], Math.sqrt(v_start[k+1]*v_start[k+1] + 2*acc[k]*length[k]));
+        }
+        // forward: must be able to speed up from the previous lines
+        for (int k = 0; k < n; k++){
+            v_start[k+1] = Math.min(v_start[k+1], Math.sqrt(v_start[k]*v_start[k] + 2*acc[k]*length[k]));
+        }
+    }
+
+    // samples the planned motion every 1/rate seconds
+    private void sample(Trajectory trajectory){
+        double period = 1/rate;
+        long i = 0;          // next sample
+        double t0 = 0;       // start time of the current line
+        for (int k = 0; k < n; k++){
+            // wait for the pen
+            double t_move = t0 + dwell[k];
+            for (; i*period < t_move; i++){
+                trajectory.add(start1[k], start2[k], pen[k]);
+            }
+            // trapezoid: accelerate to vp, cruise, decelerate to ve
+            double a = acc[k];
+            double len = length[k];
+            double vs = v_start[k];
+            double ve = v_start[k+1];
+            double vp = Math.min(v_max[k], Math.sqrt(a*len + (vs*vs + ve*ve)/2));
+            double ta = (vp - vs)/a;
+            double da = (vp*vp - vs*vs)/(2*a);
+            double dd = (vp*vp - ve*ve)/(2*a);
+            double dc = Math.max(0, len - da - dd);
+            double tc = dc/vp;
+            double td = (vp - ve)/a;
+            double t_end = t_move + ta + tc + td;
+            for (; i*period < t_end; i++){
+                double t = i*period - t_move;
+                double s;
+                if (t < ta){
+                    s = vs*t + a*t*t/2;
+                } else if (t < ta + tc){
+                    s = da + vp*(t - ta);
+                } else {
+                    t -= ta + tc;
+                    s = da + dc + vp*t - a*t*t/2;
+                }
+                s = Math.min(Math.max(s, 0), len);
+                trajectory.add(start1[k] + s*dir1[k], start2[k] + s*dir2[k], pen[k]);
+            }
+            t0 = t_end;
+        }
+        // pen moves after the last line, then the last position
+        double t_end = t0 + end_dwell;
+        for (; i*period < t_end; i++){
+            trajectory.add(end1, end2, end_pen);
+        }
+        trajectory.add(end1, end2, end_pen);
+    }
+}
@@ -0,0 +1,187 @@
+
+/**
+ * Precomputed map of the arm workspace over the 640x480 field of view
+ * drawn by Arm.draw().
+ * Field is divided into cells (resolution cells per pixel) and inverse
+ * kinematics is solved once at every cell corner when the map is built.
+ * Each cell remembers whether all, some or none of its corners are
+ * reachable, and whether it touches a joint limit or a singular zone
+ * (arms or forearms nearly stretched out, where small motor errors
+ * move the tool a lot).
+ * isReachable() is then a single array lookup; only cells on the
+ * border of the workspace fall back to the exact solution.
+ * The map never changes after it is built and can be shared between threads.
+ */
+public final class WorkspaceMap implements IKSolver
+{
+    public static final int FIELD_WIDTH = 640;  // field of view, pixels
+    public static final int FIELD_HEIGHT = 480;
+    // distance to a stretched out configuration (fraction of 2r)
+    // under which a point is in the singular zone
+    public static final double DEFAULT_SINGULAR_MARGIN = 0.02;
+
+    // flags of a cell
+    static final byte ALL = 1;          // all corners reachable
+    static final byte SOME = 2;         // at least one corner reachable
+    static final byte JOINT_LIMIT = 4;  // a corner is beyond joint limits
+    static final byte SINGULAR = 8;     // a corner is in singular zone
+
+    private final InverseKinematics ik;
+    private final double resolution; // cells per pixel
+    private final int width;         // size of the map in cells
+    private final int height;
+    private final byte[] cells;
+
+    public WorkspaceMap(ArmGeometry geometry, double resolution)
+    {
+        this(geometry, resolution, DEFAULT_SINGULAR_MARGIN);
+    }
+
+    public WorkspaceMap(ArmGeometry geometry, double resolution, double singular_margin)
+    {
+        if (!(resolution > 0)){
+            throw new IllegalArgumentException("Invalid resolution " + resolution);
+        }
+        this.ik = new InverseKinematics(geometry);
+        this.resolution = resolution;
+        width = (int)Math.ceil(FIELD_WIDTH*resolution);
+        height = (int)Math.ceil(FIELD_HEIGHT*resolution);
+        cells = new byte[width*height];
+
+        double xm1 = geometry.get_xm1();
+        double ym1 = geometry.get_ym1();
+        double xm2 = geometry.get_xm2();
+        double ym2 = geometry.get_ym2();
+        double r = geometry.get_r();
+        double singular = 2*r*(1 - singular_margin);
+
+        // corners are solved one row at a time
+        int n = width + 1;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] theta1 = new double[n];
+        double[] theta2 = new double[n];
+        boolean[] valid = new boolean[n];
+        byte[] above = new byte[n]; // corner flags of the previous row
+        byte[] below = new byte[n];
+        for (int c = 0; c < n; c++){
+            x[c] = c/resolution;
+        }
+        for (int row = 0; row <= height; row++){
+            double yr = row/resolution;
+            for (int c = 0; c < n; c++){
+                y[c] = yr;
+            }
+            ik.solve(x, y, theta1, theta2, valid, 0, n);
+            for (int c = 0; c < n; c++){
+                if (valid[c]){
+                    below[c] = ALL;
+                    // longest of arm reach and joint distance
+                    double xj1 = xm1 + r*Math.cos(theta1[c]);
+                    double yj1 = ym1 + r*Math.sin(theta1[c]);
+                    double xj2 = xm2 + r*Math.cos(theta2[c]);
+                    double yj2 = ym2 + r*Math.sin(theta2[c]);
+                    double d = Math.max(Math.hypot(xj2-xj1, yj2-yj1),
+                               Math.max(Math.hypot(x[c]-xm1, yr-ym1), Math.hypot(x[c]-xm2, yr-ym2)));
+                    if (d > singular){
+                        below[c] |= SINGULAR;
+                    }
+                } else if (ik.classify(x[c], yr) == InverseKinematics.JOINT_LIMIT){
+                    below[c] = JOINT_LIMIT;
+                } else {
+                    below[c] = 0;
+                }
+            }
+            if (row > 0){
+                int base = (row-1)*width;
+                for (int c = 0; c < width; c++){
+                    cells[base+c] = combine(above[c], above[c+1], below[c], below[c+1]);
+                }
+            }
+            byte[] t = above;
+            above = below;
+            below = t;
+        }
+    }
+
+    // flags of a cell from flags of its four corners
+    private static byte combine(byte a, byte b, byte c, byte d){
+        int all = a & b & c & d & ALL;
+        int some = (a | b | c | d) & ALL;
+        int zones = (a | b | c | d) & (JOINT_LIMIT | SINGULAR);
+        return (byte)(all | (some != 0 ? SOME : 0) | zones);
+    }
+
+    public double get_resolution(){
+        return resolution;
+    }
+
+    public int get_width(){
+        return width;
+    }
+
+    public int get_height(){
+        return height;
+    }
+
+    public ArmGeometry get_geometry(){
+        return ik.get_geometry();
+    }
+
+    // flags of the cell containing (x,y), -1 outside of the field of view
+    int cell(double x, double y){
+        if (!(x >= 0) || !(y >= 0)){
+            return -1;
+        }
+        int cx = (int)(x*resolution);
+        int cy = (int)(y*resolution);
+        if (cx >= width || cy >= height){
+            return -1;
+        }
+        return cells[cy*width + cx];
+    }
+
+    // can the tool be moved to (x,y)?
+    public boolean isReachable(double x, double y){
+        int f = cell(x, y);
+        if (f >= 0){
+            if ((f & ALL) != 0){
+                return true;
+            }
+            if ((f & SOME) == 0){
+                return false;
+            }
+        }
+        // border of the workspace or outside of the field of view
+        return ik.classify(x, y) == InverseKinematics.REACHABLE;
+    }
+
+    // is (x,y) near a motor angle limit?
+    public boolean isJointLimit(double x, double y){
+        int f = cell(x, y);
+        return f >= 0 && (f & JOINT_LIMIT) != 0;
+    }
+
+    // is (x,y) near a stretched out (singular) configuration?
+    public boolean isSingular(double x, double y){
+        int f = cell(x, y);
+        return f >= 0 && (f & SINGULAR) != 0;
+    }
+
+    // inverse kinematics which rejects points in cells with no
+    // reachable corner without doing any trigonometry
+    public void solve(double[] x, double[] y,
+                      double[] theta1, double[] theta2, boolean[] valid,
+                      int from, int to){
+        for (int i = from; i < to; i++){
+            int f = cell(x[i], y[i]);
+            if (f >= 0 && (f & SOME) == 0){
+                theta1[i] = Double.NaN;
+                theta2[i] = Double.NaN;
+                valid[i] = false;
+            } else {
+                ik.solve(x, y, theta1, theta2, valid, i, i+1);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+
+/**
+ * Tests of AdaptiveSubdivision: half way between any two samples the
+ * tool is within tolerance of the line, short lines get a single
+ * sample, and lines the arm can not follow get fixed steps.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveSubdivisionTest
+{
+    static final double TOLERANCE = 0.5;
+
+    private final Arm arm = new Arm();
+    private final IKSolver ik = new InverseKinematics(arm.get_geometry());
+    private final ForwardKinematics fk = new ForwardKinematics(arm.get_geometry());
+
+    // star of long lines and a circle of short ones, away from the
+    // motors where the arm may go to the mirror point
+    private static Drawing star(){
+        Drawing drawing = new Drawing();
+        for (int i = 0; i <= 40; i++){
+            double r = i % 2 == 0 ? 60 : 3;
+            drawing.append_point(330 + r*Math.cos(i*0.7), 150 + r*Math.sin(i*0.7), true);
+        }
+        for (int i = 0; i <= 200; i++){
+            drawing.append_point(330 + 20*Math.cos(i*0.03), 150 + 20*Math.sin(i*0.03), true);
+        }
+        return drawing;
+    }
+
+    @Test
+    public void within_tolerance(){
+        Drawing drawing = star();
+        AdaptiveSubdivision adaptive = new AdaptiveSubdivision(arm.get_geometry(), ik, TOLERANCE, 2);
+        int n_lines = drawing.get_drawing_size() - 1;
+        adaptive.subdivide(drawing, 0, n_lines);
+        assertEquals(n_lines, adaptive.get_line_start().size());
+        int single = 0;
+        for (int i = 0; i < n_lines; i++){
+            int start = adaptive.get_line_start().get(i);
+            int end = i+1 < n_lines ? adaptive.get_line_start().get(i+1) : adaptive.size();
+            single += end - start == 1 ? 1 : 0;
+            // samples of the line, then the point it ends at
+            int n = end - start + 1;
+            double[] x = new double[n];
+            double[] y = new double[n];
+            adaptive.get_x().get_all(start, x, 0, n-1);
+            adaptive.get_y().get_all(start, y, 0, n-1);
+            x[n-1] = drawing.get_x(i+1);
+            y[n-1] = drawing.get_y(i+1);
+            assertEquals(drawing.get_x(i), x[0]);
+            double[] t1 = new double[n];
+            double[] t2 = new double[n];
+            boolean[] valid = new boolean[n];
+            ik.solve(x, y, t1, t2, valid, 0, n);
+            for (int k = 0; k+1 < n; k++){
+                assertTrue(valid[k] && valid[k+1]);
+                double[] xt = new double[1];
+                double[] yt = new double[1];
+                boolean[] reached = new boolean[1];
+                fk.solve(new double[] {(t1[k]+t1[k+1])/2}, new double[] {(t2[k]+t2[k+1])/2},
+                         xt, yt, reached, 0, 1);
+                assertTrue(reached[0]);
+                double d = distance(xt[0], yt[0], drawing.get_x(i), drawing.get_y(i),
+                                    drawing.get_x(i+1), drawing.get_y(i+1));
+                assertTrue(d <= TOLERANCE + 1e-9, "line " + i + ", sample " + k + ": " + d);
+            }
+        }
+        // short lines need no more, long ones do
+        assertTrue(single > 0 && single < n_lines);
+        assertTrue(adaptive.get_pen().get(adaptive.size() - 1));
+    }
+
+    @Test
+    public void fewer_samples_than_fixed_steps(){
+        // fixed steps as fine as the longest line needs
+        Drawing drawing = star();
+        AdaptiveSubdivision adaptive = new AdaptiveSubdivision(arm.get_geometry(), ik, TOLERANCE, 2);
+        adaptive.subdivide(drawing, 0, drawing.get_drawing_size() - 1);
+        int finest = 0;
+        for (int i = 0; i < adaptive.get_line_start().size(); i++){
+            int end = i+1 < adaptive.get_line_start().size() ? adaptive.get_line_start().get(i+1) : adaptive.size();
+            finest = Math.max(finest, end - adaptive.get_line_start().get(i));
+        }
+        assertTrue(adaptive.size() < finest*(drawing.get_drawing_size() - 1));
+
+        ToolPath tool_path = new ToolPath();
+        tool_path.set_tolerance(TOLERANCE);
+        tool_path.convert_drawing_to_angles(drawing, arm);
+        assertEquals(adaptive.size(), tool_path.get_size());
+    }
+
+    @Test
+    public void fixed_steps_out_of_reach(){
+        AdaptiveSubdivision adaptive = new AdaptiveSubdivision(arm.get_geometry(), ik, TOLERANCE, 5);
+        adaptive.segment(300, 200, 10, 10, false); // ends far out of reach
+        assertEquals(5, adaptive.size());
+        assertEquals(300 + 2*(10 - 300)/5.0, adaptive.get_x().get(2), 1e-9);
+        assertEquals(0, adaptive.get_pen().cardinality());
+        adaptive.clear();
+        assertEquals(0, adaptive.size());
+    }
+
+    // distance from (x,y) to line segment a-b
+    private static double distance(double x, double y, double xa, double ya, double xb, double yb){
+        double lx = xb - xa;
+        double ly = yb - ya;
+        double s = Math.max(0, Math.min(1, ((x-xa)*lx + (y-ya)*ly)/(lx*lx + ly*ly)));
+        return Math.hypot(x - (xa + s*lx), y - (ya + s*ly));
+    }
+}
@@ -0,0 +1,86 @@
+
+/**
+ * Tests of the solvers stacked by Arm: whatever order the cache and the
+ * warm started solver are enabled and disabled in, the warm started
+ * solver wraps the closed form and the cache is outermost.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class ArmSolverTest
+{
+    // solves a short dense line, so warm starts are taken
+    private static void solve(Arm arm){
+        int n = 100;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++){
+            x[i] = 300 + 0.1*i;
+            y[i] = 180 + 0.05*i;
+        }
+        arm.get_solver().solve(x, y, new double[n], new double[n], new boolean[n], 0, n);
+    }
+
+    // cache outermost, warm started solver behind it
+    private static void assert_stacked(Arm arm){
+        assertSame(arm.get_ik_cache(), arm.get_solver());
+        long misses = arm.get_ik_cache().get_misses();
+        long solved = arm.get_incremental_ik().get_warm_count() + arm.get_incremental_ik().get_cold_count();
+        arm.get_ik_cache().clear();
+        solve(arm);
+        long missed = arm.get_ik_cache().get_misses() - misses;
+        assertTrue(missed > 0);
+        assertEquals(missed, arm.get_incremental_ik().get_warm_count()
+                     + arm.get_incremental_ik().get_cold_count() - solved);
+    }
+
+    @Test
+    public void cache_then_incremental(){
+        Arm arm = new Arm();
+        arm.enable_ik_cache(IKCache.DEFAULT_QUANTUM, IKCache.DEFAULT_CAPACITY);
+        arm.enable_incremental_ik(IncrementalIK.DEFAULT_TOLERANCE);
+        assert_stacked(arm);
+    }
+
+    @Test
+    public void incremental_then_cache(){
+        Arm arm = new Arm();
+        arm.enable_incremental_ik(IncrementalIK.DEFAULT_TOLERANCE);
+        arm.enable_ik_cache(IKCache.DEFAULT_QUANTUM, IKCache.DEFAULT_CAPACITY);
+        assert_stacked(arm);
+        arm.build_workspace(1.0); // the map goes under both
+        assert_stacked(arm);
+    }
+
+    @Test
+    public void disabling_keeps_the_other(){
+        Arm arm = new Arm();
+        arm.enable_ik_cache(IKCache.DEFAULT_QUANTUM, IKCache.DEFAULT_CAPACITY);
+        arm.enable_incremental_ik(IncrementalIK.DEFAULT_TOLERANCE);
+        arm.disable_ik_cache();
+        assertNull(arm.get_ik_cache());
+        assertSame(arm.get_incremental_ik(), arm.get_solver());
+        arm.enable_ik_cache(IKCache.DEFAULT_QUANTUM, IKCache.DEFAULT_CAPACITY);
+        arm.disable_incremental_ik();
+        assertNull(arm.get_incremental_ik());
+        assertSame(arm.get_ik_cache(), arm.get_solver());
+        solve(arm);
+        assertTrue(arm.get_ik_cache().get_misses() > 0);
+    }
+
+    @Test
+    public void invalid_setting_changes_nothing(){
+        Arm arm = new Arm();
+        arm.enable_incremental_ik(IncrementalIK.DEFAULT_TOLERANCE);
+        IKSolver solver = arm.get_solver();
+        assertThrows(IllegalArgumentException.class, () -> arm.enable_ik_cache(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> arm.enable_incremental_ik(0));
+        assertNull(arm.get_ik_cache());
+        assertSame(solver, arm.get_solver());
+    }
+}
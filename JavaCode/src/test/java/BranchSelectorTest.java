@@ -0,0 +1,121 @@
+
+/**
+ * Tests of BranchSelector: chosen branches move the motors less than
+ * keeping the elbows out, every point solved
+ * is where forward kinematics puts the tool, and branches change only
+ * over pen-up moves.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class BranchSelectorTest
+{
+    private final Arm arm = new Arm();
+    private final BranchSelector selector = new BranchSelector(arm.get_geometry());
+
+    // motor travel along angles, from the start angles
+    private static double travel(double[] theta1, double[] theta2, int n, double start1, double start2){
+        double total = 0;
+        double t1 = start1;
+        double t2 = start2;
+        for (int i = 0; i < n; i++){
+            total += Math.abs(theta1[i] - t1) + Math.abs(theta2[i] - t2);
+            t1 = theta1[i];
+            t2 = theta2[i];
+        }
+        return total;
+    }
+
+    @Test
+    public void less_travel_than_elbows_out(){
+        Random random = new Random(4);
+        int n = 3000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        boolean[] pen = new boolean[n];
+        // short strokes all over the workspace the elbows out reach,
+        // so both ways reach every point and only travel differs
+        double[] angles = new double[2];
+        double xs = 330;
+        double ys = 150;
+        for (int i = 0; i < n; i++){
+            pen[i] = i % 30 != 29;
+            do {
+                if (i % 30 == 0){
+                    xs = 120 + random.nextDouble()*420;
+                    ys = 20 + random.nextDouble()*300;
+                }
+                x[i] = xs + random.nextDouble()*4 - 2;
+                y[i] = ys + random.nextDouble()*4 - 2;
+            } while (!selector.solve(x[i], y[i], BranchSelector.ELBOWS_OUT, angles));
+            xs = x[i];
+            ys = y[i];
+        }
+        double start1 = arm.get_theta1();
+        double start2 = arm.get_theta2();
+        double[] theta1 = new double[n];
+        double[] theta2 = new double[n];
+        boolean[] valid = new boolean[n];
+        byte[] branch = new byte[n];
+        int switches = selector.select(x, y, pen, n, start1, start2, theta1, theta2, valid, branch);
+
+        // elbows kept out, holding the angles over missed points
+        double[] out1 = new double[n];
+        double[] out2 = new double[n];
+        for (int i = 0; i < n; i++){
+            selector.solve(x[i], y[i], BranchSelector.ELBOWS_OUT, angles);
+            out1[i] = angles[0];
+            out2[i] = angles[1];
+            assertTrue(valid[i], "point " + i + " missed");
+        }
+        double chosen = travel(theta1, theta2, n, start1, start2);
+        double out = travel(out1, out2, n, start1, start2);
+        assertTrue(chosen < out, chosen + " with branches chosen, " + out + " with elbows out");
+
+        int changes = 0;
+        double[] xt = new double[n];
+        double[] yt = new double[n];
+        boolean[] reached = new boolean[n];
+        arm.get_fk().solve(theta1, theta2, xt, yt, reached, 0, n);
+        for (int i = 0; i < n; i++){
+            if (i > 0 && branch[i] != branch[i-1]){
+                assertFalse(pen[i-1], "branch changed while drawing at " + i);
+                changes++;
+            }
+            if (valid[i]){
+                assertTrue(reached[i]);
+                assertEquals(x[i], xt[i], 1e-9, "point " + i);
+                assertEquals(y[i], yt[i], 1e-9, "point " + i);
+            }
+        }
+        assertEquals(switches, changes);
+        assertTrue(switches > 0);
+    }
+
+    @Test
+    public void elbows_out_as_inverse_kinematics(){
+        InverseKinematics ik = new InverseKinematics(arm.get_geometry());
+        double[] angles = new double[2];
+        double[] t1 = new double[1];
+        double[] t2 = new double[1];
+        boolean[] valid = new boolean[1];
+        for (double x = 200; x < 460; x += 7){
+            for (double y = 30; y < 250; y += 7){
+                ik.solve(new double[] {x}, new double[] {y}, t1, t2, valid, 0, 1);
+                assertEquals(valid[0], selector.solve(x, y, BranchSelector.ELBOWS_OUT, angles), x + "," + y);
+                if (valid[0]){
+                    assertEquals(t1[0], angles[0], 1e-12);
+                    assertEquals(t2[0], angles[1], 1e-12);
+                }
+            }
+        }
+        assertFalse(selector.solve(10, 10, BranchSelector.ELBOWS_IN, angles));
+        assertEquals(0, selector.select(new double[0], new double[0], new boolean[0], 0, 0, 0,
+                                        new double[0], new double[0], new boolean[0], null));
+    }
+}
@@ -0,0 +1,80 @@
+
+/**
+ * Tests of DoubleColumn and IntColumn: values added one at a time or in
+ * bulk read back in order, ranges are replaced with shorter or longer
+ * runs, and reads past the end throw.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class ColumnTest
+{
+    @Test
+    public void double_column(){
+        DoubleColumn column = new DoubleColumn(1);
+        for (int i = 0; i < 100; i++){
+            column.add(i*0.5); // grows the array a few times
+        }
+        column.add_all(new double[] {-1, -2, -3, -4}, 1, 2);
+        assertEquals(102, column.size());
+        assertEquals(49.5, column.get(99));
+        assertEquals(-3, column.get(101));
+        double[] dst = new double[5];
+        column.get_all(10, dst, 1, 3);
+        assertArrayEquals(new double[] {0, 5, 5.5, 6, 0}, dst);
+        column.set(0, 7);
+        assertEquals(7, column.get(0));
+
+        column.truncate(4);
+        assertArrayEquals(new double[] {7, 0.5, 1, 1.5}, column.to_array());
+        column.replace(1, 3, new double[] {9, 8, 7}, 0, 3); // longer
+        assertArrayEquals(new double[] {7, 9, 8, 7, 1.5}, column.to_array());
+        column.replace(0, 4, new double[] {6}, 0, 1);       // shorter
+        assertArrayEquals(new double[] {6, 1.5}, column.to_array());
+        column.replace(2, 2, new double[] {3, 4}, 0, 2);     // appended
+        assertArrayEquals(new double[] {6, 1.5, 3, 4}, column.to_array());
+        column.truncate(10);
+        assertEquals(4, column.size());
+
+        assertThrows(IndexOutOfBoundsException.class, () -> column.get(4));
+        assertThrows(IndexOutOfBoundsException.class, () -> column.set(4, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> column.get_all(2, dst, 0, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> column.replace(3, 5, dst, 0, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> column.replace(3, 2, dst, 0, 0));
+        column.clear();
+        assertEquals(0, column.size());
+        assertEquals(0, column.to_array().length);
+    }
+
+    @Test
+    public void int_column(){
+        IntColumn column = new IntColumn(1);
+        for (int i = 0; i < 100; i++){
+            column.add(3*i);
+        }
+        column.add_all(new int[] {-1, -2, -3, -4}, 1, 2);
+        assertEquals(102, column.size());
+        assertEquals(297, column.get(99));
+        assertEquals(-3, column.get(101));
+        int[] dst = new int[3];
+        column.get_all(10, dst, 0, 3);
+        assertArrayEquals(new int[] {30, 33, 36}, dst);
+        column.set(0, 7);
+
+        column.truncate(4);
+        assertArrayEquals(new int[] {7, 3, 6, 9}, column.to_array());
+        column.replace(1, 3, new int[] {1, 2, 3}, 0, 3);
+        assertArrayEquals(new int[] {7, 1, 2, 3, 9}, column.to_array());
+        column.replace(0, 4, new int[] {5}, 0, 1);
+        assertArrayEquals(new int[] {5, 9}, column.to_array());
+
+        assertThrows(IndexOutOfBoundsException.class, () -> column.get(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> column.get_all(1, dst, 0, 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> column.replace(-1, 1, dst, 0, 0));
+        column.truncate(0);
+        assertEquals(0, column.size());
+    }
+}
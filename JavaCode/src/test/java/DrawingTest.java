@@ -0,0 +1,85 @@
+
+/**
+ * Tests of the packed points of Drawing: points appended one at a time
+ * or in bulk read back the same, views change the drawing they show,
+ * and a view of a point the drawing no longer has throws.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class DrawingTest
+{
+    @Test
+    public void keeps_appended_points(){
+        Drawing drawing = new Drawing();
+        int n = 1000; // grows the arrays a few times
+        for (int i = 0; i < n/2; i++){
+            drawing.append_point(i, 2*i, i % 3 == 0);
+        }
+        double[] x = new double[n/2];
+        double[] y = new double[n/2];
+        boolean[] pen = new boolean[n/2];
+        for (int i = 0; i < n/2; i++){
+            x[i] = n/2 + i;
+            y[i] = 2*(n/2 + i);
+            pen[i] = (n/2 + i) % 3 == 0;
+        }
+        drawing.append_points(x, y, pen, n/2);
+        assertEquals(n, drawing.get_drawing_size());
+        for (int i = 0; i < n; i++){
+            assertEquals(i, drawing.get_x(i));
+            assertEquals(2*i, drawing.get_y(i));
+            assertEquals(i % 3 == 0, drawing.get_pen(i));
+        }
+        double[] xs = new double[12];
+        double[] ys = new double[12];
+        boolean[] pens = new boolean[12];
+        drawing.get_points(100, 110, xs, ys, pens, 2);
+        assertEquals(100, xs[2]);
+        assertEquals(218, ys[11]);
+        assertTrue(pens[4]); // point 102
+        assertThrows(IndexOutOfBoundsException.class, () -> drawing.get_points(990, 1001, xs, ys, pens, 0));
+    }
+
+    @Test
+    public void views_change_the_drawing(){
+        Drawing drawing = new Drawing();
+        drawing.append_point(1, 2, true);
+        drawing.append_point(3, 4, false);
+        PointXY p = drawing.get_drawing_point(1);
+        p.set_x(5);
+        p.set_y(6);
+        p.set_pen(true);
+        assertEquals(5, drawing.get_x(1));
+        assertEquals(6, drawing.get_y(1));
+        assertTrue(drawing.get_pen(1));
+        Drawing.PointView view = drawing.new_view();
+        assertEquals(1, view.at(0).get_x());
+        assertEquals(6, view.at(1).get_y());
+        assertEquals(1, view.get_index());
+        assertThrows(IndexOutOfBoundsException.class, () -> view.at(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> drawing.get_drawing_point(-1));
+    }
+
+    @Test
+    public void stale_view_throws(){
+        Drawing drawing = new Drawing();
+        drawing.append_point(1, 2, true);
+        drawing.append_point(3, 4, false);
+        Drawing.PointView view = drawing.new_view().at(1);
+        drawing.clear();
+        assertEquals(0, drawing.get_drawing_size());
+        assertThrows(IndexOutOfBoundsException.class, view::get_x);
+        assertThrows(IndexOutOfBoundsException.class, view::get_y);
+        assertThrows(IndexOutOfBoundsException.class, view::get_pen);
+        assertThrows(IndexOutOfBoundsException.class, () -> view.set_x(7));
+        drawing.append_point(8, 9, false);
+        assertThrows(IndexOutOfBoundsException.class, view::get_x);
+        assertEquals(8, view.at(0).get_x());
+        assertFalse(view.get_pen());
+    }
+}
@@ -0,0 +1,78 @@
+
+/**
+ * Tests of ForwardKinematics: it puts the tool back where inverse
+ * kinematics solved it for, in batch and through Arm.directKinematic,
+ * and finds no position for elbows too far apart.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class ForwardKinematicsTest
+{
+    private final Arm arm = new Arm();
+    private final ForwardKinematics fk = new ForwardKinematics(arm.get_geometry());
+
+    @Test
+    public void inverts_inverse_kinematics(){
+        // drawing area, away from the motors where the arm may go to the mirror point
+        int n = 0;
+        double[] x = new double[60*40];
+        double[] y = new double[60*40];
+        for (int i = 0; i < 60; i++){
+            for (int j = 0; j < 40; j++){
+                x[n] = 180 + 5*i;
+                y[n] = 40 + 5*j;
+                n++;
+            }
+        }
+        double[] theta1 = new double[n];
+        double[] theta2 = new double[n];
+        boolean[] valid = new boolean[n];
+        new InverseKinematics(arm.get_geometry()).solve(x, y, theta1, theta2, valid, 0, n);
+        double[] xt = new double[n];
+        double[] yt = new double[n];
+        boolean[] reached = new boolean[n];
+        fk.solve(theta1, theta2, xt, yt, reached, 0, n);
+        int solved = 0;
+        for (int k = 0; k < n; k++){
+            if (valid[k]){
+                assertTrue(reached[k]);
+                assertEquals(x[k], xt[k], 1e-9, "point " + x[k] + "," + y[k]);
+                assertEquals(y[k], yt[k], 1e-9, "point " + x[k] + "," + y[k]);
+                solved++;
+            }
+        }
+        assertTrue(solved > n/2);
+    }
+
+    @Test
+    public void arm_direct_kinematic(){
+        arm.inverseKinematic(330, 150, false);
+        assertTrue(arm.get_valid_state());
+        double theta1 = arm.get_theta1();
+        double theta2 = arm.get_theta2();
+        arm.inverseKinematic(300, 200, false);
+        arm.set_angles(theta1, theta2);
+        arm.directKinematic();
+        assertTrue(arm.get_valid_state());
+        assertEquals(330, arm.get_xt(), 1e-9);
+        assertEquals(150, arm.get_yt(), 1e-9);
+    }
+
+    @Test
+    public void elbows_too_far_apart(){
+        // elbows pointing away from each other
+        double[] xt = new double[1];
+        double[] yt = new double[1];
+        boolean[] reached = new boolean[1];
+        fk.solve(new double[] {-Math.PI}, new double[] {0}, xt, yt, reached, 0, 1);
+        assertFalse(reached[0]);
+        assertTrue(Double.isNaN(xt[0]) && Double.isNaN(yt[0]));
+        arm.set_angles(-Math.PI, 0);
+        arm.directKinematic();
+        assertFalse(arm.get_valid_state());
+    }
+}
@@ -0,0 +1,113 @@
+
+/**
+ * Tests of IKCache: a point gets the solution of its grid point whether
+ * it hits or misses, repeats are hits, a point missed twice in one
+ * batch takes one entry, and the cache never holds more than its
+ * capacity.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class IKCacheTest
+{
+    private final Arm arm = new Arm();
+    private final IKSolver ik = new InverseKinematics(arm.get_geometry());
+
+    // solves points (x[i],y[i]) with the solver, checking against the grid points
+    private void solve_and_check(IKSolver solver, double quantum, double[] x, double[] y){
+        int n = x.length;
+        double[] t1 = new double[n];
+        double[] t2 = new double[n];
+        boolean[] v = new boolean[n];
+        solver.solve(x, y, t1, t2, v, 0, n);
+        double[] qx = new double[n];
+        double[] qy = new double[n];
+        for (int i = 0; i < n; i++){
+            qx[i] = Math.rint(x[i]/quantum)*quantum;
+            qy[i] = Math.rint(y[i]/quantum)*quantum;
+        }
+        double[] e1 = new double[n];
+        double[] e2 = new double[n];
+        boolean[] ev = new boolean[n];
+        ik.solve(qx, qy, e1, e2, ev, 0, n);
+        for (int i = 0; i < n; i++){
+            assertEquals(ev[i], v[i], "valid " + i);
+            if (ev[i]){
+                assertEquals(e1[i], t1[i], 1e-12, "theta1 " + i);
+                assertEquals(e2[i], t2[i], 1e-12, "theta2 " + i);
+            }
+        }
+    }
+
+    @Test
+    public void hits_give_the_solution_of_the_grid_point(){
+        IKCache cache = new IKCache(ik, 0.5, 1024);
+        Random random = new Random(5);
+        int n = 2000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++){
+            x[i] = 250 + random.nextInt(100) + random.nextDouble()*0.2; // some out of reach
+            y[i] = 100 + random.nextInt(100) + random.nextDouble()*0.2;
+        }
+        solve_and_check(cache, 0.5, x, y);
+        solve_and_check(cache, 0.5, x, y);
+        assertEquals(2L*n, cache.get_hits() + cache.get_misses());
+        assertTrue(cache.get_hits() > n/2);
+    }
+
+    @Test
+    public void repeats_hit(){
+        IKCache cache = new IKCache(ik, IKCache.DEFAULT_QUANTUM, IKCache.DEFAULT_CAPACITY);
+        double[] x = {300, 310, 320};
+        double[] y = {200, 210, 220};
+        solve_and_check(cache, IKCache.DEFAULT_QUANTUM, x, y);
+        assertEquals(3, cache.get_misses());
+        assertEquals(0, cache.get_hits());
+        solve_and_check(cache, IKCache.DEFAULT_QUANTUM, x, y);
+        assertEquals(3, cache.get_misses());
+        assertEquals(3, cache.get_hits());
+        assertEquals(0.5, cache.get_hit_ratio());
+        cache.clear();
+        assertEquals(0, cache.get_hits() + cache.get_misses());
+        solve_and_check(cache, IKCache.DEFAULT_QUANTUM, x, y);
+        assertEquals(3, cache.get_misses());
+    }
+
+    @Test
+    public void point_missed_twice_in_a_batch_is_inserted_once(){
+        IKCache cache = new IKCache(ik, 1, IKCache.WAYS); // one set
+        assertEquals(IKCache.WAYS, cache.get_capacity());
+        solve_and_check(cache, 1, new double[] {300, 301, 302}, new double[] {200, 200, 200});
+        // the same grid point twice, as hatching goes over it again
+        solve_and_check(cache, 1, new double[] {303, 303.2, 302.9}, new double[] {200, 200.1, 199.8});
+        assertEquals(4, cache.get_misses());
+        assertEquals(2, cache.get_hits());
+        // all four points are still there
+        solve_and_check(cache, 1, new double[] {300, 301, 302, 303}, new double[] {200, 200, 200, 200});
+        assertEquals(4, cache.get_misses());
+        assertEquals(6, cache.get_hits());
+    }
+
+    @Test
+    public void evicts_within_capacity(){
+        IKCache cache = new IKCache(ik, 1, 16);
+        int n = 200;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++){
+            x[i] = 280 + i % 20;
+            y[i] = 150 + i/20;
+        }
+        solve_and_check(cache, 1, x, y);
+        assertEquals(n, cache.get_misses());
+        // at most capacity of them can be hits now
+        solve_and_check(cache, 1, x, y);
+        assertTrue(cache.get_hits() <= cache.get_capacity());
+        assertEquals(2L*n, cache.get_hits() + cache.get_misses());
+    }
+}
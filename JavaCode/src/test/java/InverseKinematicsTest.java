@@ -0,0 +1,64 @@
+
+/**
+ * Tests of InverseKinematics: the batch solver gives the same angles as
+ * Arm.inverseKinematic for every point, and the same points are out of
+ * reach, over the whole sheet.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class InverseKinematicsTest
+{
+    @Test
+    public void same_as_arm(){
+        Arm arm = new Arm();
+        InverseKinematics ik = new InverseKinematics(arm.get_geometry());
+        int n = 0;
+        double[] x = new double[100*80];
+        double[] y = new double[100*80];
+        for (int i = 0; i < 100; i++){
+            for (int j = 0; j < 80; j++){
+                x[n] = 100 + 4.1*i;
+                y[n] = 20 + 4.3*j;
+                n++;
+            }
+        }
+        double[] theta1 = new double[n];
+        double[] theta2 = new double[n];
+        boolean[] valid = new boolean[n];
+        ik.solve(x, y, theta1, theta2, valid, 0, n);
+        int reached = 0;
+        for (int k = 0; k < n; k++){
+            arm.inverseKinematic(x[k], y[k], false);
+            assertEquals(arm.get_valid_state(), valid[k], "point " + x[k] + "," + y[k]);
+            if (valid[k]){
+                assertEquals(arm.get_theta1(), theta1[k], 1e-12);
+                assertEquals(arm.get_theta2(), theta2[k], 1e-12);
+                assertEquals(InverseKinematics.REACHABLE, ik.classify(x[k], y[k]));
+                reached++;
+            } else {
+                assertTrue(Double.isNaN(theta1[k]) && Double.isNaN(theta2[k]));
+                assertTrue(ik.classify(x[k], y[k]) != InverseKinematics.REACHABLE);
+            }
+        }
+        // both kinds of points are covered
+        assertTrue(reached > 0 && reached < n);
+    }
+
+    @Test
+    public void solves_only_the_range(){
+        InverseKinematics ik = new InverseKinematics(new Arm().get_geometry());
+        double[] x = {300, 310, 320};
+        double[] y = {200, 200, 200};
+        double[] theta1 = {7, 7, 7};
+        double[] theta2 = {7, 7, 7};
+        boolean[] valid = new boolean[3];
+        ik.solve(x, y, theta1, theta2, valid, 1, 2);
+        assertEquals(7, theta1[0]);
+        assertEquals(7, theta2[2]);
+        assertTrue(valid[1]);
+        assertEquals(InverseKinematics.OUT_OF_REACH, ik.classify(10000, 10000));
+    }
+}
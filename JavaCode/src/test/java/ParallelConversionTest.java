@@ -0,0 +1,69 @@
+
+/**
+ * Tests of ToolPath.convert_drawing_to_angles_parallel: the drawing split
+ * into chunks converts to exactly the samples of the serial conversion,
+ * with fixed steps and with adaptive subdivision.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class ParallelConversionTest
+{
+    // long enough for several chunks, some points out of reach
+    private static Drawing spiral(){
+        Drawing drawing = new Drawing();
+        for (int i = 0; i <= 5000; i++){
+            double r = 20 + i*0.06;
+            drawing.append_point(330 + r*Math.cos(i/30.0), 180 + r*Math.sin(i/30.0), i % 400 != 0);
+        }
+        return drawing;
+    }
+
+    private static void assert_same(ToolPath expected, ToolPath actual){
+        assertEquals(expected.get_size(), actual.get_size());
+        assertArrayEquals(expected.theta1_vector.to_array(), actual.theta1_vector.to_array());
+        assertArrayEquals(expected.theta2_vector.to_array(), actual.theta2_vector.to_array());
+        assertEquals(expected.pen_vector, actual.pen_vector);
+        assertEquals(expected.unreachable, actual.unreachable);
+        assertArrayEquals(expected.segment_start.to_array(), actual.segment_start.to_array());
+    }
+
+    @Test
+    public void same_as_serial(){
+        Arm arm = new Arm();
+        Drawing drawing = spiral();
+        for (double tolerance : new double[] {0, 0.2}){
+            ToolPath serial = new ToolPath();
+            serial.set_tolerance(tolerance);
+            serial.convert_drawing_to_angles(drawing, arm);
+            ToolPath parallel = new ToolPath();
+            parallel.set_tolerance(tolerance);
+            parallel.convert_drawing_to_angles_parallel(drawing, arm);
+            if (tolerance == 0){
+                assertTrue(parallel.get_size() > 2*ToolPath.PARALLEL_CHUNK);
+            }
+            assertTrue(parallel.unreachable.cardinality() > 0);
+            assert_same(serial, parallel);
+        }
+    }
+
+    @Test
+    public void converts_again_after_clear(){
+        Arm arm = new Arm();
+        Drawing drawing = spiral();
+        ToolPath serial = new ToolPath();
+        serial.convert_drawing_to_angles(drawing, arm);
+        ToolPath parallel = new ToolPath();
+        parallel.convert_drawing_to_angles_parallel(drawing, arm);
+        parallel.clear();
+        parallel.convert_drawing_to_angles_parallel(drawing, arm);
+        assert_same(serial, parallel);
+        Drawing one = new Drawing();
+        one.append_point(300, 200, true);
+        parallel.convert_drawing_to_angles_parallel(one, arm);
+        assertEquals(0, parallel.get_size());
+    }
+}
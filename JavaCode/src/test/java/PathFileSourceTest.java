@@ -0,0 +1,142 @@
+
+/**
+ * Tests of PathFileSource: numbers parsed in place must come out the
+ * same as Double.parseDouble, whatever the separators, line endings
+ * and buffer boundaries, and malformed lines are skipped with their
+ * line numbers.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PathFileSourceTest
+{
+    @TempDir
+    File dir;
+
+    // points read from the file, all at once
+    private static class Points
+    {
+        final List<double[]> xy = new ArrayList<double[]>();
+        final List<Boolean> pen = new ArrayList<Boolean>();
+        List<String> errors;
+        int error_count;
+    }
+
+    private Points read(String text) throws IOException{
+        File f = new File(dir, "path.txt");
+        Files.write(f.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+        return read(f, 1000);
+    }
+
+    // reads in batches of max points
+    private static Points read(File f, int max) throws IOException{
+        Points p = new Points();
+        double[] x = new double[max];
+        double[] y = new double[max];
+        boolean[] pen = new boolean[max];
+        try (PathFileSource in = new PathFileSource(f.getPath())) {
+            int n;
+            while ((n = in.read(x, y, pen, max)) > 0){
+                for (int i = 0; i < n; i++){
+                    p.xy.add(new double[] {x[i], y[i]});
+                    p.pen.add(pen[i]);
+                }
+            }
+            p.errors = in.get_errors();
+            p.error_count = in.get_error_count();
+        }
+        return p;
+    }
+
+    @Test
+    public void reads_separators_and_line_endings() throws IOException{
+        Points p = read("1 2 1\n3.5,4.25,0\r\n5\t6\t1\n-7.5e1  8E-1 0");
+        assertEquals(4, p.xy.size());
+        assertEquals(1, p.xy.get(0)[0]);
+        assertEquals(2, p.xy.get(0)[1]);
+        assertEquals(3.5, p.xy.get(1)[0]);
+        assertEquals(4.25, p.xy.get(1)[1]);
+        assertEquals(5, p.xy.get(2)[0]);
+        assertEquals(6, p.xy.get(2)[1]);
+        assertEquals(-75, p.xy.get(3)[0]);
+        assertEquals(0.8, p.xy.get(3)[1]);
+        assertTrue(p.pen.get(0));
+        assertFalse(p.pen.get(1));
+        assertTrue(p.pen.get(2));
+        assertFalse(p.pen.get(3));
+        assertEquals(0, p.error_count);
+    }
+
+    @Test
+    public void skips_malformed_lines() throws IOException{
+        Points p = read("1 2 1\ngarbage\n3 4\n5 6 1\n");
+        assertEquals(2, p.xy.size());
+        assertEquals(5, p.xy.get(1)[0]);
+        assertEquals(2, p.error_count);
+        assertTrue(p.errors.get(0).startsWith("line 2:"), p.errors.get(0));
+        assertTrue(p.errors.get(1).startsWith("line 3:"), p.errors.get(1));
+    }
+
+    @Test
+    public void matches_parse_double() throws IOException{
+        // well over one buffer, so lines cross its end, read in odd batches
+        Random random = new Random(7);
+        int n = 20000;
+        String[] xs = new String[n];
+        String[] ys = new String[n];
+        File f = new File(dir, "big.txt");
+        try (PrintWriter w = new PrintWriter(f, "US-ASCII")) {
+            for (int i = 0; i < n; i++){
+                switch (i % 4){
+                    case 0:
+                        xs[i] = Long.toString(random.nextInt(640));
+                        break;
+                    case 1:
+                        xs[i] = Double.toString(random.nextInt(6400)/10.0);
+                        break;
+                    case 2:
+                        xs[i] = Double.toString(random.nextDouble()*640); // up to 17 digits
+                        break;
+                    default:
+                        xs[i] = Double.toString(random.nextDouble()*1e-7);
+                        break;
+                }
+                ys[i] = Double.toString(random.nextDouble()*480);
+                w.print(xs[i] + (i % 3 == 0 ? "," : " ") + ys[i] + " " + (i % 2) + (i % 5 == 0 ? "\r\n" : "\n"));
+            }
+        }
+        assertTrue(f.length() > 2*PathFileSource.BUFFER_SIZE);
+        Points p = read(f, 333);
+        assertEquals(n, p.xy.size());
+        assertEquals(0, p.error_count);
+        for (int i = 0; i < n; i++){
+            assertEquals(Double.parseDouble(xs[i]), p.xy.get(i)[0], "x of line " + (i+1));
+            assertEquals(Double.parseDouble(ys[i]), p.xy.get(i)[1], "y of line " + (i+1));
+            assertEquals(i % 2 == 1, p.pen.get(i));
+        }
+    }
+
+    @Test
+    public void rejects_directory(){
+        assertThrows(IOException.class, () -> new PathFileSource(dir.getPath()));
+    }
+
+    @Test
+    public void missing_file_throws(){
+        assertThrows(IOException.class, () -> new PathFileSource(new File(dir, "none").getPath()));
+    }
+}
@@ -0,0 +1,77 @@
+
+/**
+ * Tests of PathLod: a dense path keeps about one point per pixel it
+ * crosses, zoomed in it keeps every point, points appended later are
+ * picked up, and both pens are drawn in their colours.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.api.Test;
+
+public class PathLodTest
+{
+    // n points along a horizontal line, step apart
+    private static Drawing line(int n, double step, boolean pen){
+        Drawing drawing = new Drawing();
+        for (int i = 0; i < n; i++){
+            drawing.append_point(10 + i*step, 20, pen);
+        }
+        return drawing;
+    }
+
+    private static Graphics2D graphics(BufferedImage image, double scale){
+        Graphics2D g = image.createGraphics();
+        g.scale(scale, scale);
+        return g;
+    }
+
+    @Test
+    public void one_point_per_pixel(){
+        Drawing drawing = line(10000, 0.01, true); // 100 pixels long
+        BufferedImage image = new BufferedImage(200, 50, BufferedImage.TYPE_INT_RGB);
+        PathLod lod = new PathLod();
+        int kept = lod.render(graphics(image, 1), drawing, 0);
+        assertTrue(kept >= 100 && kept <= 102, "kept " + kept);
+        // at half the size half as many
+        int half = lod.render(graphics(image, 0.5), drawing, 0);
+        assertTrue(half >= 50 && half <= 52, "kept " + half);
+        // zoomed in each point is in its own cell
+        assertEquals(10000, lod.render(graphics(image, 256), drawing, 0));
+    }
+
+    @Test
+    public void follows_appended_points(){
+        Drawing drawing = line(1000, 0.1, true);
+        BufferedImage image = new BufferedImage(400, 50, BufferedImage.TYPE_INT_RGB);
+        PathLod lod = new PathLod();
+        int kept = lod.render(graphics(image, 1), drawing, 0);
+        for (int i = 0; i < 1000; i++){
+            drawing.append_point(110 + i*0.1, 20, true);
+        }
+        int more = lod.render(graphics(image, 1), drawing, kept);
+        assertTrue(more > kept + 90, kept + " -> " + more);
+        // built again from the start, the same points are kept
+        lod.reset();
+        assertEquals(more, lod.render(graphics(image, 1), drawing, 0));
+    }
+
+    @Test
+    public void pen_changes_are_kept(){
+        // pen goes up and down within one pixel
+        Drawing drawing = new Drawing();
+        drawing.append_point(10, 20, false);
+        drawing.append_point(10.1, 20, true);
+        drawing.append_point(10.2, 20, false);
+        drawing.append_point(40, 20, false);
+        drawing.append_point(80, 20, true);
+        BufferedImage image = new BufferedImage(100, 40, BufferedImage.TYPE_INT_RGB);
+        assertEquals(5, new PathLod().render(graphics(image, 1), drawing, 0));
+        assertEquals(Color.LIGHT_GRAY.getRGB(), image.getRGB(25, 20));
+        assertEquals(Color.BLUE.getRGB(), image.getRGB(60, 20));
+    }
+}
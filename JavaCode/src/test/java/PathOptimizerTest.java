@@ -0,0 +1,90 @@
+
+/**
+ * Tests of PathOptimizer: the reordered drawing has the same strokes,
+ * some drawn backwards, and moves less with the pen up.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class PathOptimizerTest
+{
+    // strokes scattered over the page in random order
+    private static Drawing scattered(int n_strokes, long seed){
+        Random random = new Random(seed);
+        Drawing drawing = new Drawing();
+        drawing.append_point(0, 0, false);
+        for (int k = 0; k < n_strokes; k++){
+            double x = 200 + random.nextInt(300);
+            double y = 50 + random.nextInt(250);
+            drawing.append_point(x, y, false);
+            int n = 1 + random.nextInt(4);
+            for (int j = 0; j < n; j++){
+                x += 1 + random.nextInt(10);
+                y += random.nextInt(10) - 5;
+                drawing.append_point(x, y, true);
+            }
+        }
+        return drawing;
+    }
+
+    // pen-down lines joined into strokes, each written the same way
+    // whichever way it is drawn, in sorted order
+    private static List<String> strokes(Drawing drawing){
+        List<String> strokes = new ArrayList<String>();
+        List<String> points = new ArrayList<String>();
+        for (int i = 1; i <= drawing.get_drawing_size(); i++){
+            if (i < drawing.get_drawing_size() && drawing.get_pen(i)){
+                if (points.isEmpty()){
+                    points.add(drawing.get_x(i-1) + "," + drawing.get_y(i-1));
+                }
+                points.add(drawing.get_x(i) + "," + drawing.get_y(i));
+            } else if (!points.isEmpty()){
+                String forward = String.join(" ", points);
+                Collections.reverse(points);
+                String backward = String.join(" ", points);
+                strokes.add(forward.compareTo(backward) < 0 ? forward : backward);
+                points.clear();
+            }
+        }
+        Collections.sort(strokes);
+        return strokes;
+    }
+
+    @Test
+    public void keeps_strokes_and_shortens_travel(){
+        Drawing drawing = scattered(500, 21);
+        Drawing optimized = new PathOptimizer(1000).optimize(drawing);
+        assertEquals(strokes(drawing), strokes(optimized));
+        double before = PathOptimizer.pen_up_travel(drawing);
+        double after = PathOptimizer.pen_up_travel(optimized);
+        assertTrue(after < before/2, before + " -> " + after);
+    }
+
+    @Test
+    public void no_time_for_two_opt(){
+        Drawing drawing = scattered(200, 22);
+        Drawing greedy = new PathOptimizer(0).optimize(drawing);
+        assertEquals(strokes(drawing), strokes(greedy));
+        assertTrue(PathOptimizer.pen_up_travel(greedy) < PathOptimizer.pen_up_travel(drawing));
+    }
+
+    @Test
+    public void drops_pen_up_points(){
+        Drawing drawing = new Drawing();
+        drawing.append_point(10, 10, false);
+        drawing.append_point(20, 20, false); // only moved over
+        drawing.append_point(30, 30, false);
+        drawing.append_point(40, 30, true);
+        Drawing optimized = new PathOptimizer(100).optimize(drawing);
+        assertEquals(2, optimized.get_drawing_size());
+        assertEquals(strokes(drawing), strokes(optimized));
+        assertEquals(0, new PathOptimizer(100).optimize(new Drawing()).get_drawing_size());
+    }
+}
@@ -0,0 +1,92 @@
+
+/**
+ * Tests of PathSimplifier: every point removed stays within tolerance
+ * of the simplified line over it, stroke ends and pen-up moves are
+ * kept, and straight runs lose most of their points.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class PathSimplifierTest
+{
+    static final double TOLERANCE = 0.5;
+
+    // wavy strokes with a little noise, some points with the pen up
+    private static Drawing noisy(){
+        Random random = new Random(8);
+        Drawing drawing = new Drawing();
+        for (int i = 0; i < 5000; i++){
+            double x = 200 + i*0.05 + random.nextGaussian()*0.1;
+            double y = 200 + 30*Math.sin(i/300.0) + random.nextGaussian()*0.1;
+            drawing.append_point(x, y, i % 700 != 0);
+        }
+        return drawing;
+    }
+
+    @Test
+    public void removed_points_stay_within_tolerance(){
+        Drawing drawing = noisy();
+        PathSimplifier simplifier = new PathSimplifier(TOLERANCE);
+        Drawing simplified = simplifier.simplify(drawing);
+        assertEquals(drawing.get_drawing_size(), simplifier.get_input_size());
+        assertEquals(simplified.get_drawing_size(), simplifier.get_output_size());
+        assertTrue(simplifier.get_reduction_ratio() > 0.8, "removed " + simplifier.get_reduction_ratio());
+
+        // points kept are a subsequence of the drawing
+        int n = drawing.get_drawing_size();
+        int a = -1; // last kept point of the drawing
+        int k = 0;  // next point of the simplified drawing
+        for (int i = 0; i < n; i++){
+            boolean kept = k < simplified.get_drawing_size()
+                && simplified.get_x(k) == drawing.get_x(i) && simplified.get_y(k) == drawing.get_y(i);
+            boolean inner = i > 0 && i < n-1 && drawing.get_pen(i) && drawing.get_pen(i+1);
+            if (!inner){
+                assertTrue(kept, "stroke end or pen-up point " + i + " removed");
+            }
+            if (kept){
+                assertEquals(drawing.get_pen(i), simplified.get_pen(k));
+                // removed points between a and i are close to the line a-i
+                for (int j = a+1; j < i; j++){
+                    double d = distance(drawing.get_x(j), drawing.get_y(j), drawing.get_x(a), drawing.get_y(a),
+                                        drawing.get_x(i), drawing.get_y(i));
+                    assertTrue(d <= TOLERANCE + 1e-9, "point " + j + " is " + d + " away");
+                }
+                a = i;
+                k++;
+            }
+        }
+        assertEquals(simplified.get_drawing_size(), k);
+        assertEquals(n-1, a);
+    }
+
+    @Test
+    public void zero_tolerance_keeps_bends(){
+        Drawing drawing = new Drawing();
+        drawing.append_point(0, 0, false);
+        drawing.append_point(10, 0, true);  // on the line, removed
+        drawing.append_point(20, 0, true);  // corner, kept
+        drawing.append_point(20, 10, true); // on the line, removed
+        drawing.append_point(20, 20, true);
+        Drawing simplified = new PathSimplifier(0).simplify(drawing);
+        assertEquals(3, simplified.get_drawing_size());
+        assertEquals(20, simplified.get_x(1));
+        assertEquals(0, simplified.get_y(1));
+        assertEquals(20, simplified.get_y(2));
+        PathSimplifier simplifier = new PathSimplifier(TOLERANCE);
+        assertEquals(0, simplifier.simplify(new Drawing()).get_drawing_size());
+        assertEquals(0, simplifier.get_reduction_ratio());
+    }
+
+    // distance from (x,y) to line segment a-b
+    private static double distance(double x, double y, double xa, double ya, double xb, double yb){
+        double lx = xb - xa;
+        double ly = yb - ya;
+        double len2 = lx*lx + ly*ly;
+        double s = len2 == 0 ? 0 : Math.max(0, Math.min(1, ((x-xa)*lx + (y-ya)*ly)/len2));
+        return Math.hypot(x - (xa + s*lx), y - (ya + s*ly));
+    }
+}
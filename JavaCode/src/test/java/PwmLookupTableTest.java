@@ -0,0 +1,73 @@
+
+/**
+ * Tests of PwmLookupTable: looked up pwm stays within one microsecond of
+ * the function it tabulates, linear or not, angles outside of the table
+ * go to the function, and the arm converts without a table until one
+ * is built.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class PwmLookupTableTest
+{
+    private static final ServoCalibration CALIBRATION = new ServoCalibration(-0.1, 40.0, -0.1, 70.0);
+
+    @Test
+    public void close_to_the_fitted_lines(){
+        PwmLookupTable table = PwmLookupTable.build(CALIBRATION, PwmLookupTable.DEFAULT_RESOLUTION);
+        Random random = new Random(3);
+        int n = 10000;
+        double[] theta1 = new double[n];
+        double[] theta2 = new double[n];
+        for (int i = 0; i < n; i++){
+            theta1[i] = PwmLookupTable.MIN_ANGLE + random.nextDouble()*180;
+            theta2[i] = PwmLookupTable.MIN_ANGLE + random.nextDouble()*180;
+        }
+        int[] pwm1 = new int[n];
+        int[] pwm2 = new int[n];
+        table.map(theta1, theta2, pwm1, pwm2, 0, n);
+        for (int i = 0; i < n; i++){
+            assertEquals(CALIBRATION.pwm1(theta1[i]), pwm1[i], 1, "angle " + theta1[i]);
+            assertEquals(CALIBRATION.pwm2(theta2[i]), pwm2[i], 1, "angle " + theta2[i]);
+            assertEquals(pwm1[i], table.pwm1(theta1[i]));
+            assertEquals(pwm2[i], table.pwm2(theta2[i]));
+        }
+        // outside of the table the line itself is used
+        assertEquals(CALIBRATION.pwm1(10.0), table.pwm1(10.0));
+        assertEquals(CALIBRATION.pwm2(-200.0), table.pwm2(-200.0));
+    }
+
+    @Test
+    public void close_to_a_curve(){
+        PwmLookupTable table = new PwmLookupTable(t -> 1500 + 10*t + 0.02*t*t, t -> 1500 - 8*t,
+                                                  -180, 0, 0.1);
+        assertEquals(0.1, table.get_resolution());
+        for (double t = -180; t <= 0; t += 0.37){
+            assertEquals(1500 + 10*t + 0.02*t*t, table.pwm1(t), 1, "angle " + t);
+            assertEquals(1500 - 8*t, table.pwm2(t), 1, "angle " + t);
+        }
+    }
+
+    @Test
+    public void opt_in_on_the_arm(){
+        Arm arm = new Arm();
+        assertNull(arm.get_pwm_table());
+        arm.build_pwm_table(PwmLookupTable.DEFAULT_RESOLUTION);
+        assertNotNull(arm.get_pwm_table());
+        assertTrue(arm.get_pwm_table().get_resolution() > 0);
+    }
+
+    @Test
+    public void rejects_bad_ranges(){
+        assertThrows(IllegalArgumentException.class, () -> PwmLookupTable.build(CALIBRATION, 0));
+        assertThrows(IllegalArgumentException.class,
+                     () -> new PwmLookupTable(t -> t, t -> t, 0, -180, 0.1));
+    }
+}
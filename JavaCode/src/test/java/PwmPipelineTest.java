@@ -0,0 +1,88 @@
+
+/**
+ * Tests of PwmPipeline: streamed in batches, a drawing gives the same
+ * pwm values as the tool path converted whole, with fixed steps and
+ * with adaptive subdivision.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+public class PwmPipelineTest
+{
+    // pwm values handed to a sink, one column each
+    private static class Collected implements PwmSink
+    {
+        final IntColumn pwm1 = new IntColumn();
+        final IntColumn pwm2 = new IntColumn();
+        final IntColumn pwm3 = new IntColumn();
+        int batches;
+
+        public void write(int[] p1, int[] p2, int[] p3, int len){
+            pwm1.add_all(p1, 0, len);
+            pwm2.add_all(p2, 0, len);
+            pwm3.add_all(p3, 0, len);
+            batches++;
+        }
+    }
+
+    private static Arm calibrated(){
+        Arm arm = new Arm();
+        arm.m1Slope = -0.1;
+        arm.m1B = 40.0;
+        arm.m2Slope = -0.1;
+        arm.m2B = 70.0;
+        return arm;
+    }
+
+    // longer than a batch, some points out of reach
+    private static Drawing spiral(){
+        Drawing drawing = new Drawing();
+        for (int i = 0; i <= 3000; i++){
+            double r = 20 + i*0.1;
+            drawing.append_point(330 + r*Math.cos(i/30.0), 180 + r*Math.sin(i/30.0), i % 400 != 0);
+        }
+        return drawing;
+    }
+
+    @Test
+    public void same_as_tool_path() throws IOException{
+        Arm arm = calibrated();
+        Drawing drawing = spiral();
+        for (double tolerance : new double[] {0, 0.2}){
+            ToolPath tool_path = new ToolPath();
+            tool_path.set_tolerance(tolerance);
+            tool_path.convert_drawing_to_angles(drawing, arm);
+            Collected expected = new Collected();
+            tool_path.write_pwm(arm, expected);
+
+            PwmPipeline pipeline = new PwmPipeline(arm, tool_path.n_steps);
+            pipeline.set_tolerance(arm.get_geometry(), tolerance);
+            Collected actual = new Collected();
+            long n = pipeline.run(new DrawingSource(drawing), actual);
+            assertEquals(expected.pwm1.size(), n);
+            assertTrue(actual.batches > 1);
+            assertArrayEquals(expected.pwm1.to_array(), actual.pwm1.to_array());
+            assertArrayEquals(expected.pwm2.to_array(), actual.pwm2.to_array());
+            assertArrayEquals(expected.pwm3.to_array(), actual.pwm3.to_array());
+        }
+    }
+
+    @Test
+    public void short_drawings() throws IOException{
+        Arm arm = calibrated();
+        PwmPipeline pipeline = new PwmPipeline(arm, 2);
+        Collected collected = new Collected();
+        assertEquals(0, pipeline.run(new DrawingSource(new Drawing()), collected));
+        Drawing drawing = new Drawing();
+        drawing.append_point(300, 200, true);
+        assertEquals(0, pipeline.run(new DrawingSource(drawing), collected));
+        drawing.append_point(310, 200, false);
+        assertEquals(2, pipeline.run(new DrawingSource(drawing), collected));
+        assertEquals(ToolPath.PEN_DOWN_PWM, collected.pwm3.get(0));
+    }
+}
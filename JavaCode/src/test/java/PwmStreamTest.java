@@ -0,0 +1,127 @@
+
+/**
+ * Tests of the pwm stream: frames of PwmStreamProtocol, and a
+ * PwmStreamSender streaming to a PwmStreamReceiver on this machine,
+ * with connections dropped on the way, must deliver every sample once
+ * and in order.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+public class PwmStreamTest
+{
+    @Test
+    public void frames_round_trip() throws IOException{
+        ByteBuffer tx = PwmStreamProtocol.new_buffer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PwmStreamProtocol.begin(tx, PwmStreamProtocol.CREDIT);
+        tx.putLong(12);
+        tx.putLong(34);
+        PwmStreamProtocol.send(tx, out);
+        PwmStreamProtocol.begin(tx, PwmStreamProtocol.END);
+        tx.putLong(56);
+        PwmStreamProtocol.send(tx, out);
+        assertEquals(2*PwmStreamProtocol.FRAME_HEADER_SIZE + 16 + 8, out.size());
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        ByteBuffer rx = PwmStreamProtocol.new_buffer();
+        assertEquals(PwmStreamProtocol.CREDIT, PwmStreamProtocol.receive(rx, in));
+        assertEquals(16, rx.remaining());
+        assertEquals(12, rx.getLong());
+        assertEquals(34, rx.getLong());
+        assertEquals(PwmStreamProtocol.END, PwmStreamProtocol.receive(rx, in));
+        PwmStreamProtocol.expect(rx, 8, PwmStreamProtocol.END);
+        assertEquals(56, rx.getLong());
+        assertThrows(EOFException.class, () -> PwmStreamProtocol.receive(rx, in));
+    }
+
+    @Test
+    public void rejects_bad_frames(){
+        ByteBuffer rx = PwmStreamProtocol.new_buffer();
+        // payload larger than any frame
+        ByteBuffer header = ByteBuffer.allocate(PwmStreamProtocol.FRAME_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putShort(PwmStreamProtocol.DATA).putShort((short)0).putInt(PwmStreamProtocol.MAX_PAYLOAD + 1);
+        assertThrows(IOException.class,
+                     () -> PwmStreamProtocol.receive(rx, new ByteArrayInputStream(header.array())));
+        // frame cut short
+        byte[] cut = Arrays.copyOf(header.putInt(4, 8).array(), PwmStreamProtocol.FRAME_HEADER_SIZE + 3);
+        assertThrows(EOFException.class, () -> PwmStreamProtocol.receive(rx, new ByteArrayInputStream(cut)));
+        // payload too short for its type
+        ByteBuffer credit = PwmStreamProtocol.new_buffer();
+        PwmStreamProtocol.begin(credit, PwmStreamProtocol.CREDIT);
+        credit.putLong(1);
+        credit.flip();
+        credit.position(PwmStreamProtocol.FRAME_HEADER_SIZE);
+        assertThrows(IOException.class, () -> PwmStreamProtocol.expect(credit, 16, PwmStreamProtocol.CREDIT));
+    }
+
+    // samples played by the receiver
+    private static class Played implements PwmSink
+    {
+        final IntColumn pwm1 = new IntColumn();
+        final IntColumn pwm2 = new IntColumn();
+        final IntColumn pwm3 = new IntColumn();
+
+        public synchronized void write(int[] p1, int[] p2, int[] p3, int n){
+            pwm1.add_all(p1, 0, n);
+            pwm2.add_all(p2, 0, n);
+            pwm3.add_all(p3, 0, n);
+        }
+
+        synchronized int size(){
+            return pwm1.size();
+        }
+    }
+
+    @Test
+    @Timeout(60)
+    public void streams_every_sample_through_dropped_connections() throws Exception{
+        int n = 200000;
+        int[] p1 = new int[n];
+        int[] p2 = new int[n];
+        int[] p3 = new int[n];
+        for (int i = 0; i < n; i++){
+            p1[i] = 1000 + i % 1000;
+            p2[i] = 2000 - i % 997;
+            p3[i] = i % 3 == 0 ? ToolPath.PEN_UP_PWM : ToolPath.PEN_DOWN_PWM;
+        }
+        Played played = new Played();
+        // small buffers on both sides, so the sender waits for credit
+        try (PwmStreamReceiver receiver = new PwmStreamReceiver(0, 0, 1000, 7001, played)) {
+            PwmStreamSender sender = new PwmStreamSender("localhost", receiver.get_port(), 4096);
+            try {
+                int batch = 777;
+                for (int i = 0; i < n; i += batch){
+                    int len = Math.min(batch, n - i);
+                    sender.write(Arrays.copyOfRange(p1, i, i+len), Arrays.copyOfRange(p2, i, i+len),
+                                 Arrays.copyOfRange(p3, i, i+len), len);
+                }
+            } finally {
+                sender.close(); // waits until the receiver has every sample
+            }
+            assertEquals(n, sender.get_acked());
+            assertTrue(sender.get_connections() >= n/7001, "connections " + sender.get_connections());
+            while (played.size() < n){
+                Thread.sleep(10);
+            }
+            assertEquals(n, receiver.get_played());
+        }
+        assertEquals(n, played.size());
+        assertArrayEquals(p1, played.pwm1.to_array());
+        assertArrayEquals(p2, played.pwm2.to_array());
+        assertArrayEquals(p3, played.pwm3.to_array());
+    }
+}
@@ -0,0 +1,72 @@
+
+/**
+ * Tests of RoundTripVerifier: it checks every sample the tool path
+ * exports, whatever the settings, a calibrated arm ends up within pwm
+ * rounding of the drawing, and points out of reach are left out.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class RoundTripVerifierTest
+{
+    // typical fit from the calibration files
+    private static Arm calibrated(){
+        Arm arm = new Arm();
+        arm.m1Slope = -0.1;
+        arm.m1B = 40.0;
+        arm.m2Slope = -0.1;
+        arm.m2B = 70.0;
+        return arm;
+    }
+
+    private static Drawing circle(){
+        Drawing drawing = new Drawing();
+        for (int i = 0; i <= 200; i++){
+            drawing.append_point(330 + 50*Math.cos(i/20.0), 200 + 40*Math.sin(i/20.0), i % 50 != 0);
+        }
+        return drawing;
+    }
+
+    @Test
+    public void verifies_exported_samples(){
+        Arm arm = calibrated();
+        Drawing drawing = circle();
+        for (double tolerance : new double[] {0, 0.5}){
+            for (boolean branches : new boolean[] {false, true}){
+                ToolPath tool_path = new ToolPath();
+                tool_path.set_tolerance(tolerance);
+                tool_path.set_select_branches(branches);
+                tool_path.convert_drawing_to_angles(drawing, arm);
+                AccuracyReport report = new RoundTripVerifier(arm, tool_path).verify(drawing);
+                String what = "tolerance " + tolerance + ", branches " + branches;
+                assertEquals(tool_path.get_size(), report.get_samples(), what);
+                assertEquals(0, report.get_unreachable(), what);
+                // pwm is truncated to whole microseconds, 0.1 degrees each
+                assertTrue(report.get_max() < 1, what + ": " + report);
+                assertTrue(report.get_max() > 0, what + ": " + report);
+            }
+        }
+    }
+
+    @Test
+    public void leaves_out_unreachable_points(){
+        Arm arm = calibrated();
+        Drawing drawing = new Drawing();
+        drawing.append_point(300, 200, true);
+        drawing.append_point(320, 210, true);
+        drawing.append_point(10, 10, true); // far out of reach
+        ToolPath tool_path = new ToolPath();
+        AccuracyReport report = new RoundTripVerifier(arm, tool_path).verify(drawing);
+        assertEquals(2*tool_path.n_steps, report.get_samples());
+        assertTrue(report.get_unreachable() > 0);
+        assertTrue(report.get_max() < 1, report.toString());
+    }
+
+    @Test
+    public void empty_drawing(){
+        AccuracyReport report = new RoundTripVerifier(calibrated(), new ToolPath()).verify(new Drawing());
+        assertEquals(0, report.get_samples());
+    }
+}
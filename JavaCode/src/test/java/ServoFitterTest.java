@@ -0,0 +1,124 @@
+
+/**
+ * Tests of ServoFitter on synthetic servo sweeps: every method finds a
+ * clean line, the robust methods keep bad readings from pulling it
+ * away, and weights count as repeated measurements.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class ServoFitterTest
+{
+    static final double SLOPE = -0.1;
+    static final double B = 40;
+
+    // pwm 1000..1990 in steps of 10
+    private static double[] sweep(){
+        double[] pwm = new double[100];
+        for (int i = 0; i < pwm.length; i++){
+            pwm[i] = 1000 + 10*i;
+        }
+        return pwm;
+    }
+
+    // angles of the line, read in whole degrees as on the Pi
+    private static double[] angles(double[] pwm){
+        double[] angle = new double[pwm.length];
+        for (int i = 0; i < pwm.length; i++){
+            angle[i] = Math.rint(SLOPE*pwm[i] + B);
+        }
+        return angle;
+    }
+
+    @Test
+    public void fits_clean_line_with_every_method(){
+        double[] pwm = sweep();
+        double[] angle = new double[pwm.length];
+        for (int i = 0; i < pwm.length; i++){
+            angle[i] = SLOPE*pwm[i] + B;
+        }
+        for (int method : new int[] {ServoFitter.NONE, ServoFitter.HUBER, ServoFitter.RANSAC}){
+            ServoFit fit = new ServoFitter(method, ServoFitter.DEFAULT_THRESHOLD).fit(pwm, angle, null);
+            assertEquals(SLOPE, fit.get_slope(), 1e-12, "slope of method " + method);
+            assertEquals(B, fit.get_b(), 1e-9, "b of method " + method);
+            assertEquals(1, fit.get_r2(), 1e-12);
+            assertEquals(0, fit.get_outlier_count());
+        }
+    }
+
+    @Test
+    public void robust_methods_ignore_bad_readings(){
+        double[] pwm = sweep();
+        double[] angle = angles(pwm);
+        // misread angles, all on one side so least squares is pulled away
+        Random random = new Random(3);
+        boolean[] bad = new boolean[pwm.length];
+        for (int k = 0; k < 10; k++){
+            int i = random.nextInt(pwm.length);
+            bad[i] = true;
+            angle[i] = SLOPE*pwm[i] + B + 30 + random.nextInt(30);
+        }
+        ServoFit plain = new ServoFitter(ServoFitter.NONE, ServoFitter.DEFAULT_THRESHOLD).fit(pwm, angle, null);
+        assertTrue(Math.abs(plain.angle(1500) - (SLOPE*1500 + B)) > 2, plain.toString());
+        for (int method : new int[] {ServoFitter.HUBER, ServoFitter.RANSAC}){
+            ServoFit fit = new ServoFitter(method, ServoFitter.DEFAULT_THRESHOLD).fit(pwm, angle, null);
+            assertEquals(SLOPE, fit.get_slope(), 0.002, "slope of method " + method);
+            assertEquals(SLOPE*1500 + B, fit.angle(1500), 0.5, "method " + method);
+            for (int i = 0; i < pwm.length; i++){
+                if (bad[i]){
+                    assertTrue(fit.is_outlier(i), "reading " + i + " with method " + method);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void weight_counts_as_repeated_measurements(){
+        double[] pwm = {1000, 1200, 1500, 1700, 1900};
+        double[] angle = {-61, -79, -111, -129, -152};
+        double[] weight = {1, 3, 1, 2, 1};
+        // the same measurements, repeated weight times
+        double[] rpwm = new double[8];
+        double[] rangle = new double[8];
+        int k = 0;
+        for (int i = 0; i < pwm.length; i++){
+            for (int j = 0; j < weight[i]; j++){
+                rpwm[k] = pwm[i];
+                rangle[k] = angle[i];
+                k++;
+            }
+        }
+        ServoFitter fitter = new ServoFitter(ServoFitter.NONE, ServoFitter.DEFAULT_THRESHOLD);
+        ServoFit weighted = fitter.fit(pwm, angle, weight);
+        ServoFit repeated = fitter.fit(rpwm, rangle, null);
+        assertEquals(repeated.get_slope(), weighted.get_slope(), 1e-12);
+        assertEquals(repeated.get_b(), weighted.get_b(), 1e-9);
+    }
+
+    @Test
+    public void zero_weight_leaves_measurement_out(){
+        double[] pwm = {1000, 1200, 1500, 1700, 1900};
+        double[] angle = {SLOPE*1000 + B, SLOPE*1200 + B, 500, SLOPE*1700 + B, SLOPE*1900 + B};
+        double[] weight = {1, 1, 0, 1, 1};
+        ServoFit fit = new ServoFitter(ServoFitter.NONE, ServoFitter.DEFAULT_THRESHOLD).fit(pwm, angle, weight);
+        assertEquals(SLOPE, fit.get_slope(), 1e-12);
+        assertEquals(B, fit.get_b(), 1e-9);
+    }
+
+    @Test
+    public void rejects_bad_input(){
+        ServoFitter fitter = new ServoFitter();
+        assertThrows(IllegalArgumentException.class,
+                     () -> fitter.fit(new double[] {1, 2}, new double[] {1}, null));
+        assertThrows(IllegalArgumentException.class,
+                     () -> fitter.fit(new double[] {1, 2}, new double[] {1, 2}, new double[] {1, -1}));
+        assertThrows(IllegalArgumentException.class, () -> new ServoFitter(7, 1));
+        assertFalse(fitter.fit(sweep(), angles(sweep()), null).get_outlier_count() > 0);
+    }
+}
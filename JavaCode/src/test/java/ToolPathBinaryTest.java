@@ -0,0 +1,136 @@
+
+/**
+ * Tests of the binary tool path format: pwm, angle and timed records
+ * written by ToolPathBinaryWriter read back the same with
+ * ToolPathBinaryReader, with the geometry and calibration of the arm,
+ * and files which are not whole tool paths are refused.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ToolPathBinaryTest
+{
+    @TempDir
+    File dir;
+
+    private static Arm calibrated(){
+        Arm arm = new Arm();
+        arm.m1Slope = -0.1;
+        arm.m1B = 40.0;
+        arm.m2Slope = -0.1;
+        arm.m2B = 70.0;
+        return arm;
+    }
+
+    // spans a few buffers of the writer
+    private static ToolPath converted(Arm arm){
+        Drawing drawing = new Drawing();
+        for (int i = 0; i <= 10000; i++){
+            drawing.append_point(330 + 60*Math.cos(i/40.0), 200 + 50*Math.sin(i/70.0), i % 300 != 0);
+        }
+        ToolPath tool_path = new ToolPath();
+        tool_path.convert_drawing_to_angles(drawing, arm);
+        return tool_path;
+    }
+
+    @Test
+    public void pwm_round_trip() throws IOException{
+        Arm arm = calibrated();
+        ToolPath tool_path = converted(arm);
+        String fname = new File(dir, "path.pwm").getPath();
+        try (ToolPathBinaryWriter writer = new ToolPathBinaryWriter(fname, ToolPathBinaryWriter.PWM,
+                arm.get_geometry(), arm.get_calibration())) {
+            assertEquals(tool_path.get_size(), tool_path.write_pwm(arm, writer));
+            assertEquals(tool_path.get_size(), writer.get_count());
+        }
+        try (ToolPathBinaryReader reader = new ToolPathBinaryReader(fname)) {
+            assertEquals(ToolPathBinaryWriter.PWM, reader.get_type());
+            assertEquals(tool_path.get_size(), reader.size());
+            assertEquals(arm.get_geometry(), reader.get_geometry());
+            assertEquals(arm.get_calibration(), reader.get_calibration());
+            for (int i = 0; i < reader.size(); i++){
+                assertEquals(tool_path.pwm1_vector.get(i), reader.get_pwm1(i));
+                assertEquals(tool_path.pwm2_vector.get(i), reader.get_pwm2(i));
+                assertEquals(tool_path.pwm3_vector.get(i), reader.get_pwm3(i));
+            }
+            IntColumn replayed = new IntColumn();
+            reader.replay((p1, p2, p3, len) -> replayed.add_all(p2, 0, len), 5, reader.size());
+            assertEquals(reader.size() - 5, replayed.size());
+            assertEquals(tool_path.pwm2_vector.get(5), replayed.get(0));
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.get_pwm1(reader.size()));
+            assertThrows(IllegalStateException.class, () -> reader.get_theta1(0));
+        }
+    }
+
+    @Test
+    public void angles_round_trip() throws IOException{
+        Arm arm = calibrated();
+        ToolPath tool_path = converted(arm);
+        String fname = new File(dir, "path.ang").getPath();
+        tool_path.save_angles_binary(fname, arm);
+        try (ToolPathBinaryReader reader = new ToolPathBinaryReader(fname)) {
+            assertEquals(ToolPathBinaryWriter.ANGLES, reader.get_type());
+            assertEquals(tool_path.get_size(), reader.size());
+            for (int i = 0; i < reader.size(); i++){
+                // stored as floats
+                assertEquals(tool_path.theta1_vector.get(i), reader.get_theta1(i), 1e-4);
+                assertEquals(tool_path.theta2_vector.get(i), reader.get_theta2(i), 1e-4);
+                assertEquals(tool_path.pen_vector.get(i), reader.get_pen(i));
+            }
+            assertThrows(IllegalStateException.class, () -> reader.get_pwm1(0));
+        }
+    }
+
+    @Test
+    public void timed_round_trip() throws IOException{
+        Arm arm = calibrated();
+        String fname = new File(dir, "path.tpwm").getPath();
+        try (ToolPathBinaryWriter writer = new ToolPathBinaryWriter(fname, ToolPathBinaryWriter.TIMED_PWM,
+                arm.get_geometry(), arm.get_calibration())) {
+            writer.write_timed(new long[] {0, 20000, 40000}, new int[] {1500, 1510, 1520},
+                               new int[] {1400, 1390, 1380}, new int[] {2000, 2000, 1750}, 3);
+            assertThrows(IllegalStateException.class, () -> writer.write(new int[1], new int[1], new int[1], 1));
+        }
+        try (ToolPathBinaryReader reader = new ToolPathBinaryReader(fname)) {
+            assertEquals(3, reader.size());
+            assertEquals(40000, reader.get_time(2));
+            assertEquals(1510, reader.get_pwm1(1));
+            assertEquals(1380, reader.get_pwm2(2));
+            assertEquals(1750, reader.get_pwm3(2));
+            IntColumn replayed = new IntColumn();
+            reader.replay((p1, p2, p3, len) -> replayed.add_all(p1, 0, len));
+            assertArrayEquals(new int[] {1500, 1510, 1520}, replayed.to_array());
+        }
+    }
+
+    @Test
+    public void refuses_bad_files() throws IOException{
+        Arm arm = calibrated();
+        File f = new File(dir, "bad.pwm");
+        try (ToolPathBinaryWriter writer = new ToolPathBinaryWriter(f.getPath(), ToolPathBinaryWriter.PWM,
+                arm.get_geometry(), arm.get_calibration())) {
+            writer.write(new int[] {1, 2}, new int[] {3, 4}, new int[] {5, 6}, 2);
+            // out of the int16 range
+            assertThrows(IOException.class, () -> writer.write(new int[] {40000}, new int[1], new int[1], 1));
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.setLength(raf.length() - 1); // last record cut short
+        }
+        assertThrows(IOException.class, () -> new ToolPathBinaryReader(f.getPath()));
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.write('X');
+        }
+        assertThrows(IOException.class, () -> new ToolPathBinaryReader(f.getPath()));
+        assertThrows(IllegalArgumentException.class,
+                     () -> new ToolPathBinaryWriter(new File(dir, "x").getPath(), (short)9,
+                                                    arm.get_geometry(), arm.get_calibration()));
+    }
+}
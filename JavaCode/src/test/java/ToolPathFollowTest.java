@@ -0,0 +1,188 @@
+
+/**
+ * Tests of ToolPath.follow: after any sequence of edits of the drawing
+ * the followed tool path must hold exactly what a fresh conversion of
+ * the drawing gives, with fixed steps, adaptive subdivision and
+ * elbow branches chosen, its pwm values must follow the calibration,
+ * and files saved after an edit must hold the edited drawing.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ToolPathFollowTest
+{
+    @TempDir
+    File dir;
+
+    private static void assert_same(ToolPath expected, ToolPath actual, String what){
+        assertEquals(expected.get_size(), actual.get_size(), what + ": size");
+        for (int i = 0; i < expected.get_size(); i++){
+            assertEquals(expected.theta1_vector.get(i), actual.theta1_vector.get(i), what + ": theta1 of " + i);
+            assertEquals(expected.theta2_vector.get(i), actual.theta2_vector.get(i), what + ": theta2 of " + i);
+            assertEquals(expected.get_pen(i), actual.get_pen(i), what + ": pen of " + i);
+            assertEquals(expected.unreachable.get(i), actual.unreachable.get(i), what + ": unreachable " + i);
+        }
+        assertEquals(expected.segment_start.size(), actual.segment_start.size(), what + ": lines");
+        for (int i = 0; i < expected.segment_start.size(); i++){
+            assertEquals(expected.segment_start.get(i), actual.segment_start.get(i), what + ": start of line " + i);
+        }
+    }
+
+    private static ToolPath converted(Drawing drawing, Arm arm, double tolerance, boolean branches){
+        ToolPath fresh = new ToolPath();
+        fresh.set_tolerance(tolerance);
+        fresh.set_select_branches(branches);
+        fresh.convert_drawing_to_angles(drawing, arm);
+        return fresh;
+    }
+
+    // random appends, moves (some out of reach) and clears
+    private static void edit_and_check(double tolerance, boolean branches, int edits){
+        Arm arm = new Arm();
+        Random random = new Random(11);
+        Drawing drawing = new Drawing();
+        ToolPath followed = new ToolPath();
+        followed.set_tolerance(tolerance);
+        followed.set_select_branches(branches);
+        followed.follow(drawing, arm);
+        for (int op = 0; op < edits; op++){
+            int k = random.nextInt(20);
+            double x = 200 + random.nextInt(250);
+            double y = 60 + random.nextInt(300);
+            if (k < 12 || drawing.get_drawing_size() < 2){
+                drawing.append_point(x, y, random.nextBoolean());
+            } else if (k < 17){
+                drawing.set_point(random.nextInt(drawing.get_drawing_size()), x, y, random.nextBoolean());
+            } else if (k < 19){
+                int n = 1 + random.nextInt(50);
+                double[] xs = new double[n];
+                double[] ys = new double[n];
+                boolean[] pen = new boolean[n];
+                for (int i = 0; i < n; i++){
+                    xs[i] = x + random.nextGaussian()*5;
+                    ys[i] = y + random.nextGaussian()*5;
+                    pen[i] = i % 10 != 0;
+                }
+                drawing.append_points(xs, ys, pen, n);
+            } else if (random.nextInt(5) == 0){
+                drawing.clear();
+            }
+            if (op % 25 == 0){
+                assert_same(converted(drawing, arm, tolerance, branches), followed, "after edit " + op);
+            }
+        }
+        assert_same(converted(drawing, arm, tolerance, branches), followed, "at the end");
+        followed.unfollow();
+    }
+
+    @Test
+    public void follows_edits_with_fixed_steps(){
+        edit_and_check(0, false, 1500);
+    }
+
+    @Test
+    public void follows_edits_with_tolerance(){
+        edit_and_check(0.5, false, 1500);
+    }
+
+    @Test
+    public void follows_edits_with_branches_chosen(){
+        edit_and_check(0, true, 500);
+    }
+
+    // pwm values of the followed path, as write_pwm hands them out
+    private static int[] pwm(ToolPath tool_path, Arm arm) throws IOException{
+        IntColumn pwm = new IntColumn();
+        tool_path.write_pwm(arm, (p1, p2, p3, n) -> {
+            for (int i = 0; i < n; i++){
+                pwm.add(p1[i]);
+                pwm.add(p2[i]);
+                pwm.add(p3[i]);
+            }
+        });
+        return pwm.to_array();
+    }
+
+    @Test
+    public void pwm_follows_calibration() throws IOException{
+        Arm arm = new Arm();
+        Drawing drawing = new Drawing();
+        ToolPath followed = new ToolPath();
+        followed.follow(drawing, arm);
+        for (int i = 0; i < 50; i++){
+            drawing.append_point(300 + i, 180 + 0.5*i, true);
+        }
+        pwm(followed, arm); // converted with the uncalibrated arm
+        arm.m1Slope = -0.1;
+        arm.m1B = 40.0;
+        arm.m2Slope = -0.1;
+        arm.m2B = 70.0;
+        ToolPath fresh = converted(drawing, arm, 0, false);
+        assertArrayEquals(pwm(fresh, arm), pwm(followed, arm), "new calibration");
+        arm.build_pwm_table(PwmLookupTable.DEFAULT_RESOLUTION);
+        assertArrayEquals(pwm(fresh, arm), pwm(followed, arm), "lookup table");
+        followed.unfollow();
+    }
+
+    @Test
+    public void set_tolerance_converts_followed_drawing_again(){
+        Arm arm = new Arm();
+        Drawing drawing = new Drawing();
+        ToolPath followed = new ToolPath();
+        followed.follow(drawing, arm);
+        for (int i = 0; i < 100; i++){
+            drawing.append_point(300 + 40*Math.cos(i/10.0), 180 + 30*Math.sin(i/10.0), true);
+        }
+        followed.set_tolerance(0.25);
+        assert_same(converted(drawing, arm, 0.25, false), followed, "tolerance 0.25");
+        followed.set_tolerance(0);
+        assert_same(converted(drawing, arm, 0, false), followed, "fixed steps");
+        followed.unfollow();
+    }
+
+    // edits a followed drawing after its pwm values were converted,
+    // files saved then must be those of a fresh conversion
+    private void export_after_edit(boolean branches) throws IOException{
+        Arm arm = new Arm();
+        Drawing drawing = new Drawing();
+        for (int i = 0; i < 20; i++){
+            drawing.append_point(300 + 5*i, 180 + 3*i, i != 10);
+        }
+        ToolPath followed = new ToolPath();
+        followed.set_select_branches(branches);
+        followed.follow(drawing, arm);
+        followed.convert_angles_to_pwm(arm);
+        drawing.set_point(5, 350, 250, true);
+        ToolPath fresh = converted(drawing, arm, 0, branches);
+        String[] names = {"fresh", "followed"};
+        ToolPath[] paths = {fresh, followed};
+        for (int k = 0; k < 2; k++){
+            paths[k].save_pwm_file(new File(dir, names[k] + ".txt").getPath(), arm);
+            paths[k].save_angles_binary(new File(dir, names[k] + ".bin").getPath(), arm);
+        }
+        byte[] text = Files.readAllBytes(new File(dir, "fresh.txt").toPath());
+        assertEquals(fresh.get_size(), new String(text, "US-ASCII").split("\n").length, "lines");
+        assertArrayEquals(text, Files.readAllBytes(new File(dir, "followed.txt").toPath()), "pwm file");
+        assertArrayEquals(Files.readAllBytes(new File(dir, "fresh.bin").toPath()),
+                          Files.readAllBytes(new File(dir, "followed.bin").toPath()), "binary angles");
+        followed.unfollow();
+    }
+
+    @Test
+    public void exports_edited_drawing() throws IOException{
+        export_after_edit(false);
+    }
+
+    @Test
+    public void exports_edited_drawing_with_branches_chosen() throws IOException{
+        export_after_edit(true);
+    }
+}
@@ -0,0 +1,91 @@
+
+/**
+ * Tests of TrajectoryPlanner: timed samples keep the motors within the
+ * speed and acceleration limits, start and end at the tool path's ends,
+ * and the pen changes at the sample where the tool path changes it.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class TrajectoryPlannerTest
+{
+    static final double MAX_VELOCITY = 200;
+    static final double MAX_ACCELERATION = 1000;
+    static final double RATE = 50;
+
+    private static ToolPath converted(Drawing drawing){
+        ToolPath tool_path = new ToolPath();
+        tool_path.convert_drawing_to_angles(drawing, new Arm());
+        return tool_path;
+    }
+
+    private static Trajectory plan(ToolPath tool_path){
+        return new TrajectoryPlanner(MAX_VELOCITY, MAX_VELOCITY, MAX_ACCELERATION, MAX_ACCELERATION,
+                                     RATE, 0.1).plan(tool_path);
+    }
+
+    @Test
+    public void keeps_limits(){
+        Drawing drawing = new Drawing();
+        for (int i = 0; i <= 300; i++){
+            drawing.append_point(330 + 60*Math.cos(i/15.0), 200 + 50*Math.sin(i/25.0), i % 100 != 0);
+        }
+        ToolPath tool_path = converted(drawing);
+        Trajectory trajectory = plan(tool_path);
+        assertEquals(1/RATE, trajectory.get_period());
+        assertEquals(tool_path.theta1_vector.get(0), trajectory.get_theta1(0));
+        int last = trajectory.size() - 1;
+        assertEquals(tool_path.theta1_vector.get(tool_path.get_size() - 1), trajectory.get_theta1(last), 1e-9);
+        assertEquals(tool_path.theta2_vector.get(tool_path.get_size() - 1), trajectory.get_theta2(last), 1e-9);
+        double dt = trajectory.get_period();
+        double v1 = 0;
+        double v2 = 0;
+        for (int i = 1; i < trajectory.size(); i++){
+            double w1 = (trajectory.get_theta1(i) - trajectory.get_theta1(i-1))/dt;
+            double w2 = (trajectory.get_theta2(i) - trajectory.get_theta2(i-1))/dt;
+            assertTrue(Math.abs(w1) <= MAX_VELOCITY*1.001, "velocity of motor 1 at " + i + ": " + w1);
+            assertTrue(Math.abs(w2) <= MAX_VELOCITY*1.001, "velocity of motor 2 at " + i + ": " + w2);
+            // changes of velocity between updates, sampled, may go a little over
+            assertTrue(Math.abs(w1 - v1)/dt <= MAX_ACCELERATION*1.1, "acceleration of motor 1 at " + i);
+            assertTrue(Math.abs(w2 - v2)/dt <= MAX_ACCELERATION*1.1, "acceleration of motor 2 at " + i);
+            v1 = w1;
+            v2 = w2;
+        }
+    }
+
+    @Test
+    public void pen_changes_where_the_tool_path_changes_it(){
+        // line drawn to (360,200), then moved there with the pen up
+        Drawing drawing = new Drawing();
+        drawing.append_point(300, 200, true);
+        drawing.append_point(360, 200, false);
+        drawing.append_point(360, 150, false);
+        ToolPath tool_path = converted(drawing);
+        Trajectory trajectory = plan(tool_path);
+        int corner = tool_path.n_steps; // sample of (360,200)
+        int first_up = 0;
+        while (first_up < trajectory.size() && trajectory.get_pen(first_up)){
+            first_up++;
+        }
+        assertTrue(first_up > 0 && first_up < trajectory.size());
+        // the whole line is drawn: pen goes up only once the arm is at the corner
+        assertEquals(tool_path.theta1_vector.get(corner), trajectory.get_theta1(first_up), 1e-9);
+        assertEquals(tool_path.theta2_vector.get(corner), trajectory.get_theta2(first_up), 1e-9);
+        // and the arm waits there for the pen
+        assertEquals(trajectory.get_theta1(first_up), trajectory.get_theta1(first_up + 1), 1e-9);
+        for (int i = first_up; i < trajectory.size(); i++){
+            assertFalse(trajectory.get_pen(i), "sample " + i);
+        }
+    }
+
+    @Test
+    public void rejects_bad_limits(){
+        assertThrows(IllegalArgumentException.class, () -> new TrajectoryPlanner(0, 1, 1, 1, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new TrajectoryPlanner(1, 1, 1, 1, 1, -1));
+        assertEquals(0, new TrajectoryPlanner().plan(new ToolPath()).size());
+    }
+}
@@ -0,0 +1,85 @@
+
+/**
+ * Tests of WorkspaceMap: the map tells the same points reachable as the
+ * exact inverse kinematics, inside and outside of the field of view,
+ * and solves them to the same angles.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class WorkspaceMapTest
+{
+    private final ArmGeometry geometry = new Arm().get_geometry();
+    private final InverseKinematics ik = new InverseKinematics(geometry);
+
+    // random points over and a little around the field of view
+    private static void random_points(double[] x, double[] y, long seed){
+        Random random = new Random(seed);
+        for (int i = 0; i < x.length; i++){
+            x[i] = -20 + random.nextDouble()*(WorkspaceMap.FIELD_WIDTH + 40);
+            y[i] = -20 + random.nextDouble()*(WorkspaceMap.FIELD_HEIGHT + 40);
+        }
+    }
+
+    @Test
+    public void same_as_exact_solution(){
+        int n = 50000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        random_points(x, y, 11);
+        for (double resolution : new double[] {0.25, 1.0, 2.0}){
+            WorkspaceMap map = new WorkspaceMap(geometry, resolution);
+            assertEquals((int)Math.ceil(WorkspaceMap.FIELD_WIDTH*resolution), map.get_width());
+            int reached = 0;
+            for (int i = 0; i < n; i++){
+                boolean exact = ik.classify(x[i], y[i]) == InverseKinematics.REACHABLE;
+                assertEquals(exact, map.isReachable(x[i], y[i]),
+                             "resolution " + resolution + ", point " + x[i] + "," + y[i]);
+                reached += exact ? 1 : 0;
+            }
+            assertTrue(reached > 0 && reached < n);
+        }
+    }
+
+    @Test
+    public void solves_as_exact_solution(){
+        int n = 20000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        random_points(x, y, 12);
+        double[] t1 = new double[n];
+        double[] t2 = new double[n];
+        boolean[] valid = new boolean[n];
+        ik.solve(x, y, t1, t2, valid, 0, n);
+        double[] m1 = new double[n];
+        double[] m2 = new double[n];
+        boolean[] map_valid = new boolean[n];
+        new WorkspaceMap(geometry, 1.0).solve(x, y, m1, m2, map_valid, 0, n);
+        assertArrayEquals(valid, map_valid);
+        assertArrayEquals(t1, m1);
+        assertArrayEquals(t2, m2);
+    }
+
+    @Test
+    public void zones(){
+        WorkspaceMap map = new WorkspaceMap(geometry, 1.0);
+        // outside of the field of view nothing is flagged
+        assertFalse(map.isJointLimit(-5, 10));
+        assertFalse(map.isSingular(700, 10));
+        boolean singular = false;
+        for (int x = 0; x < WorkspaceMap.FIELD_WIDTH && !singular; x++){
+            for (int y = 0; y < WorkspaceMap.FIELD_HEIGHT && !singular; y++){
+                singular = map.isSingular(x, y);
+            }
+        }
+        assertTrue(singular);
+        assertThrows(IllegalArgumentException.class, () -> new WorkspaceMap(geometry, 0));
+    }
+}
@@ -0,0 +1,212 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Random;
+
+import scara.bench.PathWorkload;
+
+/**
+ * PathWorkload over the arm classes, loaded by name from PathBenchmark.
+ * Synthetic drawing is a random walk of strokes in the reachable part
+ * of the field, so every point goes through full inverse kinematics.
+ */
+public class ScaraWorkload implements PathWorkload
+{
+    private static final int SAMPLES_PER_LINE = 8;
+
+    private Arm arm;
+    private Drawing drawing;
+    private ToolPath converted;   // drawing converted to angles, for pwm benchmarks
+    private File path_file;       // drawing saved by Drawing.save_path
+    private File pwm_file;
+    private File calibration_file;
+    private double[] x;
+    private double[] y;
+    // drawing broken into SAMPLES_PER_LINE samples per line, and solved
+    private double[] sx;
+    private double[] sy;
+    private double[] theta1;
+    private double[] theta2;
+    private boolean[] valid;
+    private IKSolver closed_ik;
+    private IKSolver incremental_ik;
+    private IKCache ik_cache;
+    // angles of the converted drawing (degrees) and their pwm values
+    private double[] degrees1;
+    private double[] degrees2;
+    private int[] pwm1;
+    private int[] pwm2;
+    private ServoCalibration calibration;
+    private PwmLookupTable pwm_table;
+
+    public void setup(int points, File dir) throws IOException{
+        arm = new Arm();
+        // typical fit from the calibration files
+        arm.m1Slope = -0.1;
+        arm.m1B = 40.0;
+        arm.m2Slope = -0.1;
+        arm.m2B = 70.0;
+        arm.get_workspace(); // built on first use, not part of the measurements
+
+        Random random = new Random(42);
+        drawing = new Drawing();
+        x = new double[points];
+        y = new double[points];
+        double px = 330;
+        double py = 180;
+        for (int i = 0; i < points; i++){
+            px = Math.min(Math.max(px + random.nextGaussian()*3, 260), 400);
+            py = Math.min(Math.max(py + random.nextGaussian()*3, 100), 250);
+            x[i] = px;
+            y[i] = py;
+            drawing.append_point(px, py, i % 100 != 0); // pen goes up every 100 points
+        }
+
+        int n = (points - 1)*SAMPLES_PER_LINE;
+        sx = new double[n];
+        sy = new double[n];
+        for (int i = 0; i < n; i++){
+            int line = i/SAMPLES_PER_LINE;
+            double t = (double)(i % SAMPLES_PER_LINE)/SAMPLES_PER_LINE;
+            sx[i] = x[line] + t*(x[line+1] - x[line]);
+            sy[i] = y[line] + t*(y[line+1] - y[line]);
+        }
+        theta1 = new double[n];
+        theta2 = new double[n];
+        valid = new boolean[n];
+        closed_ik = new InverseKinematics(arm.get_geometry());
+        incremental_ik = new IncrementalIK(arm.get_geometry(), closed_ik, IncrementalIK.DEFAULT_TOLERANCE);
+        ik_cache = new IKCache(closed_ik, IKCache.DEFAULT_QUANTUM, IKCache.DEFAULT_CAPACITY);
+
+        converted = new ToolPath();
+        converted.convert_drawing_to_angles(drawing, arm);
+        converted.convert_angles_to_pwm(arm);
+        int size = converted.get_size();
+        degrees1 = new double[size];
+        degrees2 = new double[size];
+        converted.theta1_vector.get_all(0, degrees1, 0, size);
+        converted.theta2_vector.get_all(0, degrees2, 0, size);
+        pwm1 = new int[size];
+        pwm2 = new int[size];
+        calibration = arm.get_calibration();
+        pwm_table = PwmLookupTable.build(calibration, PwmLookupTable.DEFAULT_RESOLUTION);
+
+        path_file = new File(dir, "path.txt");
+        drawing.save_path(path_file.getPath());
+        pwm_file = new File(dir, "pwm.txt");
+        calibration_file = new File(dir, "calibration.txt");
+        write_calibration(calibration_file, points, random);
+    }
+
+    // file in the format of the calibration display on the Pi
+    private static void write_calibration(File f, int points, Random random) throws IOException{
+        try (Writer w = new BufferedWriter(new FileWriter(f))) {
+            w.write("***MEASURE MOTOR 1");
+            for (int i = 0; i < points/2; i++){
+                int pwm = 1000 + random.nextInt(1000);
+                w.write(String.format(Locale.ROOT, "\n pwm1=%d pwm1=1500 angles: theta1=%f theta2=-61.000000",
+                        pwm, 40.0 - 0.1*pwm));
+            }
+            w.write("\n***MEASURE MOTOR 2");
+            for (int i = 0; i < points/2; i++){
+                int pwm = 1000 + random.nextInt(1000);
+                w.write(String.format(Locale.ROOT, "\n pwm1=1500 pwm2=%d angles: theta1=-103.000000 theta2=%f",
+                        pwm, 70.0 - 0.1*pwm));
+            }
+        }
+    }
+
+    public double inverse_kinematic(){
+        double sum = 0;
+        for (int i = 0; i < x.length; i++){
+            arm.inverseKinematic(x[i], y[i], false);
+            sum += arm.get_theta1() + arm.get_theta2();
+        }
+        return sum;
+    }
+
+    public int solve_samples(){
+        return solve(closed_ik);
+    }
+
+    public int solve_samples_incremental(){
+        return solve(incremental_ik);
+    }
+
+    public int solve_samples_cached(){
+        ik_cache.clear(); // hits only from points the drawing visits again
+        return solve(ik_cache);
+    }
+
+    // solves in batches, as PwmPipeline does; returns number of reachable samples
+    private int solve(IKSolver ik){
+        for (int i = 0; i < sx.length; i += PwmPipeline.BATCH){
+            ik.solve(sx, sy, theta1, theta2, valid, i, Math.min(sx.length, i + PwmPipeline.BATCH));
+        }
+        int k = 0;
+        for (boolean v : valid){
+            if (v){
+                k++;
+            }
+        }
+        return k;
+    }
+
+    public int convert_drawing_to_angles(){
+        ToolPath tool_path = new ToolPath();
+        tool_path.convert_drawing_to_angles(drawing, arm);
+        return tool_path.get_size();
+    }
+
+    public int convert_drawing_to_angles_parallel(){
+        ToolPath tool_path = new ToolPath();
+        tool_path.convert_drawing_to_angles_parallel(drawing, arm);
+        return tool_path.get_size();
+    }
+
+    public int convert_angles_to_pwm(){
+        // only samples without pwm are converted, so start again every time
+        converted.pwm1_vector.clear();
+        converted.pwm2_vector.clear();
+        converted.pwm3_vector.clear();
+        converted.convert_angles_to_pwm(arm);
+        return converted.pwm1_vector.get(converted.get_size() - 1);
+    }
+
+    public int map_pwm(){
+        for (int i = 0; i < degrees1.length; i++){
+            pwm1[i] = calibration.pwm1(degrees1[i]);
+            pwm2[i] = calibration.pwm2(degrees2[i]);
+        }
+        return pwm1[pwm1.length - 1] + pwm2[pwm2.length - 1];
+    }
+
+    public int map_pwm_lookup(){
+        pwm_table.map(degrees1, degrees2, pwm1, pwm2, 0, degrees1.length);
+        return pwm1[pwm1.length - 1] + pwm2[pwm2.length - 1];
+    }
+
+    public long save_pwm_file() throws IOException{
+        converted.save_pwm_file(pwm_file.getPath(), arm);
+        return pwm_file.length();
+    }
+
+    public int load_path() throws IOException{
+        Drawing loaded = new Drawing();
+        try (PathFileSource in = new PathFileSource(path_file.getPath())) {
+            loaded.read_path(in, false);
+        }
+        return loaded.get_drawing_size();
+    }
+
+    public double calibrate(){
+        Arm fresh = new Arm();
+        fresh.initializeLists(calibration_file.getPath());
+        double[] line1 = Arm.fit(fresh.motor1Pwm, fresh.motor1Angle, false);
+        double[] line2 = Arm.fit(fresh.motor2Pwm, fresh.motor2Angle, false);
+        return line1[0] + line1[1] + line2[0] + line2[1];
+    }
+}
@@ -0,0 +1,32 @@
+package scara.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main class of benchmarks.jar: runs JMH with the usual command line
+ * options, but always with allocation profiling (-prof gc) and, unless
+ * -rff says otherwise, JSON results written into jmh-result.json,
+ * so runs can be compared for regressions.
+ *   java -jar benchmarks/target/benchmarks.jar [jmh options] [benchmark regexp]
+ */
+public class BenchmarkRunner
+{
+    public static void main(String[] args) throws Exception{
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+            .parent(cmd)
+            .addProfiler(GCProfiler.class);
+        if (!cmd.getResultFormat().hasValue()){
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cmd.getResult().hasValue()){
+            options.result("jmh-result.json");
+        }
+        new Runner(options.build()).run();
+    }
+}
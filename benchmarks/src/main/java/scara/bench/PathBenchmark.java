@@ -0,0 +1,118 @@
+package scara.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hot paths of turning a drawing into motor signals, on synthetic
+ * drawings of 1k, 100k and 1M points: kinematics, conversion,
+ * pwm mapping, file input/output and calibration.
+ * Times are per call over the whole drawing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class PathBenchmark
+{
+    @Param({"1000", "100000", "1000000"})
+    public int points;
+
+    private PathWorkload workload;
+    private File dir;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception{
+        workload = (PathWorkload)Class.forName("ScaraWorkload").getDeclaredConstructor().newInstance();
+        dir = java.nio.file.Files.createTempDirectory("scara-bench").toFile();
+        workload.setup(points, dir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tear_down(){
+        File[] files = dir.listFiles();
+        if (files != null){
+            for (File f : files){
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public double inverse_kinematic(){
+        return workload.inverse_kinematic();
+    }
+
+    @Benchmark
+    public int solve_samples(){
+        return workload.solve_samples();
+    }
+
+    @Benchmark
+    public int solve_samples_incremental(){
+        return workload.solve_samples_incremental();
+    }
+
+    @Benchmark
+    public int solve_samples_cached(){
+        return workload.solve_samples_cached();
+    }
+
+    @Benchmark
+    public int convert_drawing_to_angles(){
+        return workload.convert_drawing_to_angles();
+    }
+
+    @Benchmark
+    public int convert_drawing_to_angles_parallel(){
+        return workload.convert_drawing_to_angles_parallel();
+    }
+
+    @Benchmark
+    public int convert_angles_to_pwm(){
+        return workload.convert_angles_to_pwm();
+    }
+
+    @Benchmark
+    public int map_pwm(){
+        return workload.map_pwm();
+    }
+
+    @Benchmark
+    public int map_pwm_lookup(){
+        return workload.map_pwm_lookup();
+    }
+
+    @Benchmark
+    public long save_pwm_file() throws IOException{
+        return workload.save_pwm_file();
+    }
+
+    @Benchmark
+    public int load_path() throws IOException{
+        return workload.load_path();
+    }
+
+    @Benchmark
+    public double calibrate(){
+        return workload.calibrate();
+    }
+}
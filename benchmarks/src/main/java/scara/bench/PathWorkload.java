@@ -0,0 +1,54 @@
+package scara.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Operations measured by PathBenchmark.
+ * The arm classes live in the default package, which JMH benchmarks can
+ * not be in or import from, so they are reached through this interface,
+ * implemented by ScaraWorkload in the default package.
+ * Every operation returns a value depending on all of its work,
+ * so the JIT can not drop it.
+ */
+public interface PathWorkload
+{
+    // builds synthetic drawing of points points and its files in dir
+    void setup(int points, File dir) throws IOException;
+
+    // Arm.inverseKinematic (without printing) for every point of the drawing
+    double inverse_kinematic();
+
+    // InverseKinematics over the drawing broken into 8 samples per line
+    int solve_samples();
+
+    // ditto, IncrementalIK
+    int solve_samples_incremental();
+
+    // ditto, InverseKinematics behind an IKCache emptied before every call
+    int solve_samples_cached();
+
+    // ToolPath.convert_drawing_to_angles into a new tool path
+    int convert_drawing_to_angles();
+
+    // ditto, convert_drawing_to_angles_parallel
+    int convert_drawing_to_angles_parallel();
+
+    // ToolPath.convert_angles_to_pwm of the converted drawing
+    int convert_angles_to_pwm();
+
+    // ServoCalibration.pwm1/pwm2 of every angle of the converted drawing
+    int map_pwm();
+
+    // ditto, PwmLookupTable.map with the table of the same calibration
+    int map_pwm_lookup();
+
+    // ToolPath.save_pwm_file of the converted drawing
+    long save_pwm_file() throws IOException;
+
+    // Drawing.load_path (without printing) of the saved drawing
+    int load_path() throws IOException;
+
+    // Arm.initializeLists of a calibration file, then the fit of m1Fit/m2Fit
+    double calibrate();
+}